@@ -0,0 +1,36 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+/**
+ * Converts {@link PriceAdjustmentMessage}s to and from the
+ * {@link BinaryPriceAdjustmentCodec} wire format. Registered under
+ * {@link #CONTENT_TYPE}; the schema version travels in the payload's first byte.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class BinaryMessageConverter extends AbstractMessageConverter {
+    public static final String CONTENT_TYPE = "application/x-price-adjustment";
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof PriceAdjustmentMessage message)) {
+            throw new MessageConversionException("Binary encoding only supports PriceAdjustmentMessage, not "
+                    + (object != null ? object.getClass().getName() : "null"));
+        }
+        byte[] body = BinaryPriceAdjustmentCodec.encode(message);
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        return BinaryPriceAdjustmentCodec.decode(message.getBody());
+    }
+}
@@ -0,0 +1,340 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link PriceAdjustmentMessage} and its
+ * {@link MessageMetadata}. Version 1 of the layout is:
+ * <pre>
+ * version         byte, 1
+ * presence        varint bit set of the non-null fields below
+ * eventId, skuId, nodeKey               varint length + UTF-8
+ * adjustmentType                        byte code
+ * adjustmentAmount, adjustmentPercentage 8-byte IEEE 754
+ * effectiveDate, sourceDate             zigzag varint epoch seconds
+ * metadata:
+ *   presence      varint bit set
+ *   retryCount    varint
+ *   messageId, sourceRegion             varint length + UTF-8
+ *   timestamp     zigzag varint epoch seconds, varint nanos
+ *   status        byte code
+ *   headers       varint count, then key and value strings
+ * </pre>
+ * Dates are {@code LocalDateTime}s written as if they were UTC. Business dates keep
+ * whole seconds, as their JSON form does. Enum codes are part of the wire format: new
+ * constants get new codes at the end, existing codes never change.
+ *
+ * @author Angel Zlatenov
+ */
+
+public final class BinaryPriceAdjustmentCodec {
+    public static final byte VERSION = 1;
+
+    private static final PriceAdjustmentMessage.AdjustmentType[] ADJUSTMENT_TYPES = {
+            PriceAdjustmentMessage.AdjustmentType.PRICE_ADJ,
+            PriceAdjustmentMessage.AdjustmentType.PRICE_ADJ_CANCEL,
+            PriceAdjustmentMessage.AdjustmentType.PRICE_RESTORE,
+            PriceAdjustmentMessage.AdjustmentType.PRICE_RESTORE_CANCEL
+    };
+    private static final MessageMetadata.ProcessingStatus[] STATUSES = {
+            MessageMetadata.ProcessingStatus.NEW,
+            MessageMetadata.ProcessingStatus.PROCESSING,
+            MessageMetadata.ProcessingStatus.COMPLETED,
+            MessageMetadata.ProcessingStatus.FAILED,
+            MessageMetadata.ProcessingStatus.DEAD_LETTERED
+    };
+
+    private static final int EVENT_ID = 1;
+    private static final int SKU_ID = 1 << 1;
+    private static final int NODE_KEY = 1 << 2;
+    private static final int ADJUSTMENT_TYPE = 1 << 3;
+    private static final int ADJUSTMENT_AMOUNT = 1 << 4;
+    private static final int ADJUSTMENT_PERCENTAGE = 1 << 5;
+    private static final int EFFECTIVE_DATE = 1 << 6;
+    private static final int SOURCE_DATE = 1 << 7;
+    private static final int METADATA = 1 << 8;
+
+    private static final int MESSAGE_ID = 1;
+    private static final int TIMESTAMP = 1 << 1;
+    private static final int SOURCE_REGION = 1 << 2;
+    private static final int STATUS = 1 << 3;
+    private static final int HEADERS = 1 << 4;
+
+    private BinaryPriceAdjustmentCodec() {
+    }
+
+    public static byte[] encode(PriceAdjustmentMessage message) {
+        Writer out = new Writer(128);
+        out.writeByte(VERSION);
+        int presence = (message.getEventId() != null ? EVENT_ID : 0)
+                | (message.getSkuId() != null ? SKU_ID : 0)
+                | (message.getNodeKey() != null ? NODE_KEY : 0)
+                | (message.getAdjustmentType() != null ? ADJUSTMENT_TYPE : 0)
+                | (message.getAdjustmentAmount() != null ? ADJUSTMENT_AMOUNT : 0)
+                | (message.getAdjustmentPercentage() != null ? ADJUSTMENT_PERCENTAGE : 0)
+                | (message.getEffectiveDate() != null ? EFFECTIVE_DATE : 0)
+                | (message.getSourceDate() != null ? SOURCE_DATE : 0)
+                | (message.getMetadata() != null ? METADATA : 0);
+        out.writeVarint(presence);
+        if ((presence & EVENT_ID) != 0) {
+            out.writeString(message.getEventId());
+        }
+        if ((presence & SKU_ID) != 0) {
+            out.writeString(message.getSkuId());
+        }
+        if ((presence & NODE_KEY) != 0) {
+            out.writeString(message.getNodeKey());
+        }
+        if ((presence & ADJUSTMENT_TYPE) != 0) {
+            out.writeByte(code(ADJUSTMENT_TYPES, message.getAdjustmentType()));
+        }
+        if ((presence & ADJUSTMENT_AMOUNT) != 0) {
+            out.writeDouble(message.getAdjustmentAmount());
+        }
+        if ((presence & ADJUSTMENT_PERCENTAGE) != 0) {
+            out.writeDouble(message.getAdjustmentPercentage());
+        }
+        if ((presence & EFFECTIVE_DATE) != 0) {
+            out.writeSignedVarint(message.getEffectiveDate().toEpochSecond(ZoneOffset.UTC));
+        }
+        if ((presence & SOURCE_DATE) != 0) {
+            out.writeSignedVarint(message.getSourceDate().toEpochSecond(ZoneOffset.UTC));
+        }
+        if ((presence & METADATA) != 0) {
+            encodeMetadata(message.getMetadata(), out);
+        }
+        return out.toByteArray();
+    }
+
+    public static PriceAdjustmentMessage decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new MessageConversionException("Unsupported binary price adjustment version " + version);
+        }
+        PriceAdjustmentMessage message = new PriceAdjustmentMessage();
+        int presence = (int) in.readVarint();
+        if ((presence & EVENT_ID) != 0) {
+            message.setEventId(in.readString());
+        }
+        if ((presence & SKU_ID) != 0) {
+            message.setSkuId(in.readString());
+        }
+        if ((presence & NODE_KEY) != 0) {
+            message.setNodeKey(in.readString());
+        }
+        if ((presence & ADJUSTMENT_TYPE) != 0) {
+            message.setAdjustmentType(constant(ADJUSTMENT_TYPES, in.readByte()));
+        }
+        if ((presence & ADJUSTMENT_AMOUNT) != 0) {
+            message.setAdjustmentAmount(in.readDouble());
+        }
+        if ((presence & ADJUSTMENT_PERCENTAGE) != 0) {
+            message.setAdjustmentPercentage(in.readDouble());
+        }
+        if ((presence & EFFECTIVE_DATE) != 0) {
+            message.setEffectiveDate(LocalDateTime.ofEpochSecond(in.readSignedVarint(), 0, ZoneOffset.UTC));
+        }
+        if ((presence & SOURCE_DATE) != 0) {
+            message.setSourceDate(LocalDateTime.ofEpochSecond(in.readSignedVarint(), 0, ZoneOffset.UTC));
+        }
+        if ((presence & METADATA) != 0) {
+            message.setMetadata(decodeMetadata(in));
+        }
+        return message;
+    }
+
+    private static void encodeMetadata(MessageMetadata metadata, Writer out) {
+        Map<String, String> headers = metadata.getHeaders();
+        int presence = (metadata.getMessageId() != null ? MESSAGE_ID : 0)
+                | (metadata.getTimestamp() != null ? TIMESTAMP : 0)
+                | (metadata.getSourceRegion() != null ? SOURCE_REGION : 0)
+                | (metadata.getStatus() != null ? STATUS : 0)
+                | (headers != null && !headers.isEmpty() ? HEADERS : 0);
+        out.writeVarint(presence);
+        out.writeVarint(metadata.getRetryCount());
+        if ((presence & MESSAGE_ID) != 0) {
+            out.writeString(metadata.getMessageId());
+        }
+        if ((presence & TIMESTAMP) != 0) {
+            LocalDateTime timestamp = metadata.getTimestamp();
+            out.writeSignedVarint(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeVarint(timestamp.getNano());
+        }
+        if ((presence & SOURCE_REGION) != 0) {
+            out.writeString(metadata.getSourceRegion());
+        }
+        if ((presence & STATUS) != 0) {
+            out.writeByte(code(STATUSES, metadata.getStatus()));
+        }
+        if ((presence & HEADERS) != 0) {
+            out.writeVarint(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeString(header.getKey());
+                out.writeString(header.getValue());
+            }
+        }
+    }
+
+    private static MessageMetadata decodeMetadata(Reader in) {
+        MessageMetadata metadata = new MessageMetadata();
+        int presence = (int) in.readVarint();
+        metadata.setRetryCount((int) in.readVarint());
+        if ((presence & MESSAGE_ID) != 0) {
+            metadata.setMessageId(in.readString());
+        }
+        if ((presence & TIMESTAMP) != 0) {
+            long seconds = in.readSignedVarint();
+            metadata.setTimestamp(LocalDateTime.ofEpochSecond(seconds, (int) in.readVarint(), ZoneOffset.UTC));
+        } else {
+            metadata.setTimestamp(null);
+        }
+        if ((presence & SOURCE_REGION) != 0) {
+            metadata.setSourceRegion(in.readString());
+        }
+        metadata.setStatus((presence & STATUS) != 0 ? constant(STATUSES, in.readByte()) : null);
+        if ((presence & HEADERS) != 0) {
+            int count = (int) in.readVarint();
+            for (int i = 0; i < count; i++) {
+                metadata.addHeader(in.readString(), in.readString());
+            }
+        }
+        return metadata;
+    }
+
+    private static <E extends Enum<E>> byte code(E[] dictionary, E value) {
+        for (int code = 0; code < dictionary.length; code++) {
+            if (dictionary[code] == value) {
+                return (byte) code;
+            }
+        }
+        throw new MessageConversionException("No binary code for " + value);
+    }
+
+    private static <E extends Enum<E>> E constant(E[] dictionary, byte code) {
+        if (code < 0 || code >= dictionary.length) {
+            throw new MessageConversionException("Unknown binary code " + code);
+        }
+        return dictionary[code];
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (position + needed > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new MessageConversionException("Malformed varint at offset " + position);
+        }
+
+        long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() {
+            require(8);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            long length = readVarint();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new MessageConversionException("Corrupt binary string length " + length);
+            }
+            if (length > buffer.length - position) {
+                throw new MessageConversionException("Truncated binary price adjustment message");
+            }
+            String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+
+        private void require(int bytes) {
+            if (position + bytes > buffer.length) {
+                throw new MessageConversionException("Truncated binary price adjustment message");
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.MessageHeaders;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Packs many {@link PriceAdjustmentMessage}s into one AMQP message, so the broker's
+ * per-message cost of routing, persisting, confirming and acknowledging is paid once
+ * per envelope instead of once per record. The body is
+ * <pre>
+ * version   byte, 1
+ * count     4-byte record count
+ * records   count x (4-byte length + {@link BinaryPriceAdjustmentCodec} record)
+ * </pre>
+ * deflated as a whole when the packed size reaches the compression threshold, which is
+ * then flagged by a {@code deflate} content encoding.
+ *
+ * @author Angel Zlatenov
+ */
+
+public final class EnvelopeCodec {
+    public static final String CONTENT_TYPE = "application/x-price-adjustment-envelope";
+    public static final String RECORD_COUNT_HEADER = "x-envelope-records";
+    public static final String DEFLATE_ENCODING = "deflate";
+
+    private static final byte VERSION = 1;
+    // Guards against a corrupt count or length allocating unbounded memory
+    private static final int MAX_UNPACKED_BYTES = 256 * 1024 * 1024;
+
+    private EnvelopeCodec() {
+    }
+
+    public static boolean isEnvelope(Message message) {
+        return CONTENT_TYPE.equals(message.getMessageProperties().getContentType());
+    }
+
+    /**
+     * Builds one envelope holding the records in order.
+     *
+     * @param compressionThreshold packed size in bytes from which the body is deflated;
+     *                             zero or less disables compression
+     */
+    public static Message pack(List<PriceAdjustmentMessage> records, MessageProperties properties,
+                               int compressionThreshold) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(records.size() * 160 + 5);
+        packed.write(VERSION);
+        writeInt(packed, records.size());
+        for (PriceAdjustmentMessage record : records) {
+            byte[] encoded = BinaryPriceAdjustmentCodec.encode(record);
+            writeInt(packed, encoded.length);
+            packed.write(encoded, 0, encoded.length);
+        }
+
+        byte[] body = packed.toByteArray();
+        if (compressionThreshold > 0 && body.length >= compressionThreshold) {
+            body = deflate(body);
+            properties.setContentEncoding(DEFLATE_ENCODING);
+        }
+        properties.setContentType(CONTENT_TYPE);
+        properties.setContentLength(body.length);
+        properties.setHeader(RECORD_COUNT_HEADER, records.size());
+        return new Message(body, properties);
+    }
+
+    public static List<PriceAdjustmentMessage> unpack(Message envelope) {
+        byte[] body = envelope.getBody();
+        if (DEFLATE_ENCODING.equals(envelope.getMessageProperties().getContentEncoding())) {
+            body = inflate(body);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new MessageConversionException("Unsupported envelope version " + version);
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 4) {
+                throw new MessageConversionException("Corrupt envelope record count " + count);
+            }
+            List<PriceAdjustmentMessage> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new MessageConversionException("Corrupt envelope record length " + length);
+                }
+                byte[] record = new byte[length];
+                buffer.get(record);
+                records.add(BinaryPriceAdjustmentCodec.decode(record));
+            }
+            return records;
+        } catch (RuntimeException e) {
+            if (e instanceof MessageConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new MessageConversionException("Truncated envelope", e);
+        }
+    }
+
+    /**
+     * Wraps a single record of an envelope as a standalone message, for when it has to
+     * be parked or dead-lettered on its own. It keeps the envelope's headers, minus the
+     * envelope's own, and carries the record's routing headers.
+     */
+    public static Message toRecordMessage(PriceAdjustmentMessage record, MessageProperties envelopeProperties) {
+        MessageProperties properties = new MessageProperties();
+        for (Map.Entry<String, Object> header : envelopeProperties.getHeaders().entrySet()) {
+            if (!RECORD_COUNT_HEADER.equals(header.getKey())) {
+                properties.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        MessageHeaders.stamp(record, properties.getHeaders());
+        properties.setDeliveryMode(envelopeProperties.getDeliveryMode());
+        if (record.getMetadata() != null) {
+            properties.setMessageId(record.getMetadata().getMessageId());
+        }
+        byte[] body = BinaryPriceAdjustmentCodec.encode(record);
+        properties.setContentType(BinaryMessageConverter.CONTENT_TYPE);
+        properties.setContentLength(body.length);
+        return new Message(body, properties);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                out.write(chunk, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new MessageConversionException("Truncated compressed envelope");
+                }
+                out.write(chunk, 0, length);
+                if (out.size() > MAX_UNPACKED_BYTES) {
+                    throw new MessageConversionException("Envelope exceeds " + MAX_UNPACKED_BYTES + " bytes");
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new MessageConversionException("Corrupt compressed envelope", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.retail.messaging.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Streaming JSON encoding of {@link PriceAdjustmentMessage}, written and read token by
+ * token without databind. The output matches what {@code Jackson2JsonMessageConverter}
+ * produces for the model:
+ * <ul>
+ *   <li>fields in declaration order, with nulls written out</li>
+ *   <li>{@code effectiveDate} and {@code sourceDate} as {@code yyyy-MM-dd'T'HH:mm:ss}</li>
+ *   <li>{@code metadata.timestamp} as a {@code [year, month, day, hour, minute, second,
+ *       nanos]} array, trailing zero second and nanos omitted</li>
+ * </ul>
+ * The reader also accepts an ISO-8601 string for the timestamp, and ignores unknown
+ * fields. Business dates are parsed straight from the parser's character buffer.
+ *
+ * @author Angel Zlatenov
+ */
+
+public final class JsonPriceAdjustmentCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int DATE_LENGTH = 19;
+
+    private JsonPriceAdjustmentCodec() {
+    }
+
+    public static byte[] encode(PriceAdjustmentMessage message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("eventId", message.getEventId());
+            generator.writeStringField("skuId", message.getSkuId());
+            generator.writeStringField("nodeKey", message.getNodeKey());
+            generator.writeFieldName("adjustmentType");
+            writeEnum(generator, message.getAdjustmentType());
+            generator.writeFieldName("adjustmentAmount");
+            writeDouble(generator, message.getAdjustmentAmount());
+            generator.writeFieldName("adjustmentPercentage");
+            writeDouble(generator, message.getAdjustmentPercentage());
+            generator.writeFieldName("effectiveDate");
+            writeDate(generator, message.getEffectiveDate());
+            generator.writeFieldName("sourceDate");
+            writeDate(generator, message.getSourceDate());
+            generator.writeFieldName("metadata");
+            writeMetadata(generator, message.getMetadata());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to write price adjustment JSON", e);
+        }
+        return out.toByteArray();
+    }
+
+    public static PriceAdjustmentMessage decode(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new MessageConversionException("Expected a JSON object for a price adjustment message");
+            }
+            PriceAdjustmentMessage message = new PriceAdjustmentMessage();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "eventId" -> message.setEventId(parser.getValueAsString());
+                    case "skuId" -> message.setSkuId(parser.getValueAsString());
+                    case "nodeKey" -> message.setNodeKey(parser.getValueAsString());
+                    case "adjustmentType" -> message.setAdjustmentType(value == JsonToken.VALUE_NULL
+                            ? null : PriceAdjustmentMessage.AdjustmentType.valueOf(parser.getText()));
+                    case "adjustmentAmount" -> message.setAdjustmentAmount(readDouble(parser, value));
+                    case "adjustmentPercentage" -> message.setAdjustmentPercentage(readDouble(parser, value));
+                    case "effectiveDate" -> message.setEffectiveDate(readDate(parser, value));
+                    case "sourceDate" -> message.setSourceDate(readDate(parser, value));
+                    case "metadata" -> message.setMetadata(value == JsonToken.VALUE_NULL ? null : readMetadata(parser));
+                    default -> parser.skipChildren();
+                }
+            }
+            return message;
+        } catch (IOException | IllegalArgumentException | DateTimeException e) {
+            throw new MessageConversionException("Failed to read price adjustment JSON", e);
+        }
+    }
+
+    private static void writeMetadata(JsonGenerator generator, MessageMetadata metadata) throws IOException {
+        if (metadata == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("messageId", metadata.getMessageId());
+        generator.writeNumberField("retryCount", metadata.getRetryCount());
+        generator.writeFieldName("timestamp");
+        writeTimestamp(generator, metadata.getTimestamp());
+        generator.writeStringField("sourceRegion", metadata.getSourceRegion());
+        generator.writeFieldName("headers");
+        Map<String, String> headers = metadata.getHeaders();
+        if (headers == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartObject();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                generator.writeStringField(header.getKey(), header.getValue());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeFieldName("status");
+        writeEnum(generator, metadata.getStatus());
+        generator.writeEndObject();
+    }
+
+    private static MessageMetadata readMetadata(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new MessageConversionException("Expected a JSON object for message metadata");
+        }
+        MessageMetadata metadata = new MessageMetadata();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "messageId" -> metadata.setMessageId(parser.getValueAsString());
+                case "retryCount" -> metadata.setRetryCount(parser.getValueAsInt());
+                case "timestamp" -> metadata.setTimestamp(readTimestamp(parser, value));
+                case "sourceRegion" -> metadata.setSourceRegion(parser.getValueAsString());
+                case "headers" -> readHeaders(parser, value, metadata);
+                case "status" -> metadata.setStatus(value == JsonToken.VALUE_NULL
+                        ? null : MessageMetadata.ProcessingStatus.valueOf(parser.getText()));
+                default -> parser.skipChildren();
+            }
+        }
+        return metadata;
+    }
+
+    private static void readHeaders(JsonParser parser, JsonToken value, MessageMetadata metadata) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            return;
+        }
+        // Headers merge into the metadata through addHeader, which allocates the map on the
+        // first one; databind binds the whole map through setHeaders instead
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            metadata.addHeader(name, parser.getValueAsString());
+        }
+    }
+
+    private static void writeEnum(JsonGenerator generator, Enum<?> value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value.name());
+        }
+    }
+
+    private static void writeDouble(JsonGenerator generator, Double value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.doubleValue());
+        }
+    }
+
+    private static Double readDouble(JsonParser parser, JsonToken value) throws IOException {
+        return switch (value) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_STRING -> Double.valueOf(parser.getText());
+            default -> throw new MessageConversionException("Expected a number but found " + value);
+        };
+    }
+
+    private static void writeDate(JsonGenerator generator, LocalDateTime date) throws IOException {
+        if (date == null) {
+            generator.writeNull();
+            return;
+        }
+        char[] chars = new char[DATE_LENGTH];
+        writeDigits(chars, 0, date.getYear(), 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, date.getDayOfMonth(), 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, date.getHour(), 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, date.getMinute(), 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, date.getSecond(), 2);
+        generator.writeString(chars, 0, DATE_LENGTH);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd'T'HH:mm:ss} in place from the parser's text buffer.
+     */
+    private static LocalDateTime readDate(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING || parser.getTextLength() != DATE_LENGTH) {
+            throw new MessageConversionException("Expected a yyyy-MM-dd'T'HH:mm:ss date but found " + parser.getText());
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        if (chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T'
+                || chars[offset + 13] != ':' || chars[offset + 16] != ':') {
+            throw new MessageConversionException("Malformed date " + parser.getText());
+        }
+        return LocalDateTime.of(
+                readDigits(chars, offset, 4),
+                readDigits(chars, offset + 5, 2),
+                readDigits(chars, offset + 8, 2),
+                readDigits(chars, offset + 11, 2),
+                readDigits(chars, offset + 14, 2),
+                readDigits(chars, offset + 17, 2));
+    }
+
+    private static void writeTimestamp(JsonGenerator generator, LocalDateTime timestamp) throws IOException {
+        if (timestamp == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        generator.writeNumber(timestamp.getYear());
+        generator.writeNumber(timestamp.getMonthValue());
+        generator.writeNumber(timestamp.getDayOfMonth());
+        generator.writeNumber(timestamp.getHour());
+        generator.writeNumber(timestamp.getMinute());
+        if (timestamp.getSecond() > 0 || timestamp.getNano() > 0) {
+            generator.writeNumber(timestamp.getSecond());
+            if (timestamp.getNano() > 0) {
+                generator.writeNumber(timestamp.getNano());
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private static LocalDateTime readTimestamp(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            return LocalDateTime.parse(parser.getText());
+        }
+        if (value != JsonToken.START_ARRAY) {
+            throw new MessageConversionException("Expected a timestamp array but found " + value);
+        }
+        int[] parts = new int[7];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (count == parts.length) {
+                throw new MessageConversionException("Too many timestamp elements");
+            }
+            parts[count++] = parser.getIntValue();
+        }
+        if (count < 5) {
+            throw new MessageConversionException("Too few timestamp elements: " + count);
+        }
+        return LocalDateTime.of(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int readDigits(char[] chars, int offset, int width) {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new MessageConversionException("Malformed date digit '" + chars[i] + "'");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON converter that handles {@link PriceAdjustmentMessage} with
+ * {@link JsonPriceAdjustmentCodec} and everything else with Jackson databind. Messages
+ * carry the same content type, encoding and {@code __TypeId__} header as those written
+ * by {@link Jackson2JsonMessageConverter}, so either side of a queue can use either
+ * converter.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class StreamingJsonMessageConverter extends AbstractMessageConverter {
+    private static final String TYPE_ID = PriceAdjustmentMessage.class.getName();
+
+    private final Jackson2JsonMessageConverter fallback;
+
+    public StreamingJsonMessageConverter(Jackson2JsonMessageConverter fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof PriceAdjustmentMessage message)) {
+            return fallback.toMessage(object, messageProperties);
+        }
+        byte[] body = JsonPriceAdjustmentCodec.encode(message);
+        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+        messageProperties.setContentLength(body.length);
+        messageProperties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, TYPE_ID);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        Object typeId = message.getMessageProperties().getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        if (TYPE_ID.equals(typeId)) {
+            return JsonPriceAdjustmentCodec.decode(message.getBody());
+        }
+        return fallback.fromMessage(message);
+    }
+}
@@ -1,5 +1,6 @@
 package com.retail.messaging.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,17 +18,32 @@ public class BatchProcessingConfig {
     @Value("${messaging.consumer.batch.timeout:5000}")
     private long batchTimeout;
 
+    @Value("${messaging.consumer.batch.max-latency:1000}")
+    private long batchMaxLatency;
+
     @Bean
     public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
             ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
         factory.setBatchListener(true);
+        // BatchMessageConsumer settles each delivery tag itself once the batch completes
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         factory.setBatchSize(batchSize);
         factory.setReceiveTimeout(batchTimeout);
+        // Deliver a partial batch once the oldest message has waited this long
+        factory.setBatchReceiveTimeout(batchMaxLatency);
         factory.setConcurrentConsumers(1);
         factory.setMaxConcurrentConsumers(1);
-        factory.setPrefetchCount(batchSize * 2);
+        factory.setPrefetchCount(getPrefetchCount());
         return factory;
     }
+
+    /**
+     * Prefetch of every batch consumer. Fixed once a consumer has started, so it also
+     * bounds how far the batch size can adapt.
+     */
+    public int getPrefetchCount() {
+        return batchSize * 2;
+    }
 }
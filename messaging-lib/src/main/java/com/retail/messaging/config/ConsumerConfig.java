@@ -2,6 +2,7 @@ package com.retail.messaging.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 import lombok.Data;
 
 /**
@@ -14,11 +15,101 @@ public class ConsumerConfig {
     private final int batchSize;
     private final int concurrentProcessors;
     private final long batchTimeout;
+    private final VirtualThreads virtualThreads;
+    private final Pipeline pipeline;
+    private final Backpressure backpressure;
+    private final CircuitBreaker circuitBreaker;
 
     @ConstructorBinding
-    public ConsumerConfig(int batchSize, int concurrentProcessors, long batchTimeout) {
+    public ConsumerConfig(int batchSize, int concurrentProcessors, long batchTimeout,
+                          @DefaultValue VirtualThreads virtualThreads,
+                          @DefaultValue Pipeline pipeline,
+                          @DefaultValue Backpressure backpressure,
+                          @DefaultValue CircuitBreaker circuitBreaker) {
         this.batchSize = batchSize;
         this.concurrentProcessors = concurrentProcessors;
         this.batchTimeout = batchTimeout;
+        this.virtualThreads = virtualThreads;
+        this.pipeline = pipeline;
+        this.backpressure = backpressure;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Runs message processing on virtual threads. Concurrency is then bounded by the
+     * permit budget rather than by the size of a platform thread pool.
+     */
+    @Data
+    public static class VirtualThreads {
+        private final boolean enabled;
+        private final int permits;
+
+        public VirtualThreads(@DefaultValue("false") boolean enabled, @DefaultValue("256") int permits) {
+            this.enabled = enabled;
+            this.permits = permits;
+        }
+    }
+
+    /**
+     * Lets the listener fetch the next batch while earlier batches are still finishing.
+     * The prefetch count has to leave room for every in-flight batch.
+     */
+    @Data
+    public static class Pipeline {
+        private final boolean enabled;
+        private final int maxInFlightBatches;
+
+        public Pipeline(@DefaultValue("false") boolean enabled, @DefaultValue("2") int maxInFlightBatches) {
+            this.enabled = enabled;
+            this.maxInFlightBatches = maxInFlightBatches;
+        }
+    }
+
+    /**
+     * Watermarks for the number of messages admitted but not yet processed.
+     */
+    @Data
+    public static class Backpressure {
+        private final int highWatermark;
+        private final int lowWatermark;
+
+        public Backpressure(@DefaultValue("2000") int highWatermark, @DefaultValue("1000") int lowWatermark) {
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+        }
+    }
+
+    /**
+     * Thresholds for the per-type processor circuit breaker. Rates are percentages of
+     * the last {@code windowSize} calls; durations are in milliseconds.
+     */
+    @Data
+    public static class CircuitBreaker {
+        private final boolean enabled;
+        private final int windowSize;
+        private final int minimumCalls;
+        private final int failureRateThreshold;
+        private final int slowCallRateThreshold;
+        private final long slowCallDuration;
+        private final long openDuration;
+        private final int halfOpenProbes;
+
+        public CircuitBreaker(@DefaultValue("true") boolean enabled,
+                              @DefaultValue("100") int windowSize,
+                              @DefaultValue("20") int minimumCalls,
+                              @DefaultValue("50") int failureRateThreshold,
+                              @DefaultValue("80") int slowCallRateThreshold,
+                              @DefaultValue("5000") long slowCallDuration,
+                              @DefaultValue("30000") long openDuration,
+                              @DefaultValue("5") int halfOpenProbes) {
+            this.enabled = enabled;
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDuration = slowCallDuration;
+            this.openDuration = openDuration;
+            this.halfOpenProbes = halfOpenProbes;
+        }
     }
 }
@@ -1,9 +1,14 @@
 package com.retail.messaging.config;
 
+import com.retail.messaging.codec.BinaryMessageConverter;
+import com.retail.messaging.codec.StreamingJsonMessageConverter;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -50,10 +55,26 @@ public class RabbitMQConfig {
         return connectionFactory;
     }
 
+    /**
+     * Picks the codec from each message's content type, so JSON and binary producers and
+     * consumers interoperate during a rollout. Messages without a known content type are
+     * treated as JSON.
+     */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    public MessageConverter messageConverter() {
+        // Price adjustments skip databind; anything else still goes through Jackson
+        StreamingJsonMessageConverter jsonConverter =
+                new StreamingJsonMessageConverter(new Jackson2JsonMessageConverter());
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(jsonConverter);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, jsonConverter);
+        converter.addDelegate(BinaryMessageConverter.CONTENT_TYPE, new BinaryMessageConverter());
+        return converter;
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
-        rabbitTemplate.setMessageConverter(new Jackson2JsonMessageConverter());
+        rabbitTemplate.setMessageConverter(messageConverter);
 
         // Configure mandatory publishing
         rabbitTemplate.setMandatory(true);
@@ -2,6 +2,7 @@ package com.retail.messaging.connection;
 
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import com.retail.messaging.support.MessagingExecutors;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +14,9 @@ import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -25,15 +28,22 @@ public class ConnectionManager {
     private final MeterRegistry meterRegistry;
     private final ConcurrentHashMap<String, Connection> connections;
     private final ExecutorService connectionExecutor;
+    private final ScheduledExecutorService scheduler;
     private final AtomicBoolean shutdownInitiated;
+    private volatile ScheduledFuture<?> monitoringTask;
     private static final int RECOVERY_INTERVAL_MS = 5000;
+    private static final int MONITORING_INTERVAL_MS = 30000;
 
     @Autowired
-    public ConnectionManager(ConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+    public ConnectionManager(ConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+                             MessagingExecutors executors) {
         this.connectionFactory = connectionFactory;
         this.meterRegistry = meterRegistry;
         this.connections = new ConcurrentHashMap<>();
-        this.connectionExecutor = Executors.newCachedThreadPool();
+        // Dispatches consumer callbacks for the managed connections, sized like the client's default pool
+        this.connectionExecutor = executors.newWorkerPool("rabbit-connection",
+                Runtime.getRuntime().availableProcessors() * 2);
+        this.scheduler = executors.scheduler();
         this.shutdownInitiated = new AtomicBoolean(false);
 
         setupMetrics();
@@ -69,53 +79,51 @@ public class ConnectionManager {
                 logger.warn("Connection lost: {}. Initiating recovery...", connectionId);
                 meterRegistry.counter("rabbitmq.connections.lost").increment();
 
-                connectionExecutor.submit(() -> {
-                    while (!shutdownInitiated.get()) {
-                        try {
-                            Thread.sleep(RECOVERY_INTERVAL_MS);
-                            Connection newConnection = createConnection();
-                            connections.put(connectionId, newConnection);
-                            setupConnectionRecovery(connectionId, newConnection);
-                            logger.info("Connection recovered: {}", connectionId);
-                            meterRegistry.counter("rabbitmq.connections.recovered").increment();
-                            break;
-                        } catch (Exception e) {
-                            logger.error("Recovery attempt failed for connection: {}", connectionId, e);
-                        }
-                    }
-                });
+                scheduleRecovery(connectionId);
             }
         });
     }
 
+    private void scheduleRecovery(String connectionId) {
+        scheduler.schedule(() -> {
+            if (shutdownInitiated.get()) {
+                return;
+            }
+            try {
+                Connection newConnection = createConnection();
+                connections.put(connectionId, newConnection);
+                setupConnectionRecovery(connectionId, newConnection);
+                logger.info("Connection recovered: {}", connectionId);
+                meterRegistry.counter("rabbitmq.connections.recovered").increment();
+            } catch (Exception e) {
+                logger.error("Recovery attempt failed for connection: {}", connectionId, e);
+                scheduleRecovery(connectionId);
+            }
+        }, RECOVERY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
     private void setupMetrics() {
         meterRegistry.gauge("rabbitmq.connections.active", connections, ConcurrentHashMap::size);
     }
 
     private void startConnectionMonitoring() {
-        connectionExecutor.submit(() -> {
-            while (!shutdownInitiated.get()) {
-                try {
-                    Thread.sleep(30000); // Monitor every 30 seconds
-                    connections.forEach((id, connection) -> {
-                        if (!connection.isOpen() && !shutdownInitiated.get()) {
-                            logger.warn("Detected closed connection: {}", id);
-                            connections.remove(id);
-                            meterRegistry.counter("rabbitmq.connections.closed").increment();
-                        }
-                    });
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
+        monitoringTask = scheduler.scheduleWithFixedDelay(() ->
+                connections.forEach((id, connection) -> {
+                    if (!connection.isOpen() && !shutdownInitiated.get()) {
+                        logger.warn("Detected closed connection: {}", id);
+                        connections.remove(id);
+                        meterRegistry.counter("rabbitmq.connections.closed").increment();
+                    }
+                }), MONITORING_INTERVAL_MS, MONITORING_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     @PreDestroy
     public void shutdown() {
         shutdownInitiated.set(true);
         logger.info("Initiating connection manager shutdown");
+        if (monitoringTask != null) {
+            monitoringTask.cancel(false);
+        }
 
         connections.forEach((id, connection) -> {
             try {
@@ -126,7 +134,6 @@ public class ConnectionManager {
             }
         });
 
-        connectionExecutor.shutdown();
         logger.info("Connection manager shutdown complete");
     }
 }
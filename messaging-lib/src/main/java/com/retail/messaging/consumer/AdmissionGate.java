@@ -0,0 +1,94 @@
+package com.retail.messaging.consumer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the number of messages admitted for processing but not yet finished. Once the
+ * backlog reaches the high watermark, admission blocks until it has drained to the low
+ * watermark. A blocked listener stops taking deliveries, so the excess stays on the
+ * broker instead of piling up in the processing lanes.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class AdmissionGate {
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final AtomicInteger backlog;
+    private final AtomicLong pauseCount;
+    private final ReentrantLock lock;
+    private final Condition resumed;
+    private volatile boolean paused;
+
+    public AdmissionGate(int highWatermark, int lowWatermark) {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Low watermark must be below the high watermark: "
+                    + lowWatermark + " / " + highWatermark);
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.backlog = new AtomicInteger();
+        this.pauseCount = new AtomicLong();
+        this.lock = new ReentrantLock();
+        this.resumed = lock.newCondition();
+    }
+
+    /**
+     * Waits while intake is paused, then admits all {@code count} messages at once. The
+     * caller must hand the admitted messages to the processing lanes before admitting
+     * more, otherwise a pause could never be lifted.
+     */
+    public void admit(int count) throws InterruptedException {
+        if (paused) {
+            lock.lock();
+            try {
+                while (paused) {
+                    resumed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (backlog.addAndGet(count) >= highWatermark && !paused) {
+            lock.lock();
+            try {
+                if (!paused && backlog.get() >= highWatermark) {
+                    paused = true;
+                    pauseCount.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void release(int count) {
+        if (backlog.addAndGet(-count) <= lowWatermark && paused) {
+            lock.lock();
+            try {
+                if (paused && backlog.get() <= lowWatermark) {
+                    paused = false;
+                    resumed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+}
@@ -0,0 +1,76 @@
+package com.retail.messaging.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.retail.messaging.monitoring.MetricsCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Settles a manually acknowledged batch. Failed deliveries are rejected individually
+ * without requeue, so the queue's dead letter exchange routes them to the DLQ, shed
+ * deliveries are requeued, and all successful deliveries are then confirmed with a
+ * single multiple-ack. While a channel has deliveries held for a retry, which a
+ * multiple-ack would cover too, its successful deliveries are acknowledged one by one.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class BatchAcknowledger {
+    private static final Logger logger = LoggerFactory.getLogger(BatchAcknowledger.class);
+
+    private final MetricsCollector metricsCollector;
+    private final Map<Channel, Integer> heldDeliveries;
+
+    public BatchAcknowledger(MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+        this.heldDeliveries = new ConcurrentHashMap<>();
+    }
+
+    public void acknowledge(Channel channel, BatchContext context, BatchMessageConsumer.ProcessingType type) {
+        BatchContext.Settlement settlement = context.settle();
+        List<Long> acknowledgedTags = settlement.acknowledgedTags();
+        List<Long> rejectedTags = settlement.rejectedTags();
+        List<Long> requeuedTags = settlement.requeuedTags();
+        if (!settlement.held().isEmpty()) {
+            heldDeliveries.merge(channel, settlement.held().size(), Integer::sum);
+        }
+
+        try {
+            // Reject first: the multiple-ack below covers every outstanding tag up to the
+            // highest successful one, so failures must already be settled by then
+            for (long deliveryTag : rejectedTags) {
+                channel.basicNack(deliveryTag, false, false);
+            }
+            for (long deliveryTag : requeuedTags) {
+                channel.basicNack(deliveryTag, false, true);
+            }
+            if (heldDeliveries.containsKey(channel)) {
+                for (long deliveryTag : acknowledgedTags) {
+                    channel.basicAck(deliveryTag, false);
+                }
+            } else if (!acknowledgedTags.isEmpty()) {
+                channel.basicAck(Collections.max(acknowledgedTags), true);
+            }
+            metricsCollector.recordAcknowledgements(type, acknowledgedTags.size(), rejectedTags.size());
+        } catch (IOException | ShutdownSignalException e) {
+            // The broker redelivers everything still unacknowledged once the channel closes
+            logger.error("Failed to acknowledge batch of {} messages", context.size(), e);
+        }
+        for (HeldDelivery held : settlement.held()) {
+            held.releaseBatch(channel, outcome -> releaseHeld(channel, type, outcome));
+        }
+    }
+
+    private void releaseHeld(Channel channel, BatchMessageConsumer.ProcessingType type, int outcome) {
+        heldDeliveries.computeIfPresent(channel, (ch, held) -> held == 1 ? null : held - 1);
+        metricsCollector.recordAcknowledgements(type, outcome == BatchContext.ACKNOWLEDGED ? 1 : 0,
+                outcome == BatchContext.REJECTED ? 1 : 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.model.PriceAdjustmentMessage.AdjustmentType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds price adjustments that are superseded within the same batch. For every
+ * eventId/skuId/nodeKey, a PRICE_ADJ followed by its PRICE_ADJ_CANCEL (and a
+ * PRICE_RESTORE followed by its PRICE_RESTORE_CANCEL) cancel out, and of several
+ * adjustments of the same type only the one with the latest source date is kept.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class BatchCompactor {
+
+    @Value("${messaging.consumer.compaction.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the positions of the messages that were folded away. The remaining
+     * messages keep their relative order.
+     */
+    public BitSet compact(List<PriceAdjustmentMessage> messages) {
+        BitSet folded = new BitSet(messages.size());
+        Map<String, Integer> pendingAdjustments = new HashMap<>();
+        Map<String, Integer> pendingRestores = new HashMap<>();
+
+        for (int i = 0; i < messages.size(); i++) {
+            PriceAdjustmentMessage message = messages.get(i);
+            AdjustmentType type = message.getAdjustmentType();
+            if (type == null) {
+                continue;
+            }
+            String key = message.getEventId() + '|' + message.getSkuId() + '|' + message.getNodeKey();
+            switch (type) {
+                case PRICE_ADJ -> keepLatest(messages, pendingAdjustments, key, i, folded);
+                case PRICE_ADJ_CANCEL -> cancelPending(messages, pendingAdjustments, key, i, folded);
+                case PRICE_RESTORE -> keepLatest(messages, pendingRestores, key, i, folded);
+                case PRICE_RESTORE_CANCEL -> cancelPending(messages, pendingRestores, key, i, folded);
+            }
+        }
+        return folded;
+    }
+
+    private void keepLatest(List<PriceAdjustmentMessage> messages, Map<String, Integer> pending,
+                            String key, int index, BitSet folded) {
+        Integer previous = pending.get(key);
+        if (previous == null) {
+            pending.put(key, index);
+            return;
+        }
+        // On equal or missing source dates the later arrival wins
+        if (isBefore(messages.get(index).getSourceDate(), messages.get(previous).getSourceDate())) {
+            folded.set(index);
+        } else {
+            folded.set(previous);
+            pending.put(key, index);
+        }
+    }
+
+    private void cancelPending(List<PriceAdjustmentMessage> messages, Map<String, Integer> pending,
+                               String key, int index, BitSet folded) {
+        Integer adjustment = pending.get(key);
+        // A cancel sourced before the pending adjustment targets an earlier one
+        if (adjustment == null
+                || isBefore(messages.get(index).getSourceDate(), messages.get(adjustment).getSourceDate())) {
+            return;
+        }
+        folded.set(adjustment);
+        folded.set(index);
+        pending.remove(key);
+    }
+
+    private static boolean isBefore(LocalDateTime candidate, LocalDateTime reference) {
+        return candidate != null && reference != null && candidate.isBefore(reference);
+    }
+}
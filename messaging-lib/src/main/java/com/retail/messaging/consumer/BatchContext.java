@@ -2,33 +2,133 @@ package com.retail.messaging.consumer;
 
 import com.retail.messaging.model.BatchMetrics;
 import lombok.Data;
+import org.springframework.amqp.core.Message;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Tracks the outcome of every record of a batch. A delivery usually carries one record,
+ * but an envelope carries several; outcomes are recorded per record and settled per
+ * delivery, a delivery being rejected if any of its records was, requeued if any was
+ * shed, and acknowledged otherwise. A delivery with a record waiting for a retry is held
+ * back from the batch and settled once the retry is done.
+ *
  * @author Angel Zlatenov
  */
 
 @Data
 public class BatchContext {
+    static final int PENDING = 0;
+    static final int ACKNOWLEDGED = 1;
+    static final int REJECTED = 2;
+    static final int REQUEUED = 3;
+
     private final CountDownLatch completionLatch;
     private final BatchMetrics metrics;
+    private final long[] deliveryTags;
+    private final Message[] deliveries;
+    private final int[] recordDeliveries;
+    private final AtomicIntegerArray outcomes;
+    private final AtomicReferenceArray<HeldDelivery> heldDeliveries;
+    private final CompletableFuture<BatchContext> completion;
 
     public BatchContext(int batchSize) {
-        this.completionLatch = new CountDownLatch(batchSize);
-        this.metrics = new BatchMetrics(batchSize);
+        this(batchSize, identity(batchSize));
+    }
+
+    /**
+     * @param recordDeliveries index of the delivery each record was unpacked from
+     */
+    public BatchContext(int deliveryCount, int[] recordDeliveries) {
+        int recordCount = recordDeliveries.length;
+        this.completionLatch = new CountDownLatch(recordCount);
+        this.metrics = new BatchMetrics(recordCount);
+        this.deliveryTags = new long[deliveryCount];
+        this.deliveries = new Message[deliveryCount];
+        this.recordDeliveries = recordDeliveries;
+        this.outcomes = new AtomicIntegerArray(recordCount);
+        this.heldDeliveries = new AtomicReferenceArray<>(deliveryCount);
+        this.completion = new CompletableFuture<>();
+        if (recordCount == 0) {
+            completion.complete(this);
+        }
+    }
+
+    public void trackDelivery(int deliveryIndex, Message delivery) {
+        deliveries[deliveryIndex] = delivery;
+        deliveryTags[deliveryIndex] = delivery.getMessageProperties().getDeliveryTag();
     }
 
-    public void recordSuccess(long processingTime) {
+    /**
+     * Returns the delivery the record was unpacked from.
+     */
+    public Message getDelivery(int index) {
+        return deliveries[recordDeliveries[index]];
+    }
+    public void recordSuccess(int index, long processingTime) {
         metrics.recordSuccess(processingTime);
+        outcomes.compareAndSet(index, PENDING, ACKNOWLEDGED);
+    }
+
+    /**
+     * Acknowledges a record that was deliberately not processed, e.g. a duplicate.
+     */
+    public void recordSkipped(int index) {
+        metrics.recordSuccess(0);
+        outcomes.compareAndSet(index, PENDING, ACKNOWLEDGED);
     }
 
-    public void recordFailure() {
+    /**
+     * Acknowledges a failed record that has already been republished to the parking
+     * queue or the DLQ.
+     */
+    public void recordParked(int index) {
         metrics.recordFailure();
+        outcomes.compareAndSet(index, PENDING, ACKNOWLEDGED);
+    }
+
+    /**
+     * Acknowledges a failed record that the retry strategy has taken over. Its delivery
+     * is settled with the outcome of the retry, through {@link #holdDelivery}.
+     */
+    public void recordRetried(int index) {
+        metrics.recordFailure();
+        outcomes.compareAndSet(index, PENDING, ACKNOWLEDGED);
+    }
+
+    public void recordFailure(int index) {
+        metrics.recordFailure();
+        outcomes.compareAndSet(index, PENDING, REJECTED);
+    }
+
+    /**
+     * Hands a record back to the broker unprocessed, e.g. while the processor's
+     * circuit breaker is open.
+     */
+    public void recordShed(int index) {
+        metrics.recordFailure();
+        outcomes.compareAndSet(index, PENDING, REQUEUED);
+    }
+
+    public boolean isPending(int index) {
+        return outcomes.get(index) == PENDING;
     }
 
     public void markProcessed() {
         completionLatch.countDown();
+        if (completionLatch.getCount() == 0) {
+            completion.complete(this);
+        }
+    }
+
+    public CompletableFuture<BatchContext> completion() {
+        return completion;
     }
 
     public void awaitCompletion() {
@@ -40,7 +140,99 @@ public class BatchContext {
         }
     }
 
+    /**
+     * Returns the delivery the record came from, to be held while a retry of the record
+     * is pending. The caller adds the retry's share with {@link HeldDelivery#hold()}.
+     */
+    HeldDelivery holdDelivery(int index) {
+        int delivery = recordDeliveries[index];
+        HeldDelivery held = heldDeliveries.get(delivery);
+        if (held == null) {
+            heldDeliveries.compareAndSet(delivery, null, new HeldDelivery(deliveries[delivery]));
+            held = heldDeliveries.get(delivery);
+        }
+        return held;
+    }
+
+    /**
+     * Fixes the outcome of every record and groups the deliveries by how they are
+     * settled. Records that never completed are rejected, so a late completion cannot
+     * flip a delivery that has already been settled. Deliveries with a retry still
+     * pending are returned apart, carrying the outcome of their other records.
+     */
+    Settlement settle() {
+        for (int i = 0; i < outcomes.length(); i++) {
+            outcomes.compareAndSet(i, PENDING, REJECTED);
+        }
+        Settlement settlement = new Settlement(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>());
+        int[] settled = deliveryOutcomes();
+        for (int i = 0; i < deliveryTags.length; i++) {
+            int outcome = settled[i];
+            HeldDelivery held = heldDeliveries.get(i);
+            if (held != null) {
+                held.fold(outcome);
+                if (held.isRetrying()) {
+                    settlement.held().add(held);
+                    continue;
+                }
+                outcome = held.outcome();
+            }
+            switch (outcome) {
+                case REJECTED -> settlement.rejectedTags().add(deliveryTags[i]);
+                case REQUEUED -> settlement.requeuedTags().add(deliveryTags[i]);
+                default -> settlement.acknowledgedTags().add(deliveryTags[i]);
+            }
+        }
+        return settlement;
+    }
+
+    /**
+     * Folds record outcomes into one per delivery, the most severe winning. A delivery
+     * that carried no records is acknowledged.
+     */
+    private int[] deliveryOutcomes() {
+        int[] settled = new int[deliveryTags.length];
+        Arrays.fill(settled, ACKNOWLEDGED);
+        for (int i = 0; i < recordDeliveries.length; i++) {
+            int delivery = recordDeliveries[i];
+            int outcome = outcomes.get(i);
+            if (severity(outcome) > severity(settled[delivery])) {
+                settled[delivery] = outcome;
+            }
+        }
+        return settled;
+    }
+
+    static int severity(int outcome) {
+        return switch (outcome) {
+            case ACKNOWLEDGED -> 0;
+            case REQUEUED -> 1;
+            case REJECTED -> 2;
+            default -> 3;
+        };
+    }
+
+    /**
+     * Number of deliveries in the batch.
+     */
+    public int size() {
+        return deliveryTags.length;
+    }
+
     public BatchMetrics getMetrics() {
         return metrics;
     }
+
+    record Settlement(List<Long> acknowledgedTags, List<Long> rejectedTags, List<Long> requeuedTags,
+                      List<HeldDelivery> held) {
+    }
+
+    private static int[] identity(int size) {
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
 }
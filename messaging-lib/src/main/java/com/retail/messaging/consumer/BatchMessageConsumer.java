@@ -1,16 +1,36 @@
 package com.retail.messaging.consumer;
 
+import com.rabbitmq.client.Channel;
+import com.retail.messaging.codec.EnvelopeCodec;
 import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.dedup.MessageDeduplicator;
+import com.retail.messaging.error.ErrorClassification;
 import com.retail.messaging.error.ErrorHandler;
-import com.retail.messaging.model.BatchMetrics;
+import com.retail.messaging.error.ParkingLot;
+import com.retail.messaging.error.RetryTarget;
+import com.retail.messaging.model.MessageHeaders;
 import com.retail.messaging.model.PriceAdjustmentMessage;
 import com.retail.messaging.monitoring.MetricsCollector;
+import com.retail.messaging.support.MessagingExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Component;
 import lombok.Data;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -20,62 +40,570 @@ import java.util.concurrent.Semaphore;
 @Component
 @Data
 public class BatchMessageConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(BatchMessageConsumer.class);
+    public static final String SCHEDULE_LISTENER_ID = "pasBatchListener";
+    public static final String DIRECTIVE_LISTENER_ID = "padBatchListener";
+
     private final MessageProcessor messageProcessor;
     private final ErrorHandler errorHandler;
     private final ExecutorService processingExecutor;
+    private final PartitionedExecutor laneExecutor;
     private final Semaphore concurrencyLimiter;
     private final MetricsCollector metricsCollector;
     private final ConsumerConfig config;
+    private final RabbitTemplate rabbitTemplate;
+    private final BatchAcknowledger acknowledger;
+    private final MessageDeduplicator deduplicator;
+    private final BatchCompactor compactor;
+    private final ParkingLot parkingLot;
+    private final Semaphore inFlightBatches;
+    private final AdmissionGate admissionGate;
+    private final Map<Channel, CompletableFuture<Void>> acknowledgementChains;
+    private final Map<ProcessingType, ProcessingCircuitBreaker> circuitBreakers;
 
     public BatchMessageConsumer(
             MessageProcessor messageProcessor,
             ErrorHandler errorHandler,
             MetricsCollector metricsCollector,
-            ConsumerConfig config) {
+            ConsumerConfig config,
+            RabbitTemplate rabbitTemplate,
+            MessageDeduplicator deduplicator,
+            BatchCompactor compactor,
+            ParkingLot parkingLot,
+            MessagingExecutors executors) {
         this.messageProcessor = messageProcessor;
         this.errorHandler = errorHandler;
         this.metricsCollector = metricsCollector;
         this.config = config;
-        this.processingExecutor = Executors.newFixedThreadPool(config.getConcurrentProcessors());
-        this.concurrencyLimiter = new Semaphore(config.getConcurrentProcessors());
+        this.rabbitTemplate = rabbitTemplate;
+        this.deduplicator = deduplicator;
+        this.compactor = compactor;
+        this.parkingLot = parkingLot;
+        this.acknowledger = new BatchAcknowledger(metricsCollector);
+        int permits = processingPermits(config);
+        this.processingExecutor = config.getVirtualThreads().isEnabled()
+                ? executors.newVirtualThreadExecutor("batch-processing")
+                : executors.newWorkerPool("batch-processing", permits);
+        this.laneExecutor = new PartitionedExecutor(permits, processingExecutor);
+        this.concurrencyLimiter = new Semaphore(permits);
+        this.inFlightBatches = config.getPipeline().isEnabled()
+                ? new Semaphore(config.getPipeline().getMaxInFlightBatches())
+                : null;
+        this.acknowledgementChains = new ConcurrentHashMap<>();
+        this.admissionGate = new AdmissionGate(config.getBackpressure().getHighWatermark(),
+                config.getBackpressure().getLowWatermark());
+        metricsCollector.registerLaneQueueDepths(laneExecutor);
+        metricsCollector.registerBacklog(admissionGate);
+        this.circuitBreakers = new EnumMap<>(ProcessingType.class);
+        for (ProcessingType type : ProcessingType.values()) {
+            ProcessingCircuitBreaker breaker =
+                    new ProcessingCircuitBreaker(type, config.getCircuitBreaker(), metricsCollector);
+            circuitBreakers.put(type, breaker);
+            metricsCollector.registerCircuitBreaker(type, breaker);
+        }
     }
 
     @RabbitListener(
+            id = SCHEDULE_LISTENER_ID,
             queues = "${rabbitmq.queue.pas}",
             containerFactory = "batchRabbitListenerContainerFactory",
             batch = "true"
     )
-    public void consumePriceAdjustmentScheduleBatch(List<PriceAdjustmentMessage> messages) {
+    public void consumePriceAdjustmentScheduleBatch(List<Message> deliveries, Channel channel) {
+        consumeBatch(deliveries, channel, ProcessingType.SCHEDULE);
+    }
+
+    @RabbitListener(
+            id = DIRECTIVE_LISTENER_ID,
+            queues = "${rabbitmq.queue.pad}",
+            containerFactory = "batchRabbitListenerContainerFactory"
+    )
+    public void consumePriceAdjustmentDirectiveBatch(List<Message> deliveries, Channel channel) {
+        consumeBatch(deliveries, channel, ProcessingType.DIRECTIVE);
+    }
+
+    private void consumeBatch(List<Message> deliveries, Channel channel, ProcessingType type) {
+        awaitCircuitPermission(type);
+        UnpackedBatch unpacked = unpack(deliveries);
+        BatchContext context = new BatchContext(deliveries.size(), unpacked.recordDeliveries());
+        for (int index = 0; index < deliveries.size(); index++) {
+            context.trackDelivery(index, deliveries.get(index));
+        }
+        Map<Integer, PriceAdjustmentMessage> messages = new LinkedHashMap<>();
+        BitSet dispatched = new BitSet(unpacked.size());
+        if (inFlightBatches == null) {
+            try {
+                dispatchBatch(unpacked, messages, dispatched, context, type);
+            } catch (Exception e) {
+                retryUndispatched(unpacked.size(), messages, dispatched, context, type, e);
+            }
+            try {
+                context.awaitCompletion();
+            } finally {
+                // Even if the wait is interrupted, the batch is only settled once every
+                // dispatched record has finished
+                context.completion()
+                        .thenAccept(completed -> completeBatch(channel, completed, type))
+                        .exceptionally(e -> {
+                            logger.error("Failed to complete batch", e);
+                            return null;
+                        });
+            }
+            return;
+        }
+
+        acquireBatchSlot();
         try {
-            processBatch(messages, ProcessingType.SCHEDULE);
+            dispatchBatch(unpacked, messages, dispatched, context, type);
         } catch (Exception e) {
-            errorHandler.handleBatchError(messages, e);
+            retryUndispatched(unpacked.size(), messages, dispatched, context, type, e);
+        }
+        completeAsync(channel, context, type);
+    }
+
+    /**
+     * Splits every delivery into its records: one for a plain delivery, all of them for
+     * an envelope. A plain delivery stamped with routing headers is left undecoded until
+     * it is known not to be a duplicate, and is then decoded on its lane. A delivery that
+     * cannot be decoded keeps a single record slot holding the failure.
+     */
+    private UnpackedBatch unpack(List<Message> deliveries) {
+        UnpackedBatch unpacked = new UnpackedBatch(deliveries.size());
+        for (int index = 0; index < deliveries.size(); index++) {
+            Message delivery = deliveries.get(index);
+            try {
+                if (EnvelopeCodec.isEnvelope(delivery)) {
+                    for (PriceAdjustmentMessage record : EnvelopeCodec.unpack(delivery)) {
+                        unpacked.add(index, record, null);
+                    }
+                } else {
+                    MessageHeaders headers = MessageHeaders.read(delivery.getMessageProperties().getHeaders());
+                    if (headers != null) {
+                        unpacked.addDeferred(index, headers);
+                    } else {
+                        unpacked.add(index, decodeBody(delivery), null);
+                    }
+                }
+            } catch (Exception e) {
+                unpacked.add(index, null, e);
+            }
+        }
+        return unpacked;
+    }
+
+    /**
+     * @param messages   filled with every decoded record admitted for processing, by index
+     * @param dispatched filled with every record settled here or handed to its lane, which
+     *                   then completes it even if dispatching a later record fails
+     */
+    private void dispatchBatch(UnpackedBatch unpacked, Map<Integer, PriceAdjustmentMessage> messages,
+                               BitSet dispatched, BatchContext context, ProcessingType type) {
+        // Aligned with indexes; null where the body is still undecoded
+        List<PriceAdjustmentMessage> admitted = new ArrayList<>(unpacked.size());
+        List<MessageHeaders> routing = new ArrayList<>(unpacked.size());
+        List<Integer> indexes = new ArrayList<>(unpacked.size());
+        Set<Long> batchFingerprints = new HashSet<>();
+
+        for (int index = 0; index < unpacked.size(); index++) {
+            PriceAdjustmentMessage message = unpacked.records.get(index);
+            MessageHeaders headers = unpacked.headers.get(index);
+            Exception failure = unpacked.failures.get(index);
+            if (failure != null) {
+                errorHandler.handleUndecodable(context.getDelivery(index).getMessageProperties().getMessageId(), failure);
+                parkOrReject(null, index, context, type, failure, errorHandler.classify(failure));
+                context.markProcessed();
+                dispatched.set(index);
+                continue;
+            }
+            if (message != null ? isDuplicate(message, batchFingerprints) : isDuplicate(headers, batchFingerprints)) {
+                context.recordSkipped(index);
+                context.markProcessed();
+                dispatched.set(index);
+                continue;
+            }
+            if (message == null && compactor.isEnabled()) {
+                // Compaction compares whole messages, so it needs every body up front
+                message = decodeDeferred(index, context, type);
+                if (message == null) {
+                    context.markProcessed();
+                    dispatched.set(index);
+                    continue;
+                }
+            }
+            if (message != null) {
+                messages.put(index, message);
+            }
+            admitted.add(message);
+            routing.add(headers);
+            indexes.add(index);
+        }
+
+        BitSet folded = compactor.isEnabled() ? compactor.compact(admitted) : new BitSet();
+        if (!folded.isEmpty()) {
+            metricsCollector.recordCompaction(type, folded.cardinality());
+        }
+
+        boolean batchProcessing = messageProcessor.supportsBatch();
+        Map<Integer, LaneChunk> chunks = new LinkedHashMap<>();
+        for (int i = 0; i < admitted.size(); i++) {
+            PriceAdjustmentMessage message = admitted.get(i);
+            int messageIndex = indexes.get(i);
+            String partitionKey = message != null ? partitionKey(message) : partitionKey(routing.get(i));
+            if (folded.get(i)) {
+                // Superseded within the batch: acknowledged without processing
+                context.recordSkipped(messageIndex);
+                context.markProcessed();
+                dispatched.set(messageIndex);
+                deduplicator.recordProcessed(deduplicator.fingerprint(message));
+            } else if (batchProcessing) {
+                chunks.computeIfAbsent(laneExecutor.laneFor(partitionKey), lane -> new LaneChunk())
+                        .add(messageIndex, message);
+            } else {
+                admit(1);
+                try {
+                    laneExecutor.execute(partitionKey,
+                            () -> processMessageWithContext(message, messageIndex, context, type));
+                } catch (RuntimeException e) {
+                    admissionGate.release(1);
+                    throw e;
+                }
+                dispatched.set(messageIndex);
+            }
+        }
+
+        for (Map.Entry<Integer, LaneChunk> entry : chunks.entrySet()) {
+            LaneChunk chunk = entry.getValue();
+            admit(chunk.size());
+            try {
+                laneExecutor.executeOnLane(entry.getKey(), () -> processChunkWithContext(chunk, context, type));
+            } catch (RuntimeException e) {
+                admissionGate.release(chunk.size());
+                throw e;
+            }
+            chunk.indexes.forEach(dispatched::set);
+        }
+    }
+
+    private boolean isDuplicate(PriceAdjustmentMessage message, Set<Long> batchFingerprints) {
+        boolean hasMessageId = message.getMetadata() != null && message.getMetadata().getMessageId() != null;
+        return isDuplicate(deduplicator.fingerprint(message), hasMessageId, batchFingerprints);
+    }
+
+    private boolean isDuplicate(MessageHeaders headers, Set<Long> batchFingerprints) {
+        return isDuplicate(deduplicator.fingerprint(headers), headers.getMessageId() != null, batchFingerprints);
+    }
+
+    /**
+     * A message is a duplicate if it was already processed successfully within the
+     * dedup window, or if a message with the same id appears earlier in this batch.
+     * Without an id the fingerprint only identifies the event, SKU, store and type, so a
+     * later adjustment in the same batch is left for compaction to supersede the earlier one.
+     */
+    private boolean isDuplicate(long fingerprint, boolean hasMessageId, Set<Long> batchFingerprints) {
+        if (!deduplicator.isEnabled()) {
+            return false;
+        }
+        return deduplicator.isDuplicate(fingerprint) || (hasMessageId && !batchFingerprints.add(fingerprint));
+    }
+
+    /**
+     * Holds the listener while the processor's circuit is open, so deliveries stay on the
+     * broker instead of being taken and shed.
+     */
+    private void awaitCircuitPermission(ProcessingType type) {
+        try {
+            circuitBreakers.get(type).awaitPermission();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the processor circuit to close", e);
+        }
+    }
+
+    private void admit(int count) {
+        try {
+            admissionGate.admit(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the processing backlog to drain", e);
+        }
+    }
+
+    private void completeBatch(Channel channel, BatchContext context, ProcessingType type) {
+        metricsCollector.recordBatchProcessing(type, context.getMetrics());
+        acknowledger.acknowledge(channel, context, type);
+    }
+
+    /**
+     * Settles a pipelined batch once its last message finishes. Batches on the same
+     * channel are settled in delivery order, because a multiple-ack for a later batch
+     * would otherwise also acknowledge an earlier batch that is still running.
+     */
+    private void completeAsync(Channel channel, BatchContext context, ProcessingType type) {
+        CompletableFuture<Void> settled = acknowledgementChains.compute(channel, (ch, previous) ->
+                (previous != null ? previous : CompletableFuture.<Void>completedFuture(null))
+                        .thenCombine(context.completion(), (ignored, completed) -> completed)
+                        .thenAccept(completed -> completeBatch(ch, completed, type))
+                        .exceptionally(e -> {
+                            logger.error("Failed to complete pipelined batch", e);
+                            return null;
+                        }));
+        settled.whenComplete((ignored, e) -> {
+            acknowledgementChains.remove(channel, settled);
+            inFlightBatches.release();
+        });
+    }
+
+    private void acquireBatchSlot() {
+        try {
+            inFlightBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an in-flight batch slot", e);
+        }
+    }
+
+    /**
+     * Handles the records left behind when dispatching a batch failed partway. Those
+     * that were decoded are handed to the retry strategy; the ones it does not take, and
+     * the undecoded ones, are rejected when the batch is settled. Records already
+     * dispatched are left to finish on their lanes.
+     */
+    private void retryUndispatched(int recordCount, Map<Integer, PriceAdjustmentMessage> messages,
+                                   BitSet dispatched, BatchContext context, ProcessingType type,
+                                   Exception failure) {
+        try {
+            List<Integer> indexes = new ArrayList<>();
+            List<PriceAdjustmentMessage> undispatched = new ArrayList<>();
+            List<HeldDelivery> holds = new ArrayList<>();
+            List<RetryTarget> targets = new ArrayList<>();
+            messages.forEach((index, message) -> {
+                if (!dispatched.get(index) && context.isPending(index)) {
+                    HeldDelivery held = context.holdDelivery(index);
+                    held.hold();
+                    indexes.add(index);
+                    undispatched.add(message);
+                    holds.add(held);
+                    targets.add(retry -> redeliver(retry, held, type));
+                }
+            });
+            BitSet retried = errorHandler.handleBatchError(undispatched, failure, targets);
+            for (int i = 0; i < indexes.size(); i++) {
+                if (retried.get(i)) {
+                    context.recordRetried(indexes.get(i));
+                } else {
+                    holds.get(i).release(BatchContext.ACKNOWLEDGED);
+                }
+            }
+        } finally {
+            for (int index = dispatched.nextClearBit(0); index < recordCount;
+                 index = dispatched.nextClearBit(index + 1)) {
+                context.markProcessed();
+            }
+        }
+    }
+
+    private void recordProcessingFailure(PriceAdjustmentMessage message, int index, BatchContext context,
+                                         ProcessingType type, ProcessingCircuitBreaker breaker,
+                                         Exception failure) {
+        ErrorClassification classification = classifyFailure(breaker, failure);
+        if (scheduleRetry(message, context.holdDelivery(index), type, failure)) {
+            context.recordRetried(index);
+        } else {
+            parkOrReject(message, index, context, type, failure, classification);
+        }
+    }
+
+    private ErrorClassification classifyFailure(ProcessingCircuitBreaker breaker, Exception failure) {
+        ErrorClassification classification = errorHandler.classify(failure);
+        if (classification.permanent()) {
+            // Bad data says nothing about the health of the processor's dependencies
+            breaker.onSuccess(0);
+        } else {
+            breaker.onFailure();
+        }
+        return classification;
+    }
+
+    /**
+     * Hands a failed record to the retry strategy. Its delivery gains a share first, so
+     * it cannot be settled before the retry has run.
+     *
+     * @return false if the record is not retried and must be parked or rejected
+     */
+    private boolean scheduleRetry(PriceAdjustmentMessage message, HeldDelivery held, ProcessingType type,
+                                  Exception failure) {
+        held.hold();
+        if (errorHandler.handleError(message, failure, retry -> redeliver(retry, held, type))) {
+            return true;
+        }
+        held.release(BatchContext.ACKNOWLEDGED);
+        return false;
+    }
+
+    /**
+     * Sends a record whose retry is due back through the lane of its store group, behind
+     * the admission gate like a fresh delivery. If it cannot be queued, its delivery is
+     * requeued.
+     */
+    private void redeliver(PriceAdjustmentMessage message, HeldDelivery held, ProcessingType type) {
+        try {
+            admit(1);
+        } catch (IllegalStateException e) {
+            held.release(BatchContext.REQUEUED);
+            return;
+        }
+        try {
+            laneExecutor.execute(partitionKey(message), () -> processRetry(message, held, type));
+        } catch (RuntimeException e) {
+            logger.error("Failed to queue retry of message {}, requeueing it", messageId(message), e);
+            admissionGate.release(1);
+            held.release(BatchContext.REQUEUED);
         }
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.pad}", containerFactory = "batchRabbitListenerContainerFactory")
-    public void consumePriceAdjustmentDirectiveBatch(List<PriceAdjustmentMessage> messages) {
+    private void processRetry(PriceAdjustmentMessage message, HeldDelivery held, ProcessingType type) {
+        int outcome = BatchContext.REQUEUED;
         try {
-            processBatch(messages, ProcessingType.DIRECTIVE);
+            outcome = retry(message, held, type);
+        } finally {
+            admissionGate.release(1);
+            held.release(outcome);
+        }
+    }
+
+    /**
+     * Reprocesses a record through the same circuit breaker and dedup window as a fresh
+     * delivery, scheduling another retry if it fails again.
+     *
+     * @return the outcome of the record for its delivery
+     */
+    private int retry(PriceAdjustmentMessage message, HeldDelivery held, ProcessingType type) {
+        if (deduplicator.isEnabled() && deduplicator.isDuplicate(deduplicator.fingerprint(message))) {
+            // A redelivered copy was processed in the meantime
+            return BatchContext.ACKNOWLEDGED;
+        }
+        ProcessingCircuitBreaker breaker = circuitBreakers.get(type);
+        if (!breaker.tryAcquirePermission()) {
+            metricsCollector.recordShed(type, 1);
+            return BatchContext.REQUEUED;
+        }
+        try {
+            concurrencyLimiter.acquire();
+            try {
+                long startTime = System.nanoTime();
+                messageProcessor.processMessage(message);
+                long processingTime = System.nanoTime() - startTime;
+                breaker.onSuccess(processingTime);
+                metricsCollector.recordMessageProcessing(type, processingTime);
+            } finally {
+                concurrencyLimiter.release();
+            }
         } catch (Exception e) {
-            errorHandler.handleBatchError(messages, e);
+            ErrorClassification classification = classifyFailure(breaker, e);
+            if (scheduleRetry(message, held, type, e)) {
+                return BatchContext.ACKNOWLEDGED;
+            }
+            return park(message, held.getDelivery(), type, e, classification)
+                    ? BatchContext.ACKNOWLEDGED : BatchContext.REJECTED;
         }
+        deduplicator.recordProcessed(deduplicator.fingerprint(message));
+        errorHandler.handleRecovered(message);
+        return BatchContext.ACKNOWLEDGED;
     }
 
-    private void processBatch(List<PriceAdjustmentMessage> messages, ProcessingType type) {
-        BatchContext context = new BatchContext(messages.size());
+    private void parkOrReject(PriceAdjustmentMessage message, int index, BatchContext context, ProcessingType type,
+                              Exception failure, ErrorClassification classification) {
+        if (park(message, context.getDelivery(index), type, failure, classification)) {
+            context.recordParked(index);
+        } else {
+            context.recordFailure(index);
+        }
+    }
 
-        for (PriceAdjustmentMessage message : messages) {
-            processingExecutor.submit(() -> processMessageWithContext(message, context, type));
+    /**
+     * Deterministic failures go to the parking queue with their reason attached. Anything
+     * else, or a failed park, is left for the delivery to be rejected to the DLQ. A record
+     * of an envelope is parked or dead-lettered on its own, so its siblings can still be
+     * acknowledged; only if that fails is the whole envelope rejected.
+     *
+     * @param message the decoded record, or null if the delivery could not be decoded
+     * @return true if the record was republished, false if its delivery must be rejected
+     */
+    private boolean park(PriceAdjustmentMessage message, Message delivery, ProcessingType type,
+                         Exception failure, ErrorClassification classification) {
+        if (message != null && EnvelopeCodec.isEnvelope(delivery)) {
+            Message record = EnvelopeCodec.toRecordMessage(message, delivery.getMessageProperties());
+            return (classification.permanent()
+                    && parkingLot.park(record, type.getQueuePrefix(), failure, classification))
+                    || parkingLot.deadLetter(record, type.getQueuePrefix(), failure);
         }
+        return classification.permanent()
+                && parkingLot.park(delivery, type.getQueuePrefix(), failure, classification);
+    }
 
-        context.awaitCompletion();
-        metricsCollector.recordBatchProcessing(type, context.getMetrics());
+    private static int processingPermits(ConsumerConfig config) {
+        return config.getVirtualThreads().isEnabled()
+                ? config.getVirtualThreads().getPermits()
+                : config.getConcurrentProcessors();
+    }
+
+    /**
+     * Messages for the same store group share a lane so they complete in arrival order.
+     * Messages without a node key fall back to SKU affinity.
+     */
+    private String partitionKey(PriceAdjustmentMessage message) {
+        return message.getNodeKey() != null ? message.getNodeKey() : message.getSkuId();
+    }
+
+    private String partitionKey(MessageHeaders headers) {
+        return headers.getNodeKey() != null ? headers.getNodeKey() : headers.getSkuId();
+    }
+
+    private static String messageId(PriceAdjustmentMessage message) {
+        return message.getMetadata() != null ? message.getMetadata().getMessageId() : null;
+    }
+
+    private PriceAdjustmentMessage decodeBody(Message delivery) {
+        return (PriceAdjustmentMessage) rabbitTemplate.getMessageConverter().fromMessage(delivery);
+    }
+
+    /**
+     * Decodes a delivery that was routed from its headers alone, parking or rejecting it
+     * if the body turns out to be unreadable.
+     *
+     * @return the message, or null if it could not be decoded
+     */
+    private PriceAdjustmentMessage decodeDeferred(int index, BatchContext context, ProcessingType type) {
+        Message delivery = context.getDelivery(index);
+        try {
+            return decodeBody(delivery);
+        } catch (Exception e) {
+            errorHandler.handleUndecodable(delivery.getMessageProperties().getMessageId(), e);
+            parkOrReject(null, index, context, type, e, errorHandler.classify(e));
+            return null;
+        }
     }
 
     private void processMessageWithContext(PriceAdjustmentMessage message,
+                                           int index,
                                            BatchContext context,
                                            ProcessingType type) {
+        if (message == null) {
+            message = decodeDeferred(index, context, type);
+            if (message == null) {
+                admissionGate.release(1);
+                context.markProcessed();
+                return;
+            }
+        }
+        ProcessingCircuitBreaker breaker = circuitBreakers.get(type);
+        if (!breaker.tryAcquirePermission()) {
+            context.recordShed(index);
+            metricsCollector.recordShed(type, 1);
+            admissionGate.release(1);
+            context.markProcessed();
+            return;
+        }
         try {
             concurrencyLimiter.acquire();
             long startTime = System.nanoTime();
@@ -83,19 +611,169 @@ public class BatchMessageConsumer {
             messageProcessor.processMessage(message);
 
             long processingTime = System.nanoTime() - startTime;
-            context.recordSuccess(processingTime);
+            breaker.onSuccess(processingTime);
+            context.recordSuccess(index, processingTime);
             metricsCollector.recordMessageProcessing(type, processingTime);
+            deduplicator.recordProcessed(deduplicator.fingerprint(message));
         } catch (Exception e) {
-            context.recordFailure();
-            errorHandler.handleError(message, e);
+            recordProcessingFailure(message, index, context, type, breaker, e);
         } finally {
             concurrencyLimiter.release();
+            admissionGate.release(1);
             context.markProcessed();
         }
     }
 
+    private void processChunkWithContext(LaneChunk deferredChunk, BatchContext context, ProcessingType type) {
+        LaneChunk chunk = decodeDeferred(deferredChunk, context, type);
+        if (chunk.size() == 0) {
+            return;
+        }
+        ProcessingCircuitBreaker breaker = circuitBreakers.get(type);
+        if (!breaker.tryAcquirePermission()) {
+            metricsCollector.recordShed(type, chunk.size());
+            for (int index : chunk.indexes) {
+                context.recordShed(index);
+                admissionGate.release(1);
+                context.markProcessed();
+            }
+            return;
+        }
+
+        List<ProcessingOutcome> outcomes;
+        long processingTime;
+        try {
+            concurrencyLimiter.acquire();
+            try {
+                long startTime = System.nanoTime();
+                outcomes = messageProcessor.processBatch(chunk.messages);
+                processingTime = (System.nanoTime() - startTime) / chunk.size();
+            } finally {
+                concurrencyLimiter.release();
+            }
+        } catch (Exception e) {
+            outcomes = Collections.nCopies(chunk.size(), ProcessingOutcome.failure(e));
+            processingTime = 0;
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            PriceAdjustmentMessage message = chunk.messages.get(i);
+            int index = chunk.indexes.get(i);
+            ProcessingOutcome outcome = i < outcomes.size()
+                    ? outcomes.get(i)
+                    : ProcessingOutcome.failure(new MessageProcessingException("Processor returned no outcome"));
+            try {
+                if (outcome.successful()) {
+                    breaker.onSuccess(processingTime);
+                    context.recordSuccess(index, processingTime);
+                    metricsCollector.recordMessageProcessing(type, processingTime);
+                    deduplicator.recordProcessed(deduplicator.fingerprint(message));
+                } else {
+                    recordProcessingFailure(message, index, context, type, breaker, outcome.failure());
+                }
+            } finally {
+                admissionGate.release(1);
+                context.markProcessed();
+            }
+        }
+    }
+
+    /**
+     * Returns the chunk with every undecoded body decoded. Messages that cannot be
+     * decoded are settled here and left out.
+     */
+    private LaneChunk decodeDeferred(LaneChunk chunk, BatchContext context, ProcessingType type) {
+        if (!chunk.messages.contains(null)) {
+            return chunk;
+        }
+        LaneChunk decoded = new LaneChunk();
+        for (int i = 0; i < chunk.size(); i++) {
+            int index = chunk.indexes.get(i);
+            PriceAdjustmentMessage message = chunk.messages.get(i);
+            if (message == null) {
+                message = decodeDeferred(index, context, type);
+            }
+            if (message != null) {
+                decoded.add(index, message);
+            } else {
+                admissionGate.release(1);
+                context.markProcessed();
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Messages of one batch that hash to the same lane, in arrival order. A message is
+     * null until its body is decoded on the lane.
+     */
+    private static final class LaneChunk {
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<PriceAdjustmentMessage> messages = new ArrayList<>();
+
+        void add(int index, PriceAdjustmentMessage message) {
+            indexes.add(index);
+            messages.add(message);
+        }
+
+        int size() {
+            return messages.size();
+        }
+    }
+
+    /**
+     * The records of a batch in delivery order, each with the index of the delivery it
+     * came from. A record holds either its message, its routing headers with the body
+     * still undecoded, or the failure to decode it.
+     */
+    private static final class UnpackedBatch {
+        private final List<PriceAdjustmentMessage> records;
+        private final List<MessageHeaders> headers;
+        private final List<Exception> failures;
+        private final List<Integer> deliveryIndexes;
+
+        UnpackedBatch(int expectedSize) {
+            this.records = new ArrayList<>(expectedSize);
+            this.headers = new ArrayList<>(expectedSize);
+            this.failures = new ArrayList<>(expectedSize);
+            this.deliveryIndexes = new ArrayList<>(expectedSize);
+        }
+
+        void add(int deliveryIndex, PriceAdjustmentMessage record, Exception failure) {
+            records.add(record);
+            headers.add(null);
+            failures.add(failure);
+            deliveryIndexes.add(deliveryIndex);
+        }
+
+        void addDeferred(int deliveryIndex, MessageHeaders routing) {
+            records.add(null);
+            headers.add(routing);
+            failures.add(null);
+            deliveryIndexes.add(deliveryIndex);
+        }
+
+        int[] recordDeliveries() {
+            return deliveryIndexes.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        int size() {
+            return records.size();
+        }
+    }
+
     public enum ProcessingType {
-        SCHEDULE,
-        DIRECTIVE
+        SCHEDULE("pas"),
+        DIRECTIVE("pad");
+
+        private final String queuePrefix;
+
+        ProcessingType(String queuePrefix) {
+            this.queuePrefix = queuePrefix;
+        }
+
+        public String getQueuePrefix() {
+            return queuePrefix;
+        }
     }
 }
@@ -1,41 +1,80 @@
 package com.retail.messaging.consumer;
 
-import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.codec.EnvelopeCodec;
+import com.retail.messaging.dlq.FailureArchive;
+import com.retail.messaging.dlq.FailureRecord;
+import com.retail.messaging.dlq.FailureStore;
+import com.retail.messaging.dlq.ReplayFilter;
+import com.retail.messaging.dlq.ReplayProgress;
+import com.retail.messaging.error.ParkingLot;
+import com.retail.messaging.flow.TokenBucket;
 import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.producer.ConfirmedBatchSender;
+import com.retail.messaging.support.MessagingExecutors;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.time.Instant;
-import java.util.Map;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Takes dead letters off the PAS/PAD DLQs into the persistent {@link FailureStore} and
+ * republishes them to their original exchange once they become eligible. A sweep runs
+ * every 15 minutes by default, pulls the due records in bulk and republishes them as one
+ * confirmed batch. A message that keeps coming back is marked as permanently failed
+ * after the configured number of attempts and copied to the {@link FailureArchive}.
+ *
+ * <p>Dead letters can also be replayed in bulk on demand, from the store or from the
+ * archive. A replay runs on its own thread with its own rate budget, separate from the
+ * sweep and from live consumption.
+ *
  * @author Angel Zlatenov
  */
 @Component
 public class DeadLetterQueueProcessor {
     private static final Logger logger = LoggerFactory.getLogger(DeadLetterQueueProcessor.class);
-
-    private final RabbitTemplate rabbitTemplate;
+    // Left by the parking lot and by the broker's dead-lettering of earlier attempts
+    private static final List<String> FAILURE_HEADERS = List.of(ParkingLot.REASON_HEADER,
+            ParkingLot.EXCEPTION_HEADER, ParkingLot.EXCEPTION_MESSAGE_HEADER, ParkingLot.PARKED_AT_HEADER,
+            "x-death", "x-first-death-exchange", "x-first-death-queue", "x-first-death-reason");
+
+    private final FailureStore failureStore;
+    private final FailureArchive failureArchive;
+    private final ConfirmedBatchSender batchSender;
     private final MeterRegistry meterRegistry;
     private final ScheduledExecutorService scheduledExecutor;
-    private final Map<String, FailureRecord> failureRecords;
-
-    @Value("${rabbitmq.queue.pas.dlq}")
-    private String pasDlqQueue;
-
-    @Value("${rabbitmq.queue.pad.dlq}")
-    private String padDlqQueue;
+    private final ExecutorService maintenanceExecutor;
+    private final ExecutorService replayExecutor;
+    private final List<ScheduledFuture<?>> scheduledTasks;
+    private final MessageConverter messageConverter;
+    // Ids of store records a sweep or a replay is republishing, so the other skips them
+    private final Set<String> republishing;
+    private volatile ReplayProgress currentReplay;
 
     @Value("${rabbitmq.exchange.pas}")
     private String pasExchange;
@@ -43,154 +82,430 @@ public class DeadLetterQueueProcessor {
     @Value("${rabbitmq.exchange.pad}")
     private String padExchange;
 
+    @Value("${messaging.dlq.sweep-interval:900000}")
+    private long sweepInterval;
+
+    @Value("${messaging.dlq.sweep-batch-size:500}")
+    private int sweepBatchSize;
+
+    @Value("${messaging.dlq.reprocess-delay:3600000}")
+    private long reprocessDelay;
+
+    @Value("${messaging.dlq.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${messaging.dlq.confirm-timeout:10000}")
+    private long confirmTimeout;
+
+    @Value("${messaging.dlq.retention:604800000}")
+    private long retention;
+
+    @Value("${messaging.dlq.replay.default-rate:50}")
+    private int defaultReplayRate;
+
+    @Value("${messaging.dlq.replay.max-rate:200}")
+    private int maxReplayRate;
+
+    @Value("${messaging.dlq.replay.batch-size:100}")
+    private int replayBatchSize;
+
     @Autowired
-    public DeadLetterQueueProcessor(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
-        this.rabbitTemplate = rabbitTemplate;
+    public DeadLetterQueueProcessor(FailureStore failureStore, FailureArchive failureArchive,
+                                    ConfirmedBatchSender batchSender, RabbitTemplate rabbitTemplate,
+                                    MeterRegistry meterRegistry, MessagingExecutors executors) {
+        this.failureStore = failureStore;
+        this.failureArchive = failureArchive;
+        this.batchSender = batchSender;
         this.meterRegistry = meterRegistry;
-        this.scheduledExecutor = Executors.newScheduledThreadPool(1);
-        this.failureRecords = new ConcurrentHashMap<>();
+        this.scheduledExecutor = executors.scheduler();
+        // Sweeps wait on publisher confirms, so they run off the shared scheduler
+        this.maintenanceExecutor = executors.newWorkerPool("dlq-maintenance", 1);
+        this.replayExecutor = executors.newWorkerPool("dlq-replay", 1);
+        this.scheduledTasks = new ArrayList<>();
+        this.messageConverter = rabbitTemplate.getMessageConverter();
+        this.republishing = ConcurrentHashMap.newKeySet();
 
-        setupPeriodicProcessing();
         setupMetrics();
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.pas.dlq}")
+    @PostConstruct
+    void start() {
+        setupPeriodicProcessing();
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduledTasks.forEach(task -> task.cancel(false));
+        cancelReplay();
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.dlq.pas:pas.dlq}")
     public void processPasDLQ(Message message) {
-        processDeadLetter(message, "PAS", pasExchange);
+        processDeadLetter(message, "pas");
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.pad.dlq}")
+    @RabbitListener(queues = "${rabbitmq.queue.dlq.pad:pad.dlq}")
     public void processPadDLQ(Message message) {
-        processDeadLetter(message, "PAD", padExchange);
+        processDeadLetter(message, "pad");
     }
 
-    private void processDeadLetter(Message message, String type, String exchange) {
-        String messageId = message.getMessageProperties().getMessageId();
+    /**
+     * Records the dead letter before the delivery is acknowledged, so a failed write
+     * leaves the message on the DLQ.
+     */
+    private void processDeadLetter(Message message, String type) {
+        String messageId = messageId(message);
         logger.info("Processing dead letter message: {} of type: {}", messageId, type);
-
         meterRegistry.counter("rabbitmq.dlq.messages.received", "type", type).increment();
 
-        try {
-            PriceAdjustmentMessage adjustmentMessage = (PriceAdjustmentMessage)
-                    rabbitTemplate.getMessageConverter().fromMessage(message);
-
-            // Record failure
-            FailureRecord record = failureRecords.computeIfAbsent(messageId,
-                    k -> new FailureRecord(adjustmentMessage));
-            record.incrementAttempts();
-
-            // Check if message can be reprocessed
-            if (shouldAttemptReprocessing(record)) {
-                reprocessMessage(adjustmentMessage, exchange, type);
-            } else {
-                handlePermanentFailure(record);
-            }
+        long now = System.currentTimeMillis();
+        String error = failureReason(message);
+        Optional<FailureRecord> existing = failureStore.get(messageId);
+
+        FailureRecord record;
+        if (existing.isEmpty()) {
+            record = FailureRecord.firstFailure(messageId, type, now, now + reprocessDelay, error);
+        } else if (existing.get().attempts() + 1 >= maxAttempts) {
+            record = existing.get().failedPermanently(now, error);
+        } else {
+            record = existing.get().failedAgain(now, now + reprocessDelay, error);
+        }
 
+        try {
+            failureStore.put(record, message);
         } catch (Exception e) {
-            logger.error("Error processing dead letter message: {}", messageId, e);
             meterRegistry.counter("rabbitmq.dlq.processing.errors", "type", type).increment();
+            throw e;
+        }
+        if (record.status() == FailureRecord.Status.FAILED) {
+            handlePermanentFailure(record, message);
         }
     }
 
-    private boolean shouldAttemptReprocessing(FailureRecord record) {
-        // Check failure count and time since last attempt
-        return record.getAttempts() < 3 &&
-                record.getTimeSinceLastAttempt().toHours() >= 1;
+    /**
+     * Republishes every record that is due, in batches. Records whose republish is not
+     * confirmed stay pending until the next sweep. Records a running replay has taken
+     * are skipped; once a whole batch is taken, the rest wait for the next sweep.
+     */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        List<FailureRecord> due;
+        while (!(due = failureStore.due(now, sweepBatchSize)).isEmpty()) {
+            List<String> claimed = new ArrayList<>(due.size());
+            try {
+                if (!republish(due, now, claimed)) {
+                    return;
+                }
+            } finally {
+                claimed.forEach(republishing::remove);
+            }
+        }
     }
 
-    private void reprocessMessage(PriceAdjustmentMessage message, String exchange, String type) {
-        try {
-            // Reset retry count and update metadata
-            MessageMetadata metadata = message.getMetadata();
-            metadata.setRetryCount(0);
-            metadata.setStatus(MessageMetadata.ProcessingStatus.PROCESSING);
-
-            // Republish to original exchange
-            rabbitTemplate.convertAndSend(exchange, getRoutingKey(type), message);
+    /**
+     * @param claimed filled with the ids this sweep claims, to be released by the caller
+     * @return false if a replay holds every record of the batch
+     */
+    private boolean republish(List<FailureRecord> due, long now, List<String> claimed) {
+        List<FailureRecord> sent = new ArrayList<>(due.size());
+        List<ConfirmedBatchSender.OutboundMessage> outbound = new ArrayList<>(due.size());
+        List<FailureRecord> updated = new ArrayList<>(due.size());
+
+        for (FailureRecord record : due) {
+            if (!republishing.add(record.id())) {
+                continue;
+            }
+            claimed.add(record.id());
+            try {
+                outbound.add(new ConfirmedBatchSender.OutboundMessage(exchangeFor(record.type()),
+                        record.type() + ".key", resetForRepublish(failureStore.readMessage(record))));
+                sent.add(record);
+            } catch (IOException e) {
+                logger.error("Failed to read dead letter {} from the store", record.id(), e);
+                updated.add(record.deferredUntil(now + sweepInterval));
+            }
+        }
+        if (claimed.isEmpty()) {
+            return false;
+        }
 
-            meterRegistry.counter("rabbitmq.dlq.messages.reprocessed", "type", type).increment();
-            logger.info("Successfully requeued message: {}", metadata.getMessageId());
+        BitSet confirmed = batchSender.send(outbound, confirmTimeout);
+        for (int i = 0; i < sent.size(); i++) {
+            FailureRecord record = sent.get(i);
+            updated.add(confirmed.get(i) ? record.republished() : record.deferredUntil(now + sweepInterval));
+            meterRegistry.counter(confirmed.get(i) ? "rabbitmq.dlq.messages.reprocessed"
+                    : "rabbitmq.dlq.reprocessing.errors", "type", record.type()).increment();
+        }
+        failureStore.updateAll(updated);
+        logger.info("Republished {} of {} due dead letters", confirmed.cardinality(), sent.size());
+        return true;
+    }
 
-        } catch (Exception e) {
-            logger.error("Failed to reprocess message: {}", message.getMetadata().getMessageId(), e);
-            meterRegistry.counter("rabbitmq.dlq.reprocessing.errors", "type", type).increment();
+    /**
+     * Starts replaying the dead letters that match the filter, from the failure store or,
+     * with {@code fromArchive}, from the archive. Only one replay runs at a time.
+     *
+     * @param ratePerSecond target rate, capped at the configured maximum; non-positive
+     *                      selects the default rate
+     * @param limit         maximum number of messages to replay; non-positive for no limit
+     */
+    public synchronized ReplayProgress startReplay(boolean fromArchive, ReplayFilter filter,
+                                                   int ratePerSecond, int limit) {
+        if (currentReplay != null && currentReplay.isRunning()) {
+            throw new IllegalStateException("A dead letter replay is already running");
         }
+        int rate = Math.min(ratePerSecond > 0 ? ratePerSecond : defaultReplayRate, maxReplayRate);
+        ReplayProgress progress = new ReplayProgress(fromArchive ? "archive" : "store", filter, rate);
+        currentReplay = progress;
+        replayExecutor.execute(() -> new ReplayRun(progress, fromArchive, limit).run());
+        return progress;
     }
 
-    private void handlePermanentFailure(FailureRecord record) {
-        String messageId = record.getMessage().getMetadata().getMessageId();
-        logger.error("Message {} has failed permanent processing after {} attempts",
-                messageId, record.getAttempts());
+    public Optional<ReplayProgress> getReplayProgress() {
+        return Optional.ofNullable(currentReplay);
+    }
 
-        // Update metadata to reflect permanent failure
-        record.getMessage().getMetadata().setStatus(MessageMetadata.ProcessingStatus.DEAD_LETTERED);
+    public boolean cancelReplay() {
+        ReplayProgress progress = currentReplay;
+        if (progress == null || !progress.isRunning()) {
+            return false;
+        }
+        progress.cancel();
+        return true;
+    }
 
-        // Record metrics
+    private void handlePermanentFailure(FailureRecord record, Message message) {
+        logger.error("Message {} has failed permanent processing after {} attempts",
+                record.id(), record.attempts());
         meterRegistry.counter("rabbitmq.dlq.messages.permanent_failure").increment();
-
-        // Archive message for analysis
-        archiveFailedMessage(record);
+        failureArchive.archive(record, message);
     }
 
     private void setupPeriodicProcessing() {
-        scheduledExecutor.scheduleAtFixedRate(() -> {
+        scheduledTasks.add(scheduledExecutor.scheduleWithFixedDelay(() -> maintenanceExecutor.execute(() -> {
             try {
-                cleanupOldRecords();
+                sweep();
             } catch (Exception e) {
                 logger.error("Error during periodic DLQ processing", e);
             }
-        }, 1, 1, TimeUnit.HOURS);
+        }), sweepInterval, sweepInterval, TimeUnit.MILLISECONDS));
+
+        scheduledTasks.add(scheduledExecutor.scheduleAtFixedRate(() -> maintenanceExecutor.execute(() -> {
+            try {
+                cleanupOldRecords();
+            } catch (Exception e) {
+                logger.error("Error cleaning up DLQ records", e);
+            }
+        }), 1, 1, TimeUnit.HOURS));
     }
 
     private void cleanupOldRecords() {
-        Instant threshold = Instant.now().minus(java.time.Duration.ofDays(7));
-        failureRecords.entrySet().removeIf(entry ->
-                entry.getValue().getLastAttempt().isBefore(threshold));
+        long threshold = System.currentTimeMillis() - retention;
+        failureStore.removeAll(failureStore.olderThan(threshold));
     }
 
     private void setupMetrics() {
-        meterRegistry.gauge("rabbitmq.dlq.tracked_messages", failureRecords, Map::size);
+        meterRegistry.gauge("rabbitmq.dlq.tracked_messages", failureStore, FailureStore::size);
+    }
+
+    private String exchangeFor(String type) {
+        return "pad".equals(type) ? padExchange : pasExchange;
+    }
+
+    /**
+     * Turns a stored dead letter back into a first attempt before it returns to its
+     * original exchange: the retry count and status on its metadata are reset and the
+     * headers of its earlier failures removed. A body that cannot be decoded is sent with
+     * only its headers reset.
+     */
+    private Message resetForRepublish(Message stored) {
+        MessageProperties properties = stored.getMessageProperties();
+        FAILURE_HEADERS.forEach(properties.getHeaders()::remove);
+        try {
+            if (EnvelopeCodec.isEnvelope(stored)) {
+                List<PriceAdjustmentMessage> records = EnvelopeCodec.unpack(stored);
+                records.forEach(DeadLetterQueueProcessor::resetRetries);
+                // Keep the envelope deflated if it was
+                boolean deflated = EnvelopeCodec.DEFLATE_ENCODING.equals(properties.getContentEncoding());
+                properties.setContentEncoding(null);
+                return EnvelopeCodec.pack(records, properties, deflated ? 1 : 0);
+            }
+            if (messageConverter.fromMessage(stored) instanceof PriceAdjustmentMessage adjustment) {
+                resetRetries(adjustment);
+                return messageConverter.toMessage(adjustment, properties);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not reset the retry metadata of dead letter {}, republishing it as stored",
+                    properties.getMessageId(), e);
+        }
+        return stored;
+    }
+
+    private static void resetRetries(PriceAdjustmentMessage message) {
+        MessageMetadata metadata = message.getMetadata();
+        if (metadata != null) {
+            metadata.setRetryCount(0);
+            metadata.setStatus(MessageMetadata.ProcessingStatus.PROCESSING);
+        }
     }
 
-    private String getRoutingKey(String type) {
-        return type.toLowerCase() + ".key";
+    private static String messageId(Message message) {
+        String messageId = message.getMessageProperties().getMessageId();
+        if (messageId == null) {
+            messageId = message.getMessageProperties().getCorrelationId();
+        }
+        return messageId != null ? messageId : UUID.randomUUID().toString();
     }
 
-    private void archiveFailedMessage(FailureRecord record) {
-        // Implementation for archiving permanently failed messages
-        // This could write to a database or file system
+    private static String failureReason(Message message) {
+        Object reason = message.getMessageProperties().getHeader(ParkingLot.EXCEPTION_MESSAGE_HEADER);
+        return reason != null ? reason.toString() : "dead-lettered";
     }
 
-    private static class FailureRecord {
-        private final PriceAdjustmentMessage message;
-        private int attempts;
-        private Instant lastAttempt;
+    /**
+     * One replay: scans its source, collects matching messages into batches and
+     * republishes each batch once the rate budget allows it.
+     */
+    private final class ReplayRun {
+        private final ReplayProgress progress;
+        private final boolean fromArchive;
+        private final long limit;
+        private final TokenBucket budget;
+        private final int batchSize;
+        private final List<FailureRecord> batchRecords = new ArrayList<>();
+        private final List<ConfirmedBatchSender.OutboundMessage> batch = new ArrayList<>();
+        private final List<FailureRecord> storeUpdates = new ArrayList<>();
+        private final List<String> claimed = new ArrayList<>();
+
+        ReplayRun(ReplayProgress progress, boolean fromArchive, int limit) {
+            this.progress = progress;
+            this.fromArchive = fromArchive;
+            this.limit = limit > 0 ? limit : Long.MAX_VALUE;
+            this.budget = new TokenBucket(progress.getRatePerSecond());
+            this.batchSize = Math.max(1, Math.min(replayBatchSize, progress.getRatePerSecond()));
+        }
 
-        public FailureRecord(PriceAdjustmentMessage message) {
-            this.message = message;
-            this.attempts = 0;
-            this.lastAttempt = Instant.now();
+        void run() {
+            logger.info("Starting dead letter replay from {} at {} msg/s", progress.getSource(),
+                    progress.getRatePerSecond());
+            try {
+                if (fromArchive) {
+                    ReplayFilter filter = progress.getFilter();
+                    failureArchive.scan(day(filter.failedFrom(), LocalDate.MIN), day(filter.failedTo(), LocalDate.MAX),
+                            failure -> offer(failure.record(), failure.message()));
+                } else {
+                    scanStore();
+                }
+                if (progress.isRunning()) {
+                    publishBatch();
+                }
+                progress.finish(ReplayProgress.State.COMPLETED, null);
+            } catch (Exception e) {
+                logger.error("Dead letter replay failed", e);
+                progress.finish(ReplayProgress.State.FAILED, e.getMessage());
+            } finally {
+                // Marked only at the end, as republished records move to the end of the
+                // eligibility order the scan walks. Until then the claims keep the sweep
+                // from republishing them too.
+                try {
+                    if (!storeUpdates.isEmpty()) {
+                        failureStore.updateAll(storeUpdates);
+                    }
+                } finally {
+                    claimed.forEach(republishing::remove);
+                }
+            }
+            logger.info("Dead letter replay {}: {} of {} matched messages confirmed", progress.getState(),
+                    progress.getConfirmed(), progress.getMatched());
         }
 
-        public void incrementAttempts() {
-            attempts++;
-            lastAttempt = Instant.now();
+        private void scanStore() throws IOException {
+            FailureRecord after = null;
+            List<FailureRecord> page;
+            while (!(page = failureStore.page(after, replayBatchSize)).isEmpty()) {
+                for (FailureRecord record : page) {
+                    if (!progress.isRunning()) {
+                        return;
+                    }
+                    if (!progress.getFilter().matches(record)) {
+                        // Skipped without reading the message from disk
+                        progress.recordScanned();
+                    } else if (!offer(record, failureStore.readMessage(record))) {
+                        return;
+                    }
+                }
+                after = page.get(page.size() - 1);
+            }
         }
 
-        public int getAttempts() {
-            return attempts;
+        /**
+         * @return false once the replay should stop
+         */
+        private boolean offer(FailureRecord record, Message message) {
+            if (!progress.isRunning() || progress.getMatched() >= limit) {
+                return false;
+            }
+            progress.recordScanned();
+            if (!progress.getFilter().matches(record) || !matchesPayload(message)) {
+                return true;
+            }
+            if (!fromArchive) {
+                if (!republishing.add(record.id())) {
+                    // A sweep is republishing it right now
+                    return true;
+                }
+                claimed.add(record.id());
+            }
+            progress.recordMatched();
+            batchRecords.add(record);
+            batch.add(new ConfirmedBatchSender.OutboundMessage(
+                    exchangeFor(record.type()), record.type() + ".key", resetForRepublish(message)));
+            if (batch.size() >= batchSize) {
+                publishBatch();
+            }
+            return progress.isRunning();
         }
 
-        public Instant getLastAttempt() {
-            return lastAttempt;
+        private boolean matchesPayload(Message message) {
+            if (!progress.getFilter().needsPayload()) {
+                return true;
+            }
+            try {
+                Object payload = messageConverter.fromMessage(message);
+                return payload instanceof PriceAdjustmentMessage adjustment && progress.getFilter().matches(adjustment);
+            } catch (Exception e) {
+                return false;
+            }
         }
 
-        public java.time.Duration getTimeSinceLastAttempt() {
-            return java.time.Duration.between(lastAttempt, Instant.now());
+        private void publishBatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                budget.acquire(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                progress.cancel();
+                return;
+            }
+            BitSet confirmed = batchSender.send(batch, confirmTimeout);
+            progress.recordPublished(confirmed.cardinality(), batch.size() - confirmed.cardinality());
+            for (int i = 0; i < batchRecords.size(); i++) {
+                FailureRecord record = batchRecords.get(i);
+                if (confirmed.get(i)) {
+                    meterRegistry.counter("rabbitmq.dlq.messages.replayed", "type", record.type()).increment();
+                    if (!fromArchive) {
+                        storeUpdates.add(record.republished());
+                    }
+                }
+            }
+            batch.clear();
+            batchRecords.clear();
         }
 
-        public PriceAdjustmentMessage getMessage() {
-            return message;
+        private LocalDate day(Long epochMillis, LocalDate fallback) {
+            return epochMillis != null ? LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC) : fallback;
         }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,9 @@ package com.retail.messaging.consumer;
 import com.retail.messaging.model.PriceAdjustmentMessage;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Angel Zlatenov
  */
@@ -23,6 +26,42 @@ public class DefaultMessageProcessor implements MessageProcessor {
         }
     }
 
+    @Override
+    public List<ProcessingOutcome> processBatch(List<PriceAdjustmentMessage> messages) {
+        List<ProcessingOutcome> outcomes = new ArrayList<>(messages.size());
+        List<PriceAdjustmentMessage> valid = new ArrayList<>(messages.size());
+
+        for (PriceAdjustmentMessage message : messages) {
+            try {
+                validateMessage(message);
+                transformMessage(message);
+                valid.add(message);
+                outcomes.add(ProcessingOutcome.success());
+            } catch (Exception e) {
+                outcomes.add(ProcessingOutcome.failure(
+                        new MessageProcessingException("Failed to process message", e)));
+            }
+        }
+
+        try {
+            writeBatch(valid);
+        } catch (Exception e) {
+            // A failed bulk write fails every message that was part of it
+            MessageProcessingException failure = new MessageProcessingException("Failed to write batch", e);
+            for (int i = 0; i < outcomes.size(); i++) {
+                if (outcomes.get(i).successful()) {
+                    outcomes.set(i, ProcessingOutcome.failure(failure));
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
     private void validateMessage(PriceAdjustmentMessage message) {
         // Add validation logic
     }
@@ -30,4 +69,8 @@ public class DefaultMessageProcessor implements MessageProcessor {
     private void transformMessage(PriceAdjustmentMessage message) {
         // Add transformation logic
     }
+
+    private void writeBatch(List<PriceAdjustmentMessage> messages) {
+        // Add bulk output logic, e.g. one PAR/PSE file append for the whole batch
+    }
 }
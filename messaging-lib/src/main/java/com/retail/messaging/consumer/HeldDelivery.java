@@ -0,0 +1,109 @@
+package com.retail.messaging.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A delivery that stays unacknowledged while some of its records wait for a retry. Its
+ * batch and every scheduled retry each hold a share of it; once all shares are released
+ * the delivery is settled on its own, the most severe outcome winning.
+ *
+ * @author Angel Zlatenov
+ */
+
+final class HeldDelivery {
+    private static final Logger logger = LoggerFactory.getLogger(HeldDelivery.class);
+
+    private final Message delivery;
+    private final AtomicInteger shares = new AtomicInteger(1);
+    private final AtomicInteger outcome = new AtomicInteger(BatchContext.ACKNOWLEDGED);
+    private volatile Channel channel;
+    private volatile IntConsumer onSettled;
+
+    HeldDelivery(Message delivery) {
+        this.delivery = delivery;
+    }
+
+    Message getDelivery() {
+        return delivery;
+    }
+
+    long getDeliveryTag() {
+        return delivery.getMessageProperties().getDeliveryTag();
+    }
+
+    /**
+     * Adds a share for a retry about to be scheduled. Only called by a holder of a
+     * share, so a delivery whose batch holds the last share can no longer gain one.
+     */
+    void hold() {
+        shares.incrementAndGet();
+    }
+
+    /**
+     * Whether a retry still holds a share, so the delivery must outlive its batch.
+     */
+    boolean isRetrying() {
+        return shares.get() > 1;
+    }
+
+    int outcome() {
+        return outcome.get();
+    }
+
+    /**
+     * Folds an outcome into the one the delivery is settled with, without releasing a share.
+     */
+    void fold(int recordOutcome) {
+        outcome.accumulateAndGet(recordOutcome, (current, next) ->
+                BatchContext.severity(next) > BatchContext.severity(current) ? next : current);
+    }
+
+    /**
+     * Releases the share of the batch once the batch is settled.
+     *
+     * @param onSettled called with the final outcome once the delivery is settled
+     */
+    void releaseBatch(Channel channel, IntConsumer onSettled) {
+        this.channel = channel;
+        this.onSettled = onSettled;
+        if (shares.decrementAndGet() == 0) {
+            settle();
+        }
+    }
+
+    /**
+     * Releases the share of a retry with the outcome of its record.
+     */
+    void release(int recordOutcome) {
+        fold(recordOutcome);
+        if (shares.decrementAndGet() == 0) {
+            settle();
+        }
+    }
+
+    private void settle() {
+        int settled = outcome.get();
+        try {
+            if (settled == BatchContext.REJECTED) {
+                channel.basicNack(getDeliveryTag(), false, false);
+            } else if (settled == BatchContext.REQUEUED) {
+                channel.basicNack(getDeliveryTag(), false, true);
+            } else {
+                channel.basicAck(getDeliveryTag(), false);
+            }
+        } catch (IOException | ShutdownSignalException e) {
+            // The broker redelivers the message once the channel closes
+            logger.error("Failed to settle held delivery {}", getDeliveryTag(), e);
+        } finally {
+            onSettled.accept(settled);
+        }
+    }
+}
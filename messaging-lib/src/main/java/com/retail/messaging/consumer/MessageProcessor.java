@@ -2,10 +2,39 @@ package com.retail.messaging.consumer;
 
 import com.retail.messaging.model.PriceAdjustmentMessage;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Angel Zlatenov
  */
 
 public interface MessageProcessor {
     void processMessage(PriceAdjustmentMessage message) throws MessageProcessingException;
-}
\ No newline at end of file
+
+    /**
+     * Processes the messages in order and returns one outcome per message, at the same
+     * index as the message. Only called when {@link #supportsBatch()} returns true; the
+     * default falls back to {@link #processMessage} for each message.
+     */
+    default List<ProcessingOutcome> processBatch(List<PriceAdjustmentMessage> messages) {
+        List<ProcessingOutcome> outcomes = new ArrayList<>(messages.size());
+        for (PriceAdjustmentMessage message : messages) {
+            try {
+                processMessage(message);
+                outcomes.add(ProcessingOutcome.success());
+            } catch (Exception e) {
+                outcomes.add(ProcessingOutcome.failure(e));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Whether the consumer should hand this processor whole lane-partitioned batches
+     * instead of one message at a time.
+     */
+    default boolean supportsBatch() {
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+package com.retail.messaging.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes tasks on a fixed number of serial lanes. Tasks submitted with the same
+ * partition key always land on the same lane and run one at a time in submission
+ * order, while different lanes run in parallel on the backing executor.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class PartitionedExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedExecutor.class);
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    private final Executor backingExecutor;
+    private final Lane[] lanes;
+
+    public PartitionedExecutor(int laneCount, Executor backingExecutor) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be positive: " + laneCount);
+        }
+        this.backingExecutor = backingExecutor;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    public void execute(String partitionKey, Runnable task) {
+        lanes[laneFor(partitionKey)].enqueue(task);
+    }
+
+    public void executeOnLane(int lane, Runnable task) {
+        lanes[lane].enqueue(task);
+    }
+
+    public int laneFor(String partitionKey) {
+        if (partitionKey == null) {
+            return 0;
+        }
+        int hash = partitionKey.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getQueueDepth(int lane) {
+        return lanes[lane].depth.get();
+    }
+
+    private final class Lane implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void enqueue(Runnable task) {
+            tasks.add(task);
+            depth.incrementAndGet();
+            scheduleIfIdle();
+        }
+
+        private void scheduleIfIdle() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    backingExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Yield the worker after a bounded number of tasks so one hot lane
+                // cannot monopolise a thread while other lanes are waiting
+                for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Unhandled exception in processing lane", e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    scheduleIfIdle();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.monitoring.MetricsCollector;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops feeding the message processor while it is failing or slow. The breaker opens
+ * once the failure rate or slow-call rate over the last {@code windowSize} calls crosses
+ * its threshold. While open, no processor call is permitted until the open duration has
+ * passed; it then lets a limited number of probe calls through and closes again only if
+ * all of them succeed in time.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class ProcessingCircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final BatchMessageConsumer.ProcessingType type;
+    private final MetricsCollector metricsCollector;
+    private final boolean enabled;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int halfOpenProbes;
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+
+    private State state = State.CLOSED;
+    private long stateChangedAt;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failures;
+    private int slows;
+    private int probesIssued;
+    private int probeSuccesses;
+
+    public ProcessingCircuitBreaker(BatchMessageConsumer.ProcessingType type,
+                                    ConsumerConfig.CircuitBreaker settings,
+                                    MetricsCollector metricsCollector) {
+        this.type = type;
+        this.metricsCollector = metricsCollector;
+        this.enabled = settings.isEnabled();
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.slowCallRateThreshold = settings.getSlowCallRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(settings.getSlowCallDuration());
+        this.minimumCalls = Math.min(settings.getMinimumCalls(), settings.getWindowSize());
+        this.openDurationMillis = settings.getOpenDuration();
+        this.halfOpenProbes = settings.getHalfOpenProbes();
+        this.failedCalls = new boolean[settings.getWindowSize()];
+        this.slowCalls = new boolean[settings.getWindowSize()];
+    }
+
+    /**
+     * Returns whether a processor call may be made now. A denied caller should park the
+     * message instead of processing it.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (!enabled || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (elapsedInState() < openDurationMillis) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (probesIssued < halfOpenProbes) {
+            probesIssued++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Blocks the calling listener while the breaker is open, and while all half-open
+     * probes are still outstanding, so no further deliveries are taken from the broker.
+     */
+    public synchronized void awaitPermission() throws InterruptedException {
+        while (enabled) {
+            if (state == State.OPEN) {
+                long remaining = openDurationMillis - elapsedInState();
+                if (remaining <= 0) {
+                    transitionTo(State.HALF_OPEN);
+                    return;
+                }
+                wait(remaining);
+            } else if (state == State.HALF_OPEN && probesIssued >= halfOpenProbes) {
+                long remaining = openDurationMillis - elapsedInState();
+                if (remaining <= 0) {
+                    // Probes that never reported back must not wedge the breaker
+                    transitionTo(State.HALF_OPEN);
+                    return;
+                }
+                wait(remaining);
+            } else {
+                return;
+            }
+        }
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        boolean slow = latencyNanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                transitionTo(State.OPEN);
+            } else if (++probeSuccesses >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false, slow);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true, false);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (recordedCalls == failedCalls.length) {
+            failures -= failedCalls[windowIndex] ? 1 : 0;
+            slows -= slowCalls[windowIndex] ? 1 : 0;
+        } else {
+            recordedCalls++;
+        }
+        failedCalls[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        failures += failed ? 1 : 0;
+        slows += slow ? 1 : 0;
+        windowIndex = (windowIndex + 1) % failedCalls.length;
+
+        if (recordedCalls >= minimumCalls &&
+                (failures * 100 >= failureRateThreshold * recordedCalls ||
+                        slows * 100 >= slowCallRateThreshold * recordedCalls)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State target) {
+        State previous = state;
+        state = target;
+        stateChangedAt = System.currentTimeMillis();
+        probesIssued = 0;
+        probeSuccesses = 0;
+        if (target == State.CLOSED) {
+            windowIndex = 0;
+            recordedCalls = 0;
+            failures = 0;
+            slows = 0;
+        }
+        notifyAll();
+        metricsCollector.recordCircuitTransition(type, previous, target);
+    }
+
+    private long elapsedInState() {
+        return System.currentTimeMillis() - stateChangedAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.retail.messaging.consumer;
+
+/**
+ * Result of processing a single message as part of a batch.
+ *
+ * @author Angel Zlatenov
+ */
+
+public record ProcessingOutcome(boolean successful, Exception failure) {
+    private static final ProcessingOutcome SUCCESS = new ProcessingOutcome(true, null);
+
+    public static ProcessingOutcome success() {
+        return SUCCESS;
+    }
+
+    public static ProcessingOutcome failure(Exception failure) {
+        return new ProcessingOutcome(false, failure);
+    }
+}
@@ -1,73 +1,329 @@
 package com.retail.messaging.consumer;
 
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.retail.messaging.codec.EnvelopeCodec;
+import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.error.ErrorAggregator;
+import com.retail.messaging.error.ErrorClassification;
+import com.retail.messaging.error.ErrorClassificationPipeline;
+import com.retail.messaging.error.ParkingLot;
 import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes single PAS/PAD messages. A failed message is not retried on the listener
+ * thread: it is decoded once and handed to an in-process timer that resubmits it after
+ * the backoff of its retry tier, while the listener keeps consuming. Deterministic
+ * failures skip the retries and go straight to the parking queue. Messages that exhaust
+ * their retries are published to the dead letter exchange explicitly.
+ * <p>
+ * Deliveries are acknowledged manually once their message has been processed, parked
+ * or dead-lettered, so messages still in flight on a virtual thread or waiting for a
+ * retry are redelivered by the broker after a crash.
+ */
 @Component
 public class RetryableMessageConsumer {
     private static final Logger logger = LoggerFactory.getLogger(RetryableMessageConsumer.class);
     private static final int MAX_RETRY_ATTEMPTS = 3;
+    private static final long INITIAL_RETRY_DELAY_MS = 1000;
 
     private final RabbitTemplate rabbitTemplate;
     private final MessageConsumer messageProcessor;
+    private final ErrorClassificationPipeline classificationPipeline;
+    private final ParkingLot parkingLot;
+    private final ErrorAggregator errorAggregator;
+    private final ExecutorService virtualThreadExecutor;
+    private final Semaphore processingPermits;
+    private final ScheduledExecutorService retryScheduler;
+    private final ExecutorService retryExecutor;
+    private final AtomicInteger[] retryBacklog;
+
+    @Value("${rabbitmq.exchange.dlx}")
+    private String deadLetterExchange;
 
     @Autowired
-    public RetryableMessageConsumer(RabbitTemplate rabbitTemplate, MessageConsumer messageProcessor) {
+    public RetryableMessageConsumer(RabbitTemplate rabbitTemplate, MessageConsumer messageProcessor,
+                                    ConsumerConfig config, MeterRegistry meterRegistry,
+                                    ErrorClassificationPipeline classificationPipeline, ParkingLot parkingLot,
+                                    ErrorAggregator errorAggregator, MessagingExecutors executors) {
         this.rabbitTemplate = rabbitTemplate;
         this.messageProcessor = messageProcessor;
+        this.classificationPipeline = classificationPipeline;
+        this.parkingLot = parkingLot;
+        this.errorAggregator = errorAggregator;
+        if (config.getVirtualThreads().isEnabled()) {
+            this.virtualThreadExecutor = executors.newVirtualThreadExecutor("retryable-consumer");
+            this.processingPermits = new Semaphore(config.getVirtualThreads().getPermits());
+        } else {
+            this.virtualThreadExecutor = null;
+            this.processingPermits = null;
+        }
+        this.retryScheduler = executors.scheduler();
+        // The shared scheduler only times the backoff; the retry itself runs elsewhere
+        this.retryExecutor = virtualThreadExecutor != null
+                ? virtualThreadExecutor : executors.newWorkerPool("retryable-consumer-retry", 2);
+        this.retryBacklog = new AtomicInteger[MAX_RETRY_ATTEMPTS];
+        for (int tier = 0; tier < MAX_RETRY_ATTEMPTS; tier++) {
+            retryBacklog[tier] = new AtomicInteger();
+            meterRegistry.gauge("rabbitmq.retries.backlog",
+                    List.of(Tag.of("tier", String.valueOf(tier + 1))), retryBacklog[tier]);
+        }
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.pas}", ackMode = "MANUAL")
+    public void consumePriceAdjustmentSchedule(Message message, Channel channel) {
+        dispatch(message, new Delivery(channel, message.getMessageProperties().getDeliveryTag()), "pas");
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.pad}", ackMode = "MANUAL")
+    public void consumePriceAdjustmentDirective(Message message, Channel channel) {
+        dispatch(message, new Delivery(channel, message.getMessageProperties().getDeliveryTag()), "pad");
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.pas}")
-    public void consumePriceAdjustmentSchedule(Message message) {
+    private void dispatch(Message message, Delivery delivery, String type) {
+        if (EnvelopeCodec.isEnvelope(message)) {
+            dispatchEnvelope(message, delivery, type);
+            return;
+        }
+        PriceAdjustmentMessage adjustmentMessage;
         try {
-            processWithRetry(message, 0);
+            adjustmentMessage = (PriceAdjustmentMessage) rabbitTemplate.getMessageConverter().fromMessage(message);
         } catch (Exception e) {
-            logger.error("Failed to process message after {} attempts", MAX_RETRY_ATTEMPTS, e);
-            // Message will be sent to DLQ by RabbitMQ's dead letter configuration
+            rejectUndecodable(message, delivery, type, e);
+            return;
         }
+        dispatch(message, adjustmentMessage, delivery, type);
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.pad}")
-    public void consumePriceAdjustmentDirective(Message message) {
+    /**
+     * Each record of an envelope is handled as a delivery of its own, so it is retried,
+     * parked or dead-lettered without its siblings. The envelope is acknowledged once
+     * every record has been settled.
+     */
+    private void dispatchEnvelope(Message envelope, Delivery delivery, String type) {
+        List<PriceAdjustmentMessage> records;
         try {
-            processWithRetry(message, 0);
+            records = EnvelopeCodec.unpack(envelope);
         } catch (Exception e) {
-            logger.error("Failed to process message after {} attempts", MAX_RETRY_ATTEMPTS, e);
-            // Message will be sent to DLQ by RabbitMQ's dead letter configuration
+            rejectUndecodable(envelope, delivery, type, e);
+            return;
+        }
+        if (records.isEmpty()) {
+            delivery.settle();
+            return;
+        }
+        delivery.expect(records.size());
+        for (PriceAdjustmentMessage record : records) {
+            dispatch(EnvelopeCodec.toRecordMessage(record, envelope.getMessageProperties()), record, delivery, type);
         }
     }
 
-    private void processWithRetry(Message message, int retryCount) throws MessageProcessingException {
+    private void rejectUndecodable(Message message, Delivery delivery, String type, Exception cause) {
+        errorAggregator.record(cause, message.getMessageProperties().getMessageId());
         try {
-            PriceAdjustmentMessage adjustmentMessage = (PriceAdjustmentMessage)
-                    rabbitTemplate.getMessageConverter().fromMessage(message);
+            parkOrDeadLetter(message, type, cause, classificationPipeline.classify(cause));
+            delivery.settle();
+        } catch (RuntimeException e) {
+            logger.error("Failed to settle undecodable message {}, requeueing it",
+                    message.getMessageProperties().getMessageId(), e);
+            delivery.fail();
+        }
+    }
 
-            messageProcessor.processMessage(adjustmentMessage);
+    private void dispatch(Message original, PriceAdjustmentMessage adjustmentMessage, Delivery delivery,
+                          String type) {
+        RetryAttempt attempt = new RetryAttempt(original, adjustmentMessage, delivery, type, 0);
+        if (virtualThreadExecutor == null) {
+            process(attempt);
+        } else {
+            acquirePermit();
+            submitToVirtualThread(attempt);
+        }
+    }
 
-        } catch (Exception e) {
-            if (retryCount < MAX_RETRY_ATTEMPTS &&
-                    messageProcessor.handleFailure(
-                            (PriceAdjustmentMessage) rabbitTemplate.getMessageConverter().fromMessage(message),
-                            e,
-                            retryCount
-                    )) {
-                // Exponential backoff
+    /**
+     * In virtual-thread mode processing runs on a virtual thread so the listener thread
+     * is free to take the next delivery. The listener only blocks once the permit
+     * budget is exhausted. The virtual thread settles the delivery once processing is
+     * done.
+     */
+    private void submitToVirtualThread(RetryAttempt attempt) {
+        try {
+            virtualThreadExecutor.execute(() -> {
                 try {
-                    Thread.sleep((long) Math.pow(2, retryCount) * 1000);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new MessageProcessingException("Processing interrupted during retry delay", ie);
+                    process(attempt);
+                } finally {
+                    processingPermits.release();
                 }
-                processWithRetry(message, retryCount + 1);
+            });
+        } catch (RuntimeException e) {
+            processingPermits.release();
+            logger.error("Failed to submit message {}, requeueing it", messageId(attempt), e);
+            attempt.delivery().fail();
+        }
+    }
+
+    private void process(RetryAttempt attempt) {
+        try {
+            messageProcessor.processMessage(attempt.message());
+        } catch (Exception e) {
+            handleProcessingFailure(attempt, e);
+            return;
+        }
+        attempt.delivery().settle();
+    }
+
+    /**
+     * Parks, dead-letters or schedules a retry for the failed attempt. The delivery stays
+     * unacknowledged while a retry is pending.
+     */
+    private void handleProcessingFailure(RetryAttempt attempt, Exception e) {
+        try {
+            ErrorClassification classification = classificationPipeline.classify(e);
+            if (classification.permanent()) {
+                errorAggregator.record(e, messageId(attempt));
+                parkOrDeadLetter(attempt.original(), attempt.type(), e, classification);
+            } else if (attempt.retryCount() < MAX_RETRY_ATTEMPTS &&
+                    messageProcessor.handleFailure(attempt.message(), e, attempt.retryCount())) {
+                scheduleRetry(attempt);
+                return;
             } else {
-                throw new MessageProcessingException("Message processing failed", e);
+                errorAggregator.record(e, messageId(attempt));
+                deadLetter(attempt.original(), attempt.type(), e);
+            }
+        } catch (RuntimeException failure) {
+            logger.error("Failed to handle failure of message {}, requeueing it", messageId(attempt), failure);
+            attempt.delivery().fail();
+            return;
+        }
+        attempt.delivery().settle();
+    }
+
+    private void scheduleRetry(RetryAttempt attempt) {
+        int tier = attempt.retryCount();
+        long delay = INITIAL_RETRY_DELAY_MS << tier;
+        RetryAttempt next = new RetryAttempt(attempt.original(), attempt.message(), attempt.delivery(),
+                attempt.type(), tier + 1);
+
+        retryBacklog[tier].incrementAndGet();
+        retryScheduler.schedule(() -> retryExecutor.execute(() -> {
+            retryBacklog[tier].decrementAndGet();
+            if (processingPermits == null) {
+                process(next);
+                return;
+            }
+            // retryExecutor is the virtual thread executor in this mode, so waiting for a
+            // permit only parks this thread, never the scheduler or a listener
+            try {
+                acquirePermit();
+            } catch (IllegalStateException e) {
+                next.delivery().fail();
+                return;
+            }
+            try {
+                process(next);
+            } finally {
+                processingPermits.release();
+            }
+        }), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void acquirePermit() {
+        try {
+            processingPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a processing permit", e);
+        }
+    }
+
+    private void parkOrDeadLetter(Message message, String type, Exception cause,
+                                  ErrorClassification classification) {
+        if (!classification.permanent() || !parkingLot.park(message, type, cause, classification)) {
+            deadLetter(message, type, cause);
+        }
+    }
+
+    /**
+     * A failed publish propagates, so the delivery is requeued rather than acknowledged
+     * and lost.
+     */
+    private void deadLetter(Message message, String type, Exception cause) {
+        message.getMessageProperties().setHeader("x-exception-message", String.valueOf(cause.getMessage()));
+        rabbitTemplate.send(deadLetterExchange, type + ".dlq", message);
+    }
+
+    private static String messageId(RetryAttempt attempt) {
+        return attempt.message().getMetadata() != null ? attempt.message().getMetadata().getMessageId() : null;
+    }
+
+    private record RetryAttempt(Message original, PriceAdjustmentMessage message, Delivery delivery, String type,
+                                int retryCount) {
+    }
+
+    /**
+     * An unacknowledged delivery and the number of its records still unsettled. It is
+     * acknowledged once they are all settled, or requeued if any of them could not be.
+     */
+    private static final class Delivery {
+        private final Channel channel;
+        private final long deliveryTag;
+        private final AtomicInteger unsettled = new AtomicInteger(1);
+        private volatile boolean failed;
+
+        Delivery(Channel channel, long deliveryTag) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+        }
+
+        /**
+         * Sets the number of records to settle; only called before any is dispatched.
+         */
+        void expect(int records) {
+            unsettled.set(records);
+        }
+
+        void settle() {
+            if (unsettled.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        void fail() {
+            failed = true;
+            settle();
+        }
+
+        private void complete() {
+            try {
+                if (failed) {
+                    channel.basicNack(deliveryTag, false, true);
+                } else {
+                    channel.basicAck(deliveryTag, false);
+                }
+            } catch (IOException | ShutdownSignalException e) {
+                // The broker redelivers the message once the channel closes
+                logger.error("Failed to acknowledge delivery {}", deliveryTag, e);
             }
         }
     }
-}
\ No newline at end of file
+}
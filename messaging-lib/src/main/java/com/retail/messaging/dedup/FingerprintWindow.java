@@ -0,0 +1,128 @@
+package com.retail.messaging.dedup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Time-windowed set of fingerprints split into rotating generations. Expiry drops a
+ * whole generation at once, and a generation that reaches its capacity is rotated
+ * early, so both the retention time and the memory footprint stay bounded.
+ *
+ * @author Angel Zlatenov
+ */
+
+final class FingerprintWindow {
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final int generationCount;
+    private final long windowMillis;
+    private final long generationMillis;
+    private final int generationCapacity;
+    private final Deque<Generation> generations;
+
+    FingerprintWindow(int generationCount, long windowMillis, int maxEntries) {
+        this.generationCount = generationCount;
+        this.windowMillis = windowMillis;
+        this.generationMillis = Math.max(1, windowMillis / generationCount);
+        this.generationCapacity = Math.max(1, maxEntries / generationCount);
+        this.generations = new ArrayDeque<>(generationCount + 1);
+    }
+
+    synchronized boolean contains(long fingerprint) {
+        for (Generation generation : generations) {
+            if (generation.fingerprints.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void add(long fingerprint, long now) {
+        expire(now);
+        Generation current = generations.peekFirst();
+        if (current == null
+                || now - current.startMillis >= generationMillis
+                || current.fingerprints.isFull()
+                || current.fingerprints.size() >= generationCapacity) {
+            current = new Generation(now, new LongHashSet(generationCapacity));
+            generations.addFirst(current);
+            while (generations.size() > generationCount) {
+                generations.removeLast();
+            }
+        }
+        current.fingerprints.add(fingerprint);
+    }
+
+    synchronized void expire(long now) {
+        Iterator<Generation> oldestFirst = generations.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            if (now - oldestFirst.next().startMillis < windowMillis) {
+                break;
+            }
+            oldestFirst.remove();
+        }
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (Generation generation : generations) {
+            size += generation.fingerprints.size();
+        }
+        return size;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        // Copy under the lock, write outside it, so lookups are not blocked on disk I/O
+        List<long[]> fingerprints = new ArrayList<>();
+        List<Long> startTimes = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Generation> oldestFirst = generations.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                Generation generation = oldestFirst.next();
+                startTimes.add(generation.startMillis);
+                fingerprints.add(generation.fingerprints.toArray());
+            }
+        }
+
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(fingerprints.size());
+        for (int i = 0; i < fingerprints.size(); i++) {
+            out.writeLong(startTimes.get(i));
+            out.writeInt(fingerprints.get(i).length);
+            for (long fingerprint : fingerprints.get(i)) {
+                out.writeLong(fingerprint);
+            }
+        }
+    }
+
+    synchronized void readFrom(DataInputStream in, long now) throws IOException {
+        int version = in.readInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported dedup snapshot version: " + version);
+        }
+        generations.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long startMillis = in.readLong();
+            int size = in.readInt();
+            LongHashSet fingerprints = new LongHashSet(Math.max(size, generationCapacity));
+            for (int j = 0; j < size; j++) {
+                fingerprints.add(in.readLong());
+            }
+            generations.addFirst(new Generation(startMillis, fingerprints));
+        }
+        while (generations.size() > generationCount) {
+            generations.removeLast();
+        }
+        expire(now);
+    }
+
+    private record Generation(long startMillis, LongHashSet fingerprints) {
+    }
+}
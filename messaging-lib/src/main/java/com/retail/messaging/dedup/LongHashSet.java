@@ -0,0 +1,71 @@
+package com.retail.messaging.dedup;
+
+/**
+ * Open-addressing set of 64-bit fingerprints backed by a single primitive array, so
+ * each entry costs eight bytes plus load factor slack and no per-entry object.
+ * Zero is reserved as the empty slot marker and is stored as one.
+ *
+ * @author Angel Zlatenov
+ */
+
+final class LongHashSet {
+    private final long[] slots;
+    private final int mask;
+    private int size;
+
+    LongHashSet(int expectedEntries) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedEntries) * 2 - 1) << 1;
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    boolean add(long value) {
+        long key = value == 0 ? 1 : value;
+        int index = slot(key);
+        while (slots[index] != 0) {
+            if (slots[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = key;
+        size++;
+        return true;
+    }
+
+    boolean contains(long value) {
+        long key = value == 0 ? 1 : value;
+        int index = slot(key);
+        while (slots[index] != 0) {
+            if (slots[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size >= slots.length / 2;
+    }
+
+    long[] toArray() {
+        long[] values = new long[size];
+        int next = 0;
+        for (long slot : slots) {
+            if (slot != 0) {
+                values[next++] = slot;
+            }
+        }
+        return values;
+    }
+
+    private int slot(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+}
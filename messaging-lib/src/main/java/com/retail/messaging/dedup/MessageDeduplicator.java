@@ -0,0 +1,180 @@
+package com.retail.messaging.dedup;
+
+import com.retail.messaging.model.MessageHeaders;
+import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects redelivered price adjustments so they skip processing. Messages are keyed on
+ * their message id, or on eventId, skuId, nodeKey and adjustment type when no id is
+ * present, and remembered as 64-bit fingerprints for the configured window. The
+ * fingerprints are periodically snapshotted to disk so they survive a restart.
+ *
+ * <p>A message is only remembered once it has been processed successfully, so a
+ * redelivery after a failure is still processed.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class MessageDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageDeduplicator.class);
+    private static final int GENERATIONS = 8;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final FingerprintWindow window;
+    private final ScheduledExecutorService snapshotExecutor;
+    private volatile ScheduledFuture<?> snapshotTask;
+    private final Counter hits;
+    private final Counter misses;
+    private final boolean enabled;
+    private final Path snapshotFile;
+    private final long snapshotInterval;
+
+    public MessageDeduplicator(MeterRegistry meterRegistry, MessagingExecutors executors,
+                               @Value("${messaging.consumer.dedup.enabled:true}") boolean enabled,
+                               @Value("${messaging.consumer.dedup.window:86400000}") long windowMillis,
+                               @Value("${messaging.consumer.dedup.max-entries:1000000}") int maxEntries,
+                               @Value("${messaging.consumer.dedup.snapshot-file:data/dedup.snapshot}") String snapshotFile,
+                               @Value("${messaging.consumer.dedup.snapshot-interval:60000}") long snapshotInterval) {
+        this.enabled = enabled;
+        this.window = new FingerprintWindow(GENERATIONS, windowMillis, maxEntries);
+        this.snapshotExecutor = executors.scheduler();
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.snapshotInterval = snapshotInterval;
+        this.hits = meterRegistry.counter("messages.dedup.hits");
+        this.misses = meterRegistry.counter("messages.dedup.misses");
+        meterRegistry.gauge("messages.dedup.entries", window, FingerprintWindow::size);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        restoreSnapshot();
+        snapshotTask = snapshotExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                window.expire(System.currentTimeMillis());
+                writeSnapshot();
+            } catch (Exception e) {
+                logger.error("Error writing dedup snapshot", e);
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+        }
+        if (enabled) {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                logger.error("Error writing final dedup snapshot", e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDuplicate(long fingerprint) {
+        if (!enabled) {
+            return false;
+        }
+        boolean duplicate = window.contains(fingerprint);
+        (duplicate ? hits : misses).increment();
+        return duplicate;
+    }
+
+    public void recordProcessed(long fingerprint) {
+        if (enabled) {
+            window.add(fingerprint, System.currentTimeMillis());
+        }
+    }
+
+    public long fingerprint(PriceAdjustmentMessage message) {
+        MessageMetadata metadata = message.getMetadata();
+        return fingerprint(metadata != null ? metadata.getMessageId() : null, message.getEventId(),
+                message.getSkuId(), message.getNodeKey(), message.getAdjustmentType());
+    }
+
+    /**
+     * Same fingerprint as for the message the headers were stamped from.
+     */
+    public long fingerprint(MessageHeaders headers) {
+        return fingerprint(headers.getMessageId(), headers.getEventId(), headers.getSkuId(), headers.getNodeKey(),
+                headers.getAdjustmentType());
+    }
+
+    private static long fingerprint(String messageId, String eventId, String skuId, String nodeKey,
+                                    PriceAdjustmentMessage.AdjustmentType adjustmentType) {
+        if (messageId != null) {
+            return hash(FNV_OFFSET_BASIS, messageId);
+        }
+        long hash = hash(FNV_OFFSET_BASIS, eventId);
+        hash = hash(hash, skuId);
+        hash = hash(hash, nodeKey);
+        return hash(hash, adjustmentType != null ? adjustmentType.name() : null);
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= FNV_PRIME;
+            }
+        }
+        // Field separator, so ("ab", "c") and ("a", "bc") differ
+        hash ^= 0x1F;
+        return hash * FNV_PRIME;
+    }
+
+    private void restoreSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            window.readFrom(in, System.currentTimeMillis());
+            logger.info("Restored {} dedup fingerprints from {}", window.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Could not restore dedup snapshot from {}, starting empty", snapshotFile, e);
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path parent = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "dedup", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            window.writeTo(out);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
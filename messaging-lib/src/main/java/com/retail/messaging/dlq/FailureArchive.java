@@ -0,0 +1,686 @@
+package com.retail.messaging.dlq;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of permanently failed messages. Records are written by a single
+ * background thread in batches to the active segment of the current UTC day
+ * ({@code <dir>/<yyyy-MM-dd>/<n>.log}). A segment is closed once it reaches the size
+ * limit, the roll interval or the end of the day, and is then rewritten as independently
+ * deflated blocks ({@code <n>.seg}), so a single record can be read by inflating one
+ * block.
+ *
+ * <p>Each segment has a sidecar index ({@code <n>.idx}) mapping message id and event id
+ * to the record's position. The sidecars are loaded into memory on startup, so lookups
+ * read exactly one record. Retention drops whole day directories.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class FailureArchive {
+    private static final Logger logger = LoggerFactory.getLogger(FailureArchive.class);
+    private static final String RAW_SUFFIX = ".log";
+    private static final String COMPRESSED_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int FRAME_HEADER = 8;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_WRITE_BATCH = 500;
+    private static final byte MESSAGE_ID_KEY = 0;
+    private static final byte EVENT_ID_KEY = 1;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long rollIntervalMillis;
+    private final int retentionDays;
+    private final MessageConverter messageConverter;
+    private final BlockingQueue<ArchiveRequest> queue;
+    private final ExecutorService writerExecutor;
+    private final Counter archived;
+    private final Counter dropped;
+    private final Map<String, Location> byMessageId = new HashMap<>();
+    private final Map<String, List<Location>> byEventId = new HashMap<>();
+    private volatile boolean running;
+
+    private ActiveSegment active;
+    private LocalDate lastPurge;
+
+    public FailureArchive(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry, MessagingExecutors executors,
+                          @Value("${messaging.dlq.archive.directory:data/dlq/archive}") String directory,
+                          @Value("${messaging.dlq.archive.max-segment-bytes:67108864}") long maxSegmentBytes,
+                          @Value("${messaging.dlq.archive.roll-interval:3600000}") long rollIntervalMillis,
+                          @Value("${messaging.dlq.archive.retention-days:7}") int retentionDays,
+                          @Value("${messaging.dlq.archive.queue-capacity:10000}") int queueCapacity) {
+        this.directory = Paths.get(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.rollIntervalMillis = rollIntervalMillis;
+        this.retentionDays = retentionDays;
+        this.messageConverter = rabbitTemplate.getMessageConverter();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerExecutor = executors.newWorkerPool("dlq-archive-writer", 1);
+        this.archived = meterRegistry.counter("rabbitmq.dlq.archive.written");
+        this.dropped = meterRegistry.counter("rabbitmq.dlq.archive.dropped");
+        meterRegistry.gauge("rabbitmq.dlq.archive.queue", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(directory);
+        purgeIfDayChanged();
+        loadSegments();
+        running = true;
+        writerExecutor.execute(this::writeLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        // The writer closes the active segment on its way out, so wait for it
+        MessagingExecutors.shutdownAndAwait(writerExecutor, 10000);
+    }
+
+    /**
+     * Queues a permanently failed message for archiving. Never blocks the caller; if the
+     * queue is full the message is only counted as dropped, as it is still held by the
+     * failure store until the store's own retention expires.
+     */
+    public void archive(FailureRecord record, Message message) {
+        if (!queue.offer(new ArchiveRequest(record, message, System.currentTimeMillis()))) {
+            logger.error("Archive queue full, not archiving message {}", record.id());
+            dropped.increment();
+        }
+    }
+
+    public Optional<ArchivedFailure> findByMessageId(String messageId) throws IOException {
+        Location location;
+        synchronized (this) {
+            location = byMessageId.get(messageId);
+        }
+        return location != null ? Optional.ofNullable(read(location)) : Optional.empty();
+    }
+
+    public List<ArchivedFailure> findByEventId(String eventId) throws IOException {
+        List<Location> locations;
+        synchronized (this) {
+            locations = new ArrayList<>(byEventId.getOrDefault(eventId, List.of()));
+        }
+        List<ArchivedFailure> failures = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            ArchivedFailure failure = read(location);
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        return failures;
+    }
+
+    private void writeLoop() {
+        List<ArchiveRequest> batch = new ArrayList<>(MAX_WRITE_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                ArchiveRequest first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_WRITE_BATCH - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                rollIfDue();
+                purgeIfDayChanged();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Failed to write {} records to the failure archive", batch.size(), e);
+                batch.clear();
+            }
+        }
+        try {
+            closeActive();
+        } catch (IOException e) {
+            logger.error("Failed to close the active archive segment", e);
+        }
+    }
+
+    /**
+     * Appends the batch to the active segment and forces it once, then records the new
+     * index entries.
+     */
+    private void writeBatch(List<ArchiveRequest> batch) throws IOException {
+        if (active == null) {
+            active = openSegment(LocalDate.now(ZoneOffset.UTC));
+        }
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(indexBytes);
+        List<IndexEntry> entries = new ArrayList<>(batch.size() * 2);
+
+        for (ArchiveRequest request : batch) {
+            String eventId = eventId(request.message());
+            byte[] payload = encodeRecord(request, eventId);
+            long position = active.append(payload);
+            entries.add(new IndexEntry(MESSAGE_ID_KEY, request.record().id(), position));
+            if (eventId != null) {
+                entries.add(new IndexEntry(EVENT_ID_KEY, eventId, position));
+            }
+        }
+        active.data.force(false);
+
+        for (IndexEntry entry : entries) {
+            entry.writeTo(indexOut);
+        }
+        active.index.write(ByteBuffer.wrap(indexBytes.toByteArray()));
+        synchronized (this) {
+            for (IndexEntry entry : entries) {
+                addToIndex(entry, active.rawFile);
+            }
+        }
+        archived.increment(batch.size());
+    }
+
+    private void rollIfDue() throws IOException {
+        if (active == null) {
+            return;
+        }
+        if (!active.day.equals(LocalDate.now(ZoneOffset.UTC)) || active.size >= maxSegmentBytes
+                || System.currentTimeMillis() - active.openedAt >= rollIntervalMillis) {
+            closeActive();
+        }
+    }
+
+    private void purgeIfDayChanged() throws IOException {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (!today.equals(lastPurge)) {
+            purgeExpiredDays();
+            lastPurge = today;
+        }
+    }
+
+    private void closeActive() throws IOException {
+        if (active == null) {
+            return;
+        }
+        ActiveSegment closing = active;
+        active = null;
+        closing.data.close();
+        closing.index.close();
+        compress(closing.rawFile);
+    }
+
+    private ActiveSegment openSegment(LocalDate day) throws IOException {
+        Path dayDirectory = directory.resolve(day.toString());
+        Files.createDirectories(dayDirectory);
+        int sequence = 0;
+        try (Stream<Path> files = Files.list(dayDirectory)) {
+            sequence = files.map(path -> segmentNumber(path.getFileName().toString()))
+                    .max(Integer::compare)
+                    .map(max -> max + 1)
+                    .orElse(0);
+        }
+        Path rawFile = dayDirectory.resolve(sequence + RAW_SUFFIX);
+        return new ActiveSegment(day, rawFile,
+                FileChannel.open(rawFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                FileChannel.open(indexFile(rawFile), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Rewrites a closed raw segment as deflated blocks and regenerates its index from the
+     * records themselves, so index entries lost in a crash are recovered here.
+     */
+    private void compress(Path rawFile) throws IOException {
+        Path compressedFile = rawFile.resolveSibling(baseName(rawFile) + COMPRESSED_SUFFIX);
+        List<IndexEntry> entries = new ArrayList<>();
+
+        try (FileChannel raw = FileChannel.open(rawFile, StandardOpenOption.READ);
+             FileChannel compressed = FileChannel.open(compressedFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+            long blockOffset = 0;
+            long position = 0;
+            byte[] payload;
+            while ((payload = readFrame(raw, position)) != null) {
+                if (block.size() > 0 && block.size() + FRAME_HEADER + payload.length > BLOCK_SIZE) {
+                    blockOffset += writeBlock(compressed, block.toByteArray());
+                    block.reset();
+                }
+                long packed = blockOffset << 16 | block.size();
+                ArchivedFailure failure = decodeRecord(payload);
+                entries.add(new IndexEntry(MESSAGE_ID_KEY, failure.record().id(), packed));
+                if (failure.eventId() != null) {
+                    entries.add(new IndexEntry(EVENT_ID_KEY, failure.eventId(), packed));
+                }
+                new DataOutputStream(block).writeInt(payload.length);
+                block.write(payload);
+                position += FRAME_HEADER + payload.length;
+            }
+            if (block.size() > 0) {
+                writeBlock(compressed, block.toByteArray());
+            }
+            compressed.force(true);
+        }
+
+        Path indexFile = indexFile(rawFile);
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(indexBytes);
+        for (IndexEntry entry : entries) {
+            entry.writeTo(indexOut);
+        }
+        Files.write(indexFile, indexBytes.toByteArray());
+        Files.delete(rawFile);
+
+        synchronized (this) {
+            removeSegmentFromIndex(rawFile);
+            for (IndexEntry entry : entries) {
+                addToIndex(entry, compressedFile);
+            }
+        }
+    }
+
+    private static long writeBlock(FileChannel channel, byte[] block) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(block);
+            deflater.finish();
+            byte[] buffer = new byte[block.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + length);
+            frame.putInt(length).putInt(block.length).put(buffer, 0, length).flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            return FRAME_HEADER + length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads every archived record of the given UTC days in write order, stopping early
+     * once the visitor returns false.
+     */
+    public void scan(LocalDate fromDay, LocalDate toDay, Predicate<ArchivedFailure> visitor) throws IOException {
+        for (Path dayDirectory : dayDirectories()) {
+            LocalDate day = LocalDate.parse(dayDirectory.getFileName().toString());
+            if (day.isBefore(fromDay) || day.isAfter(toDay)) {
+                continue;
+            }
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(dayDirectory)) {
+                segments = files.filter(path -> !path.toString().endsWith(INDEX_SUFFIX))
+                        .sorted(Comparator.comparing(path -> segmentNumber(path.getFileName().toString())))
+                        .toList();
+            } catch (NoSuchFileException e) {
+                // Deleted by retention while scanning
+                continue;
+            }
+            for (Path segment : segments) {
+                if (!scanSegment(segment, visitor)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean scanSegment(Path segment, Predicate<ArchivedFailure> visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long position = 0;
+            if (segment.toString().endsWith(RAW_SUFFIX)) {
+                byte[] payload;
+                while ((payload = readFrame(channel, position)) != null) {
+                    if (!visitor.test(decodeRecord(payload))) {
+                        return false;
+                    }
+                    position += FRAME_HEADER + payload.length;
+                }
+                return true;
+            }
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            while (position + FRAME_HEADER <= channel.size()) {
+                header.clear();
+                readFully(channel, position, header);
+                ByteBuffer compressed = ByteBuffer.allocate(header.getInt(0));
+                readFully(channel, position + FRAME_HEADER, compressed);
+                DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(inflate(compressed.array(), header.getInt(4))));
+                while (in.available() > 0) {
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    if (!visitor.test(decodeRecord(payload))) {
+                        return false;
+                    }
+                }
+                position += FRAME_HEADER + compressed.capacity();
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            // Compressed or deleted since the listing; a compressed raw segment is picked
+            // up under its new name only by a later scan
+            return true;
+        }
+    }
+
+    private ArchivedFailure read(Location location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location.segment(), StandardOpenOption.READ)) {
+            if (location.segment().toString().endsWith(RAW_SUFFIX)) {
+                byte[] payload = readFrame(channel, location.position());
+                return payload != null ? decodeRecord(payload) : null;
+            }
+            long blockOffset = location.position() >>> 16;
+            int offsetInBlock = (int) (location.position() & 0xFFFF);
+
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            readFully(channel, blockOffset, header);
+            ByteBuffer compressed = ByteBuffer.allocate(header.getInt(0));
+            readFully(channel, blockOffset + FRAME_HEADER, compressed);
+            byte[] block = inflate(compressed.array(), header.getInt(4));
+
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(block, offsetInBlock, block.length - offsetInBlock));
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return decodeRecord(payload);
+        } catch (NoSuchFileException e) {
+            // Removed by retention or replaced by its compressed form since the lookup
+            return null;
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] block = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                read += inflater.inflate(block, read, length - read);
+            }
+            return block;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads a CRC-checked frame, or returns null at the end of the file or at a torn
+     * write.
+     */
+    private static byte[] readFrame(FileChannel channel, long position) throws IOException {
+        if (position + FRAME_HEADER > channel.size()) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        readFully(channel, position, header);
+        int length = header.getInt(0);
+        if (length <= 0 || position + FRAME_HEADER + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, position + FRAME_HEADER, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == header.getInt(4) ? payload.array() : null;
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Loads the sidecar indexes. Raw segments left behind by a previous run are closed
+     * now, so they are compressed first.
+     */
+    private void loadSegments() throws IOException {
+        for (Path dayDirectory : dayDirectories()) {
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(dayDirectory)) {
+                segments = files.filter(path -> !path.toString().endsWith(INDEX_SUFFIX))
+                        .sorted(Comparator.comparing(path -> segmentNumber(path.getFileName().toString())))
+                        .toList();
+            }
+            for (Path segment : segments) {
+                if (segment.toString().endsWith(RAW_SUFFIX)) {
+                    compress(segment);
+                } else {
+                    loadIndex(segment);
+                }
+            }
+        }
+        logger.info("Loaded failure archive index with {} messages", byMessageId.size());
+    }
+
+    private void loadIndex(Path segment) throws IOException {
+        Path indexFile = indexFile(segment);
+        if (!Files.exists(indexFile)) {
+            logger.warn("Archive segment {} has no index, its records cannot be looked up", segment);
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(indexFile)))) {
+            while (in.available() > 0) {
+                addToIndex(IndexEntry.readFrom(in), segment);
+            }
+        }
+    }
+
+    private void purgeExpiredDays() throws IOException {
+        LocalDate oldestKept = LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays - 1L);
+        for (Path dayDirectory : dayDirectories()) {
+            LocalDate day = LocalDate.parse(dayDirectory.getFileName().toString());
+            if (day.isBefore(oldestKept)) {
+                synchronized (this) {
+                    byMessageId.values().removeIf(location -> location.segment().startsWith(dayDirectory));
+                    byEventId.values().forEach(locations ->
+                            locations.removeIf(location -> location.segment().startsWith(dayDirectory)));
+                    byEventId.values().removeIf(List::isEmpty);
+                }
+                try (Stream<Path> files = Files.list(dayDirectory)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(dayDirectory);
+                logger.info("Deleted archived failures for {}", day);
+            }
+        }
+    }
+
+    private List<Path> dayDirectories() throws IOException {
+        List<Path> days = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path path : stream) {
+                try {
+                    LocalDate.parse(path.getFileName().toString());
+                    days.add(path);
+                } catch (DateTimeParseException e) {
+                    // Not a day directory
+                }
+            }
+        }
+        days.sort(Comparator.naturalOrder());
+        return days;
+    }
+
+    private void addToIndex(IndexEntry entry, Path segment) {
+        Location location = new Location(segment, entry.position());
+        if (entry.kind() == MESSAGE_ID_KEY) {
+            byMessageId.put(entry.key(), location);
+        } else {
+            byEventId.computeIfAbsent(entry.key(), key -> new ArrayList<>()).add(location);
+        }
+    }
+
+    private void removeSegmentFromIndex(Path segment) {
+        byMessageId.values().removeIf(location -> location.segment().equals(segment));
+        byEventId.values().forEach(locations -> locations.removeIf(location -> location.segment().equals(segment)));
+    }
+
+    private String eventId(Message message) {
+        try {
+            Object payload = messageConverter.fromMessage(message);
+            return payload instanceof PriceAdjustmentMessage adjustment ? adjustment.getEventId() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static byte[] encodeRecord(ArchiveRequest request, String eventId) throws IOException {
+        FailureRecord record = request.record();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(request.message().getBody().length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(request.archivedAt());
+        out.writeUTF(eventId != null ? eventId : "");
+        out.writeUTF(record.id());
+        out.writeUTF(record.type());
+        out.writeInt(record.attempts());
+        out.writeLong(record.firstFailedAt());
+        out.writeLong(record.lastFailedAt());
+        out.writeUTF(record.lastError() != null ? record.lastError() : "");
+        out.write(MessageCodec.encode(request.message()));
+        return bytes.toByteArray();
+    }
+
+    private static ArchivedFailure decodeRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long archivedAt = in.readLong();
+        String eventId = in.readUTF();
+        FailureRecord record = new FailureRecord(in.readUTF(), in.readUTF(), FailureRecord.Status.FAILED,
+                in.readInt(), in.readLong(), in.readLong(), Long.MAX_VALUE, in.readUTF());
+        return new ArchivedFailure(record, eventId.isEmpty() ? null : eventId, archivedAt, MessageCodec.decode(in));
+    }
+
+    private static Path indexFile(Path segment) {
+        return segment.resolveSibling(baseName(segment) + INDEX_SUFFIX);
+    }
+
+    private static String baseName(Path segment) {
+        String name = segment.getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static int segmentNumber(String fileName) {
+        try {
+            int dot = fileName.indexOf('.');
+            return Integer.parseInt(dot < 0 ? fileName : fileName.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A permanently failed message read back from the archive.
+     */
+    public record ArchivedFailure(FailureRecord record, String eventId, long archivedAt, Message message) {
+    }
+
+    private record ArchiveRequest(FailureRecord record, Message message, long archivedAt) {
+    }
+
+    /**
+     * Position of a record: the frame offset in a raw segment, or the block offset shifted
+     * left by 16 bits plus the offset inside the inflated block in a compressed one.
+     */
+    private record Location(Path segment, long position) {
+    }
+
+    private record IndexEntry(byte kind, String key, long position) {
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(kind);
+            out.writeUTF(key);
+            out.writeLong(position);
+        }
+
+        static IndexEntry readFrom(DataInputStream in) throws IOException {
+            return new IndexEntry(in.readByte(), in.readUTF(), in.readLong());
+        }
+    }
+
+    private static final class ActiveSegment {
+        private final LocalDate day;
+        private final Path rawFile;
+        private final FileChannel data;
+        private final FileChannel index;
+        private final long openedAt;
+        private long size;
+
+        ActiveSegment(LocalDate day, Path rawFile, FileChannel data, FileChannel index) {
+            this.day = day;
+            this.rawFile = rawFile;
+            this.data = data;
+            this.index = index;
+            this.openedAt = System.currentTimeMillis();
+        }
+
+        long append(byte[] payload) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+            frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            long position = size;
+            while (frame.hasRemaining()) {
+                data.write(frame);
+            }
+            size += FRAME_HEADER + payload.length;
+            return position;
+        }
+    }
+}
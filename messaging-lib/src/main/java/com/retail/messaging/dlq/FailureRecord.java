@@ -0,0 +1,42 @@
+package com.retail.messaging.dlq;
+
+/**
+ * A dead-lettered message tracked by the {@link FailureStore}. The message body itself
+ * stays on disk; this is the part kept in memory and used for scheduling and paging.
+ *
+ * @param id             message id of the dead letter
+ * @param type           queue prefix of the message, {@code pas} or {@code pad}
+ * @param attempts       number of times the message reached the DLQ
+ * @param nextEligibleAt when the message may be republished; {@link Long#MAX_VALUE} if never
+ * @author Angel Zlatenov
+ */
+public record FailureRecord(String id, String type, Status status, int attempts,
+                            long firstFailedAt, long lastFailedAt, long nextEligibleAt, String lastError) {
+
+    public enum Status {
+        PENDING,
+        REPUBLISHED,
+        FAILED
+    }
+
+    public static FailureRecord firstFailure(String id, String type, long now, long nextEligibleAt, String error) {
+        return new FailureRecord(id, type, Status.PENDING, 1, now, now, nextEligibleAt, error);
+    }
+
+    public FailureRecord failedAgain(long now, long nextEligibleAt, String error) {
+        return new FailureRecord(id, type, Status.PENDING, attempts + 1, firstFailedAt, now, nextEligibleAt, error);
+    }
+
+    public FailureRecord failedPermanently(long now, String error) {
+        return new FailureRecord(id, type, Status.FAILED, attempts + 1, firstFailedAt, now, Long.MAX_VALUE, error);
+    }
+
+    public FailureRecord republished() {
+        return new FailureRecord(id, type, Status.REPUBLISHED, attempts, firstFailedAt, lastFailedAt,
+                Long.MAX_VALUE, lastError);
+    }
+
+    public FailureRecord deferredUntil(long nextEligibleAt) {
+        return new FailureRecord(id, type, status, attempts, firstFailedAt, lastFailedAt, nextEligibleAt, lastError);
+    }
+}
@@ -0,0 +1,390 @@
+package com.retail.messaging.dlq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk store of dead-lettered messages, indexed by the time each becomes eligible for
+ * republishing. The data file is an append-only log: every change appends an entry, and
+ * the latest entry per id wins when the log is replayed on startup. Only the
+ * {@link FailureRecord}s and the file offsets of the message bodies are kept in memory.
+ * The log is compacted once most of it is superseded entries.
+ *
+ * <p>Each entry is framed as length, CRC32 and payload, so a torn write at the tail is
+ * detected and truncated on startup.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class FailureStore {
+    private static final Logger logger = LoggerFactory.getLogger(FailureStore.class);
+    private static final byte PUT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+    private static final int FRAME_HEADER = 8;
+    private static final int MAX_ERROR_LENGTH = 1024;
+    private static final long MIN_COMPACTION_BYTES = 4L * 1024 * 1024;
+    private static final Comparator<FailureRecord> BY_ELIGIBILITY =
+            Comparator.comparingLong(FailureRecord::nextEligibleAt).thenComparing(FailureRecord::id);
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final NavigableSet<FailureRecord> byEligibility = new TreeSet<>(BY_ELIGIBILITY);
+    private FileChannel channel;
+    private long liveBytes;
+    private long fileBytes;
+
+    public FailureStore(@Value("${messaging.dlq.store-file:data/dlq/failures.log}") String file) {
+        this.file = Paths.get(file);
+    }
+
+    @PostConstruct
+    synchronized void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        logger.info("Opened DLQ failure store {} with {} records", file, entries.size());
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    /**
+     * Stores a record together with the dead-lettered message, replacing any earlier
+     * version. The entry is forced to disk before this returns.
+     */
+    public synchronized void put(FailureRecord record, Message message) {
+        try {
+            byte[] messageBytes = MessageCodec.encode(message);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(messageBytes.length + 128);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(PUT);
+            writeRecord(out, record);
+            int messageStart = out.size();
+            out.write(messageBytes);
+            long position = append(payload.toByteArray());
+            channel.force(false);
+            index(record, position + FRAME_HEADER + messageStart, messageBytes.length,
+                    FRAME_HEADER + payload.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write DLQ record " + record.id(), e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Updates the metadata of existing records without rewriting their messages.
+     * Records that are no longer in the store are ignored.
+     */
+    public synchronized void updateAll(Collection<FailureRecord> records) {
+        try {
+            for (FailureRecord record : records) {
+                Entry entry = entries.get(record.id());
+                if (entry == null) {
+                    continue;
+                }
+                ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeByte(UPDATE);
+                writeRecord(out, record);
+                append(payload.toByteArray());
+                // Only the original PUT frame is live; this update is dead on arrival
+                // once the next compaction rewrites the record
+                index(record, entry.messageOffset, entry.messageLength, entry.frameLength);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to update DLQ records", e);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized void removeAll(Collection<String> ids) {
+        try {
+            for (String id : ids) {
+                if (!entries.containsKey(id)) {
+                    continue;
+                }
+                ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeByte(REMOVE);
+                out.writeUTF(id);
+                append(payload.toByteArray());
+                unindex(id);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove DLQ records", e);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized Optional<FailureRecord> get(String id) {
+        Entry entry = entries.get(id);
+        return entry != null ? Optional.of(entry.record) : Optional.empty();
+    }
+
+    /**
+     * Returns up to {@code limit} records whose next eligible time has passed, earliest
+     * first.
+     */
+    public synchronized List<FailureRecord> due(long now, int limit) {
+        List<FailureRecord> due = new ArrayList<>(Math.min(limit, byEligibility.size()));
+        for (FailureRecord record : byEligibility) {
+            if (record.nextEligibleAt() > now || due.size() >= limit) {
+                break;
+            }
+            due.add(record);
+        }
+        return due;
+    }
+
+    /**
+     * Pages through all records in eligibility order without touching the data file.
+     * Pass null to start from the beginning, or the last record of the previous page.
+     */
+    public synchronized List<FailureRecord> page(FailureRecord after, int limit) {
+        Collection<FailureRecord> tail = after == null ? byEligibility : byEligibility.tailSet(after, false);
+        List<FailureRecord> page = new ArrayList<>(Math.min(limit, tail.size()));
+        for (FailureRecord record : tail) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(record);
+        }
+        return page;
+    }
+
+    /**
+     * Returns the ids of records whose last failure is older than the threshold.
+     */
+    public synchronized List<String> olderThan(long threshold) {
+        List<String> ids = new ArrayList<>();
+        entries.forEach((id, entry) -> {
+            if (entry.record.lastFailedAt() < threshold) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    public synchronized Message readMessage(FailureRecord record) throws IOException {
+        Entry entry = entries.get(record.id());
+        if (entry == null) {
+            throw new IOException("No DLQ record " + record.id());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.messageLength);
+        readFully(entry.messageOffset, buffer);
+        return MessageCodec.decode(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private long append(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long position = fileBytes;
+        while (frame.hasRemaining()) {
+            channel.write(frame, position + frame.position());
+        }
+        fileBytes += frame.limit();
+        return position;
+    }
+
+    private void index(FailureRecord record, long messageOffset, int messageLength, int frameLength) {
+        Entry previous = entries.put(record.id(), new Entry(record, messageOffset, messageLength, frameLength));
+        if (previous != null) {
+            byEligibility.remove(previous.record);
+            liveBytes -= previous.frameLength;
+        }
+        byEligibility.add(record);
+        liveBytes += frameLength;
+    }
+
+    private void unindex(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            byEligibility.remove(previous.record);
+            liveBytes -= previous.frameLength;
+        }
+    }
+
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        while (position + FRAME_HEADER <= size) {
+            header.clear();
+            readFully(position, header);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length <= 0 || position + FRAME_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(position + FRAME_HEADER, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            applyReplayed(payload.array(), position);
+            position += FRAME_HEADER + length;
+        }
+        if (position < size) {
+            logger.warn("Truncating {} bytes of incomplete entries from DLQ store {}", size - position, file);
+            channel.truncate(position);
+        }
+        fileBytes = position;
+    }
+
+    private void applyReplayed(byte[] payload, long position) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload);
+        DataInputStream in = new DataInputStream(bytes);
+        byte op = in.readByte();
+        if (op == REMOVE) {
+            unindex(in.readUTF());
+            return;
+        }
+        FailureRecord record = readRecord(in);
+        if (op == PUT) {
+            int messageStart = payload.length - bytes.available();
+            index(record, position + FRAME_HEADER + messageStart, payload.length - messageStart,
+                    FRAME_HEADER + payload.length);
+        } else {
+            Entry entry = entries.get(record.id());
+            if (entry != null) {
+                index(record, entry.messageOffset, entry.messageLength, entry.frameLength);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with one PUT per live record once superseded entries make up most
+     * of the file.
+     */
+    private void compactIfNeeded() {
+        long deadBytes = fileBytes - liveBytes;
+        if (deadBytes < MIN_COMPACTION_BYTES || deadBytes < liveBytes) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Map<String, Entry> compacted = new LinkedHashMap<>();
+            long position = 0;
+            for (Entry entry : entries.values()) {
+                ByteBuffer message = ByteBuffer.allocate(entry.messageLength);
+                readFully(entry.messageOffset, message);
+
+                ByteArrayOutputStream payload = new ByteArrayOutputStream(entry.messageLength + 128);
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeByte(PUT);
+                writeRecord(out, entry.record);
+                int messageStart = out.size();
+                out.write(message.array());
+
+                byte[] bytes = payload.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + bytes.length);
+                frame.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+                while (frame.hasRemaining()) {
+                    target.write(frame);
+                }
+                compacted.put(entry.record.id(), new Entry(entry.record, position + FRAME_HEADER + messageStart,
+                        entry.messageLength, FRAME_HEADER + bytes.length));
+                position += FRAME_HEADER + bytes.length;
+            }
+            target.force(true);
+
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            entries.clear();
+            entries.putAll(compacted);
+            fileBytes = position;
+            liveBytes = position;
+            logger.info("Compacted DLQ store {} to {} bytes", file, position);
+        } catch (IOException e) {
+            logger.error("Failed to compact DLQ store {}", file, e);
+            try {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+            } catch (IOException reopen) {
+                throw new UncheckedIOException("Failed to reopen DLQ store " + file, reopen);
+            }
+        }
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of DLQ store " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeRecord(DataOutputStream out, FailureRecord record) throws IOException {
+        out.writeUTF(record.id());
+        out.writeUTF(record.type());
+        out.writeByte(record.status().ordinal());
+        out.writeInt(record.attempts());
+        out.writeLong(record.firstFailedAt());
+        out.writeLong(record.lastFailedAt());
+        out.writeLong(record.nextEligibleAt());
+        String error = record.lastError() != null ? record.lastError() : "";
+        out.writeUTF(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+    }
+
+    private static FailureRecord readRecord(DataInputStream in) throws IOException {
+        return new FailureRecord(in.readUTF(), in.readUTF(), FailureRecord.Status.values()[in.readByte()],
+                in.readInt(), in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+    }
+
+    private record Entry(FailureRecord record, long messageOffset, int messageLength, int frameLength) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.retail.messaging.dlq;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary form of an AMQP message as kept by the failure store and the archive.
+ *
+ * @author Angel Zlatenov
+ */
+
+final class MessageCodec {
+    private MessageCodec() {
+    }
+
+    /**
+     * Keeps the body and the properties needed to republish it. Only string headers
+     * survive, which drops broker-added structures such as {@code x-death}.
+     */
+    static byte[] encode(Message message) throws IOException {
+        MessageProperties properties = message.getMessageProperties();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeNullable(out, properties.getMessageId());
+        writeNullable(out, properties.getCorrelationId());
+        writeNullable(out, properties.getContentType());
+        writeNullable(out, properties.getContentEncoding());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        properties.getHeaders().forEach((name, value) -> {
+            if (value instanceof String text) {
+                headers.put(name, text);
+            }
+        });
+        out.writeShort(headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.writeInt(message.getBody().length);
+        out.write(message.getBody());
+        return bytes.toByteArray();
+    }
+
+    static Message decode(DataInputStream in) throws IOException {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(readNullable(in));
+        properties.setCorrelationId(readNullable(in));
+        properties.setContentType(readNullable(in));
+        properties.setContentEncoding(readNullable(in));
+        int headerCount = in.readUnsignedShort();
+        for (int i = 0; i < headerCount; i++) {
+            properties.setHeader(in.readUTF(), in.readUTF());
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new Message(body, properties);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.retail.messaging.dlq;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+
+/**
+ * Selects the dead letters a replay republishes. Null fields match everything. The event
+ * id range is inclusive and compared lexicographically; the time window applies to the
+ * time of the last failure, in epoch milliseconds.
+ *
+ * @author Angel Zlatenov
+ */
+public record ReplayFilter(String type, String sourceRegion, String eventIdFrom, String eventIdTo,
+                           Long failedFrom, Long failedTo) {
+
+    public boolean matches(FailureRecord record) {
+        return (type == null || type.equalsIgnoreCase(record.type()))
+                && (failedFrom == null || record.lastFailedAt() >= failedFrom)
+                && (failedTo == null || record.lastFailedAt() <= failedTo);
+    }
+
+    /**
+     * Whether matching needs the decoded message, i.e. a region or event id filter is set.
+     */
+    public boolean needsPayload() {
+        return sourceRegion != null || eventIdFrom != null || eventIdTo != null;
+    }
+
+    public boolean matches(PriceAdjustmentMessage message) {
+        String region = message.getMetadata() != null ? message.getMetadata().getSourceRegion() : null;
+        String eventId = message.getEventId();
+        return (sourceRegion == null || sourceRegion.equals(region))
+                && (eventIdFrom == null || (eventId != null && eventId.compareTo(eventIdFrom) >= 0))
+                && (eventIdTo == null || (eventId != null && eventId.compareTo(eventIdTo) <= 0));
+    }
+}
@@ -0,0 +1,121 @@
+package com.retail.messaging.dlq;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a replay, read by the replay endpoint while the replay runs.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class ReplayProgress {
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String source;
+    private final ReplayFilter filter;
+    private final int ratePerSecond;
+    private final long startedAt;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile State state = State.RUNNING;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    public ReplayProgress(String source, ReplayFilter filter, int ratePerSecond) {
+        this.source = source;
+        this.filter = filter;
+        this.ratePerSecond = ratePerSecond;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public void recordScanned() {
+        scanned.incrementAndGet();
+    }
+
+    public void recordMatched() {
+        matched.incrementAndGet();
+    }
+
+    public void recordPublished(int confirmedCount, int failedCount) {
+        confirmed.addAndGet(confirmedCount);
+        failed.addAndGet(failedCount);
+    }
+
+    public void cancel() {
+        if (state == State.RUNNING) {
+            state = State.CANCELLED;
+        }
+    }
+
+    public void finish(State finalState, String error) {
+        if (state == State.RUNNING) {
+            state = finalState;
+        }
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public ReplayFilter getFilter() {
+        return filter;
+    }
+
+    public int getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    public long getMatched() {
+        return matched.get();
+    }
+
+    public long getConfirmed() {
+        return confirmed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Confirmed messages per second since the replay started.
+     */
+    public double getThroughput() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = Math.max(1, end - startedAt);
+        return confirmed.get() * 1000.0 / elapsed;
+    }
+}
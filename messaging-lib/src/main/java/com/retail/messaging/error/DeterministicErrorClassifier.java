@@ -0,0 +1,37 @@
+package com.retail.messaging.error;
+
+import com.retail.messaging.producer.MessagePublishException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Built-in rules for failures that no retry can fix: validation errors, payloads that
+ * cannot be decoded, and invalid arguments. An {@link IllegalStateException} is left
+ * alone, since the consumer raises one when it is interrupted while waiting for capacity.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class DeterministicErrorClassifier implements ErrorClassifier {
+    @Override
+    public ErrorClassification classify(Throwable error) {
+        if (error instanceof MessageValidationException) {
+            return ErrorClassification.permanent("validation");
+        }
+        if (error instanceof MessagePublishException publishException &&
+                publishException.getCategory() == MessagePublishException.ErrorCategory.VALIDATION_ERROR) {
+            return ErrorClassification.permanent("validation");
+        }
+        if (error instanceof MessageConversionException) {
+            return ErrorClassification.permanent("conversion");
+        }
+        if (error instanceof IllegalArgumentException) {
+            return ErrorClassification.permanent("illegal-argument");
+        }
+        return null;
+    }
+}
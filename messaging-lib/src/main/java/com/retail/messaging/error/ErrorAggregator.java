@@ -0,0 +1,223 @@
+package com.retail.messaging.error;
+
+import com.retail.messaging.support.BoundedExpiringMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates failures by fingerprint, the outermost exception type plus the root cause's
+ * type and top stack frames, so a storm of identical failures costs one counter update
+ * each instead of one stack trace each. Every fingerprint keeps a count and a few
+ * uniformly sampled exemplars. The first occurrence of a fingerprint is logged with its
+ * stack trace; after that it is logged at most once per log interval, as a one-line
+ * summary of what happened since.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class ErrorAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(ErrorAggregator.class);
+    private static final int MAX_CAUSE_DEPTH = 8;
+    private static final int MAX_EXEMPLAR_MESSAGE_LENGTH = 256;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MeterRegistry meterRegistry;
+    private final BoundedExpiringMap<String, Aggregate> aggregates;
+    private final long logIntervalMillis;
+    private final int fingerprintFrames;
+    private final int exemplarCount;
+
+    public ErrorAggregator(MeterRegistry meterRegistry,
+                           @Value("${messaging.errors.window:86400000}") long window,
+                           @Value("${messaging.errors.max-fingerprints:1000}") int maxFingerprints,
+                           @Value("${messaging.errors.log-interval:60000}") long logIntervalMillis,
+                           @Value("${messaging.errors.fingerprint-frames:3}") int fingerprintFrames,
+                           @Value("${messaging.errors.exemplars:5}") int exemplarCount) {
+        this.meterRegistry = meterRegistry;
+        this.aggregates = new BoundedExpiringMap<>("error-fingerprints", Duration.ofMillis(window),
+                Duration.ofMillis(Math.max(1000, window / 1440)), maxFingerprints, meterRegistry);
+        this.logIntervalMillis = logIntervalMillis;
+        this.fingerprintFrames = fingerprintFrames;
+        this.exemplarCount = exemplarCount;
+    }
+
+    /**
+     * Records one occurrence of the failure for the message.
+     *
+     * @return the failure's fingerprint
+     */
+    public String record(Throwable failure, String messageId) {
+        return record(failure, Collections.singletonList(messageId));
+    }
+
+    /**
+     * Records one occurrence of the failure per message, as when a whole batch failed on
+     * the same exception.
+     *
+     * @return the failure's fingerprint
+     */
+    public String record(Throwable failure, List<String> messageIds) {
+        Throwable rootCause = rootCause(failure);
+        List<String> frames = topFrames(rootCause);
+        String fingerprint = fingerprint(failure, rootCause, frames);
+        Aggregate aggregate = aggregates.computeIfAbsent(fingerprint,
+                id -> new Aggregate(id, failure.getClass().getName(), rootCause.getClass().getName(), frames));
+
+        long now = System.currentTimeMillis();
+        aggregate.record(messageIds, failure.getMessage(), now);
+        meterRegistry.counter("messaging.errors", "exception", failure.getClass().getSimpleName())
+                .increment(messageIds.size());
+        maybeLog(aggregate, failure, messageIds, now);
+        return fingerprint;
+    }
+
+    /**
+     * All fingerprints seen within the window, most frequent first.
+     */
+    public List<ErrorSummary> summaries() {
+        List<ErrorSummary> summaries = new ArrayList<>();
+        aggregates.forEach((fingerprint, aggregate) -> summaries.add(aggregate.snapshot()));
+        summaries.sort(Comparator.comparingLong(ErrorSummary::count).reversed());
+        return summaries;
+    }
+
+    public Optional<ErrorSummary> summary(String fingerprint) {
+        return Optional.ofNullable(aggregates.get(fingerprint)).map(Aggregate::snapshot);
+    }
+
+    private void maybeLog(Aggregate aggregate, Throwable failure, List<String> messageIds, long now) {
+        long lastLogged = aggregate.lastLoggedAt.get();
+        if (lastLogged != 0 && now - lastLogged < logIntervalMillis) {
+            return;
+        }
+        if (!aggregate.lastLoggedAt.compareAndSet(lastLogged, now)) {
+            return;
+        }
+        long total = aggregate.count.sum();
+        long occurrences = total - aggregate.loggedCount.getAndSet(total);
+        String messageId = messageIds.isEmpty() ? null : messageIds.get(0);
+        if (lastLogged == 0) {
+            logger.error("New error [{}] processing message {} ({} occurrences): {}",
+                    aggregate.fingerprint, messageId, occurrences, failure.getMessage(), failure);
+        } else {
+            logger.error("Error [{}] {}: {} occurred {} times in the last {}s, latest for message {}",
+                    aggregate.fingerprint, aggregate.exceptionClass, failure.getMessage(), occurrences,
+                    (now - lastLogged) / 1000, messageId);
+        }
+    }
+
+    private static Throwable rootCause(Throwable failure) {
+        Throwable root = failure;
+        for (int depth = 0; root.getCause() != null && root.getCause() != root && depth < MAX_CAUSE_DEPTH; depth++) {
+            root = root.getCause();
+        }
+        return root;
+    }
+
+    private List<String> topFrames(Throwable rootCause) {
+        StackTraceElement[] stackTrace = rootCause.getStackTrace();
+        int count = Math.min(fingerprintFrames, stackTrace.length);
+        List<String> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StackTraceElement frame = stackTrace[i];
+            frames.add(frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber());
+        }
+        return frames;
+    }
+
+    private static String fingerprint(Throwable failure, Throwable rootCause, List<String> frames) {
+        long hash = hash(FNV_OFFSET_BASIS, failure.getClass().getName());
+        hash = hash(hash, rootCause.getClass().getName());
+        for (String frame : frames) {
+            hash = hash(hash, frame);
+        }
+        return String.format("%016x", hash);
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= 0x1F;
+        return hash * FNV_PRIME;
+    }
+
+    private final class Aggregate {
+        private final String fingerprint;
+        private final String exceptionClass;
+        private final String rootCause;
+        private final List<String> frames;
+        private final LongAdder count;
+        private final AtomicLong loggedCount;
+        private final AtomicLong lastLoggedAt;
+        private final long firstSeen;
+        private final ErrorSummary.Exemplar[] exemplars;
+        private volatile long lastSeen;
+        // Occurrences offered to the exemplar reservoir, guarded by this
+        private long sampled;
+
+        Aggregate(String fingerprint, String exceptionClass, String rootCause, List<String> frames) {
+            this.fingerprint = fingerprint;
+            this.exceptionClass = exceptionClass;
+            this.rootCause = rootCause;
+            this.frames = List.copyOf(frames);
+            this.count = new LongAdder();
+            this.loggedCount = new AtomicLong();
+            this.lastLoggedAt = new AtomicLong();
+            this.firstSeen = System.currentTimeMillis();
+            this.exemplars = new ErrorSummary.Exemplar[exemplarCount];
+        }
+
+        void record(List<String> messageIds, String exceptionMessage, long now) {
+            count.add(messageIds.size());
+            lastSeen = now;
+            if (exemplars.length == 0) {
+                return;
+            }
+            String message = exceptionMessage != null && exceptionMessage.length() > MAX_EXEMPLAR_MESSAGE_LENGTH
+                    ? exceptionMessage.substring(0, MAX_EXEMPLAR_MESSAGE_LENGTH) : exceptionMessage;
+            Instant occurredAt = Instant.ofEpochMilli(now);
+            synchronized (this) {
+                // Reservoir sampling keeps every occurrence equally likely to be an exemplar
+                for (String messageId : messageIds) {
+                    long seen = sampled++;
+                    int slot = seen < exemplars.length
+                            ? (int) seen : (int) ThreadLocalRandom.current().nextLong(seen + 1);
+                    if (slot < exemplars.length) {
+                        exemplars[slot] = new ErrorSummary.Exemplar(messageId, message, occurredAt);
+                    }
+                }
+            }
+        }
+
+        ErrorSummary snapshot() {
+            List<ErrorSummary.Exemplar> sample = new ArrayList<>(exemplars.length);
+            synchronized (this) {
+                for (ErrorSummary.Exemplar exemplar : exemplars) {
+                    if (exemplar != null) {
+                        sample.add(exemplar);
+                    }
+                }
+            }
+            return new ErrorSummary(fingerprint, exceptionClass, rootCause, frames, count.sum(),
+                    Instant.ofEpochMilli(firstSeen), Instant.ofEpochMilli(lastSeen), sample);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.retail.messaging.error;
+
+/**
+ * Outcome of classifying a processing failure. A permanent failure would fail the same
+ * way on every attempt, so it is parked straight away instead of being retried.
+ *
+ * @param permanent whether retrying can not succeed
+ * @param reason    short rule name, carried as the parking reason header
+ * @author Angel Zlatenov
+ */
+public record ErrorClassification(boolean permanent, String reason) {
+    private static final ErrorClassification TRANSIENT = new ErrorClassification(false, "transient");
+
+    public static ErrorClassification transientFailure() {
+        return TRANSIENT;
+    }
+
+    public static ErrorClassification permanent(String reason) {
+        return new ErrorClassification(true, reason);
+    }
+}
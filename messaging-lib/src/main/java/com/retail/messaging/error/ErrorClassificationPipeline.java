@@ -0,0 +1,39 @@
+package com.retail.messaging.error;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Decides whether a failure is worth retrying. Each throwable in the cause chain, from
+ * the outermost inwards, is offered to the registered {@link ErrorClassifier}s in order,
+ * so a validation error wrapped in a {@code MessageProcessingException} is still
+ * recognised. Failures no rule claims are treated as transient.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class ErrorClassificationPipeline {
+    private static final int MAX_CAUSE_DEPTH = 8;
+
+    private final List<ErrorClassifier> classifiers;
+
+    public ErrorClassificationPipeline(List<ErrorClassifier> classifiers) {
+        this.classifiers = List.copyOf(classifiers);
+    }
+
+    public ErrorClassification classify(Throwable failure) {
+        Throwable error = failure;
+        for (int depth = 0; error != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            for (ErrorClassifier classifier : classifiers) {
+                ErrorClassification classification = classifier.classify(error);
+                if (classification != null) {
+                    return classification;
+                }
+            }
+            error = error.getCause();
+        }
+        return ErrorClassification.transientFailure();
+    }
+}
@@ -0,0 +1,17 @@
+package com.retail.messaging.error;
+
+/**
+ * A rule in the {@link ErrorClassificationPipeline}. Classifiers are Spring beans and are
+ * consulted in {@link org.springframework.core.annotation.Order} order; the first one
+ * with an opinion decides.
+ *
+ * @author Angel Zlatenov
+ */
+public interface ErrorClassifier {
+    /**
+     * Classifies a single throwable from the failure's cause chain.
+     *
+     * @return the classification, or null if this rule does not apply
+     */
+    ErrorClassification classify(Throwable error);
+}
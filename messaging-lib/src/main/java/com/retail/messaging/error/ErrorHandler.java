@@ -2,17 +2,18 @@ package com.retail.messaging.error;
 
 import com.retail.messaging.model.MessageMetadata;
 import com.retail.messaging.model.PriceAdjustmentMessage;
-import com.retail.messaging.producer.MessagePublishException;
+import com.retail.messaging.support.BoundedExpiringMap;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Angel Zlatenov
@@ -23,58 +24,90 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class ErrorHandler {
     private static final Logger logger = LoggerFactory.getLogger(ErrorHandler.class);
-    private final ConcurrentHashMap<String, ErrorContext> errorContexts;
-    private final ScheduledExecutorService cleanupExecutor;
+    private final BoundedExpiringMap<String, ErrorContext> errorContexts;
+    private final ErrorClassificationPipeline classificationPipeline;
+    private final ErrorAggregator errorAggregator;
+    private final RetryStrategy retryStrategy;
+
+    public ErrorHandler(ErrorClassificationPipeline classificationPipeline, ErrorAggregator errorAggregator,
+                        RetryStrategy retryStrategy, MeterRegistry meterRegistry,
+                        @Value("${messaging.bookkeeping.error-contexts.ttl:86400000}") long ttl,
+                        @Value("${messaging.bookkeeping.error-contexts.max-size:100000}") int maxSize) {
+        this.classificationPipeline = classificationPipeline;
+        this.errorAggregator = errorAggregator;
+        this.retryStrategy = retryStrategy;
+        this.errorContexts = new BoundedExpiringMap<>("error-contexts", Duration.ofMillis(ttl),
+                Duration.ofMillis(Math.max(1000, ttl / 1440)), maxSize, meterRegistry);
+    }
 
-    public ErrorHandler() {
-        this.errorContexts = new ConcurrentHashMap<>();
-        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-        scheduleCleanup();
+    /**
+     * Handles a failure shared by every message of a batch. The failure is recorded and
+     * logged once for the whole batch rather than once per message.
+     *
+     * @param targets where each message goes once its retry is due, at the same index
+     * @return the positions of the messages handed to the {@link RetryStrategy}
+     */
+    public BitSet handleBatchError(List<PriceAdjustmentMessage> messages, Exception e, List<RetryTarget> targets) {
+        List<String> messageIds = new ArrayList<>(messages.size());
+        messages.forEach(message -> messageIds.add(messageId(message)));
+        String fingerprint = errorAggregator.record(e, messageIds);
+        BitSet retried = new BitSet(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (applyFailure(messages.get(i), e, fingerprint, targets.get(i))) {
+                retried.set(i);
+            }
+        }
+        return retried;
     }
 
-    public void handleBatchError(List<PriceAdjustmentMessage> messages, Exception e) {
-        logger.error("Batch processing failed for {} messages", messages.size(), e);
-        messages.forEach(message -> handleError(message, e));
+    /**
+     * @param target where the message goes once its retry is due
+     * @return true if the message was handed to the {@link RetryStrategy}; otherwise the
+     * caller parks or rejects it
+     */
+    public boolean handleError(PriceAdjustmentMessage message, Exception exception, RetryTarget target) {
+        String fingerprint = errorAggregator.record(exception, messageId(message));
+        return applyFailure(message, exception, fingerprint, target);
     }
 
-    public void handleError(PriceAdjustmentMessage message, Exception exception) {
-        MessageMetadata metadata = message.getMetadata();
-        ErrorContext context = new ErrorContext(exception, LocalDateTime.now(), metadata.getRetryCount());
-        String correlationId = message.getMetadata().getMessageId();
-        errorContexts.put(correlationId, context);
-
-        logger.error("Error processing message [{}]: {}", correlationId, exception.getMessage(), exception);
-
-        if (shouldRetry(metadata.getRetryCount(), exception)) {
-            metadata.incrementRetryCount();
-            metadata.setStatus(MessageMetadata.ProcessingStatus.PROCESSING);
-        } else {
-            metadata.setStatus(MessageMetadata.ProcessingStatus.DEAD_LETTERED);
-            logger.error("Message [{}] exceeded retry attempts. Moving to DLQ", correlationId);
-        }
+    /**
+     * Records a retried message that has now been processed.
+     */
+    public void handleRecovered(PriceAdjustmentMessage message) {
+        retryStrategy.recordSucceeded(message);
     }
 
-    private boolean shouldRetry(int retryCount, Exception exception) {
-        if (retryCount >= 3) {
-            return false;
+    /**
+     * Records a failure that happened before a message could be decoded.
+     */
+    public void handleUndecodable(String messageId, Exception exception) {
+        errorAggregator.record(exception, messageId);
+    }
+
+    private boolean applyFailure(PriceAdjustmentMessage message, Exception exception, String fingerprint,
+                                 RetryTarget target) {
+        MessageMetadata metadata = message.getMetadata();
+        String correlationId = messageId(message);
+        if (correlationId != null) {
+            errorContexts.put(correlationId, new ErrorContext(fingerprint, Instant.now(), metadata.getRetryCount()));
         }
 
-        if (exception instanceof MessagePublishException) {
-            MessagePublishException publishException = (MessagePublishException) exception;
-            return publishException.getCategory() != MessagePublishException.ErrorCategory.VALIDATION_ERROR;
+        // The strategy bumps the retry count and status itself
+        if (retryStrategy.scheduleRetry(message, exception, target)) {
+            return true;
         }
+        logger.debug("Message [{}] will not be retried", correlationId);
+        return false;
+    }
 
-        return true;
+    public ErrorClassification classify(Exception exception) {
+        return classificationPipeline.classify(exception);
     }
 
-    private void scheduleCleanup() {
-        cleanupExecutor.scheduleAtFixedRate(() -> {
-            LocalDateTime threshold = LocalDateTime.now().minusHours(24);
-            errorContexts.entrySet().removeIf(entry ->
-                    entry.getValue().timestamp().isBefore(threshold));
-        }, 1, 1, TimeUnit.HOURS);
+    private static String messageId(PriceAdjustmentMessage message) {
+        return message.getMetadata() != null ? message.getMetadata().getMessageId() : null;
     }
 
-    private record ErrorContext(Exception exception, LocalDateTime timestamp, int retryCount) {
+    private record ErrorContext(String fingerprint, Instant timestamp, int retryCount) {
     }
 }
@@ -0,0 +1,23 @@
+package com.retail.messaging.error;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Point-in-time view of one error fingerprint as aggregated by {@link ErrorAggregator}.
+ *
+ * @param fingerprint    stable id of the exception type and top stack frames
+ * @param exceptionClass class of the outermost exception
+ * @param rootCause      class of the innermost cause
+ * @param frames         top frames of the root cause that make up the fingerprint
+ * @param exemplars      uniformly sampled occurrences
+ *
+ * @author Angel Zlatenov
+ */
+
+public record ErrorSummary(String fingerprint, String exceptionClass, String rootCause, List<String> frames,
+                           long count, Instant firstSeen, Instant lastSeen, List<Exemplar> exemplars) {
+
+    public record Exemplar(String messageId, String exceptionMessage, Instant occurredAt) {
+    }
+}
@@ -0,0 +1,194 @@
+package com.retail.messaging.error;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Timer wheel for large numbers of delayed items. Scheduling only appends to a lock-free
+ * queue, and a single worker thread moves new entries into their wheel bucket and expires
+ * one bucket per tick, so inserts and expiries are O(1) regardless of how many items are
+ * pending. Expired items are handed to the sink in batches of at most {@code maxBatchSize}.
+ *
+ * <p>Deadlines are rounded up to the tick duration, and the number of pending items is
+ * capped so memory stays bounded.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class HashedWheelTimer<T> {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final long tickNanos;
+    private final Bucket<T>[] wheel;
+    private final int mask;
+    private final int maxPending;
+    private final int maxBatchSize;
+    private final Consumer<List<T>> sink;
+    private final Queue<Entry<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize, int maxPending,
+                            int maxBatchSize, Consumer<List<T>> sink) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickMillis);
+        }
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.mask = size - 1;
+        this.maxPending = maxPending;
+        this.maxBatchSize = maxBatchSize;
+        this.sink = sink;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules the item to be handed to the sink once the delay has elapsed.
+     *
+     * @return false if the timer already holds {@code maxPending} items
+     */
+    public boolean schedule(T item, long delayMillis) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        incoming.add(new Entry<>(item, deadline));
+        return true;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void run() {
+        List<T> expired = new ArrayList<>(maxBatchSize);
+        while (running) {
+            if (!awaitNextTick()) {
+                break;
+            }
+            transferIncoming();
+            expireBucket(wheel[(int) (tick & mask)], expired);
+            if (!expired.isEmpty()) {
+                flush(expired);
+            }
+            tick++;
+        }
+    }
+
+    private boolean awaitNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        long sleepNanos = deadline - (System.nanoTime() - startNanos);
+        if (sleepNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void transferIncoming() {
+        Entry<T> entry;
+        while ((entry = incoming.poll()) != null) {
+            // An entry whose deadline already passed goes into the current bucket
+            long deadlineTick = Math.max(entry.deadline / tickNanos, tick);
+            entry.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (deadlineTick & mask)].add(entry);
+        }
+    }
+
+    private void expireBucket(Bucket<T> bucket, List<T> expired) {
+        Entry<T> previous = null;
+        Entry<T> entry = bucket.head;
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+                previous = entry;
+            } else {
+                bucket.unlink(previous, entry);
+                pending.decrementAndGet();
+                expired.add(entry.item);
+                if (expired.size() >= maxBatchSize) {
+                    flush(expired);
+                }
+            }
+            entry = next;
+        }
+    }
+
+    private void flush(List<T> expired) {
+        try {
+            sink.accept(new ArrayList<>(expired));
+        } catch (RuntimeException e) {
+            logger.error("Error dispatching {} expired timer entries", expired.size(), e);
+        }
+        expired.clear();
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long deadline;
+        private long remainingRounds;
+        private Entry<T> next;
+
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Entry<T> head;
+
+        void add(Entry<T> entry) {
+            entry.next = head;
+            head = entry;
+        }
+
+        void unlink(Entry<T> previous, Entry<T> entry) {
+            if (previous == null) {
+                head = entry.next;
+            } else {
+                previous.next = entry.next;
+            }
+            entry.next = null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.retail.messaging.error;
+
+import java.util.List;
+
+/**
+ * Thrown when a message fails business validation. Validation is deterministic, so the
+ * message is parked without retries.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class MessageValidationException extends RuntimeException {
+    private final List<String> errors;
+
+    public MessageValidationException(List<String> errors) {
+        super("Message failed validation: " + String.join("; ", errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
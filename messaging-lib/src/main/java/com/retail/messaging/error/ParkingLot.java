@@ -0,0 +1,91 @@
+package com.retail.messaging.error;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes permanently failing deliveries to the parking queue of their type
+ * ({@code pas.parking} / {@code pad.parking}). The original body and properties are
+ * kept, and the reason is added as headers so the message can be inspected and
+ * replayed once the data is fixed. Records unpacked from an envelope are dead-lettered
+ * here too, since rejecting one would reject every record it was delivered with.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class ParkingLot {
+    public static final String REASON_HEADER = "x-parking-reason";
+    public static final String EXCEPTION_HEADER = "x-exception-class";
+    public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+    public static final String PARKED_AT_HEADER = "x-parked-at";
+    private static final Logger logger = LoggerFactory.getLogger(ParkingLot.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String parkingExchange;
+
+    public ParkingLot(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                      @Value("${rabbitmq.exchange.dlx}") String parkingExchange) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+        this.parkingExchange = parkingExchange;
+    }
+
+    /**
+     * @param type queue prefix of the delivery, {@code pas} or {@code pad}
+     * @return false if the message could not be published, in which case the caller
+     * should fall back to dead-lettering it
+     */
+    public boolean park(Message delivery, String type, Throwable failure, ErrorClassification classification) {
+        MessageProperties properties = delivery.getMessageProperties();
+        properties.setHeader(REASON_HEADER, classification.reason());
+        properties.setHeader(EXCEPTION_HEADER, rootCause(failure).getClass().getName());
+        properties.setHeader(EXCEPTION_MESSAGE_HEADER, String.valueOf(rootCause(failure).getMessage()));
+        properties.setHeader(PARKED_AT_HEADER, System.currentTimeMillis());
+        try {
+            rabbitTemplate.send(parkingExchange, type + ".parking", delivery);
+            meterRegistry.counter("messages.parked", "type", type, "reason", classification.reason()).increment();
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to park message {}", properties.getMessageId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Routes a single record to the DLQ of its type, as the broker would for a rejected
+     * delivery. Used for a record of an envelope, so that the rest of the envelope can
+     * still be acknowledged.
+     *
+     * @return false if the record could not be published, in which case the caller
+     * should reject the whole envelope
+     */
+    public boolean deadLetter(Message record, String type, Throwable failure) {
+        MessageProperties properties = record.getMessageProperties();
+        properties.setHeader(EXCEPTION_HEADER, rootCause(failure).getClass().getName());
+        properties.setHeader(EXCEPTION_MESSAGE_HEADER, String.valueOf(rootCause(failure).getMessage()));
+        try {
+            rabbitTemplate.send(parkingExchange, type + ".dlq", record);
+            meterRegistry.counter("messages.dead.lettered", "type", type).increment();
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to dead-letter record {}", properties.getMessageId(), e);
+            return false;
+        }
+    }
+
+    private static Throwable rootCause(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
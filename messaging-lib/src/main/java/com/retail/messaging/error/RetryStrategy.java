@@ -1,125 +1,167 @@
 package com.retail.messaging.error;
 
 import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules failed messages for another attempt after an exponential backoff with
+ * jitter. Pending retries live on a {@link HashedWheelTimer}; once due, a message is
+ * handed back to the {@link RetryTarget} it was scheduled with, which reprocesses it
+ * like a fresh delivery. The retry count is carried on the message metadata, so no
+ * per-message state is kept outside the wheel, and a message without metadata is not
+ * retried. The delivery of a pending retry stays unacknowledged, so retries lost when
+ * the wheel stops are redelivered by the broker.
+ */
 @Component
 public class RetryStrategy {
     private static final Logger logger = LoggerFactory.getLogger(RetryStrategy.class);
-    private final MeterRegistry meterRegistry;
-    private final ConcurrentHashMap<String, RetryContext> retryContexts;
-    private final ScheduledExecutorService retryExecutor;
+    private final ErrorClassificationPipeline classificationPipeline;
+    private final HashedWheelTimer<PendingRetry> retryWheel;
+    private final ExecutorService dispatchExecutor;
+    private final AtomicInteger redelivering;
+    private final Counter scheduled;
+    private final Counter exhausted;
+    private final Counter rejected;
+    private final Counter succeeded;
 
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final int INITIAL_RETRY_DELAY_MS = 1000;
     private static final double BACKOFF_MULTIPLIER = 2.0;
 
     @Autowired
-    public RetryStrategy(MeterRegistry meterRegistry) {
-        this.meterRegistry = meterRegistry;
-        this.retryContexts = new ConcurrentHashMap<>();
-        this.retryExecutor = Executors.newScheduledThreadPool(2);
-        setupMetrics();
-        startRetryTracking();
+    public RetryStrategy(MeterRegistry meterRegistry, ErrorClassificationPipeline classificationPipeline,
+                         MessagingExecutors executors,
+                         @Value("${messaging.retry.tick-duration:100}") long tickDuration,
+                         @Value("${messaging.retry.wheel-size:512}") int wheelSize,
+                         @Value("${messaging.retry.max-pending:1000000}") int maxPending,
+                         @Value("${messaging.retry.dispatch-batch-size:100}") int dispatchBatchSize,
+                         @Value("${messaging.retry.dispatch-threads:2}") int dispatchThreads) {
+        this.classificationPipeline = classificationPipeline;
+        this.redelivering = new AtomicInteger();
+        this.dispatchExecutor = executors.newWorkerPool("retry-dispatch", dispatchThreads);
+        this.retryWheel = new HashedWheelTimer<>("retry-wheel", tickDuration, wheelSize, maxPending,
+                dispatchBatchSize, this::dispatch);
+        this.scheduled = meterRegistry.counter("rabbitmq.retries.scheduled");
+        this.exhausted = meterRegistry.counter("rabbitmq.retries.exhausted");
+        this.rejected = meterRegistry.counter("rabbitmq.retries.rejected");
+        this.succeeded = meterRegistry.counter("rabbitmq.retries.succeeded");
+        // Retries still waiting on the wheel plus those due but not yet handed back
+        meterRegistry.gauge("rabbitmq.retries.pending", this,
+                strategy -> strategy.retryWheel.getPending() + strategy.redelivering.get());
+        this.retryWheel.start();
     }
 
-    public boolean shouldRetry(String messageId, Exception exception, MessageMetadata metadata) {
-        RetryContext context = retryContexts.computeIfAbsent(messageId,
-                id -> new RetryContext(metadata.getRetryCount()));
+    @PreDestroy
+    void shutdown() {
+        retryWheel.stop();
+    }
 
-        if (context.getRetryCount() >= MAX_RETRY_ATTEMPTS) {
+    public boolean shouldRetry(String messageId, Exception exception, MessageMetadata metadata) {
+        if (metadata.getRetryCount() >= MAX_RETRY_ATTEMPTS) {
             logger.warn("Max retry attempts reached for message: {}", messageId);
-            meterRegistry.counter("rabbitmq.retries.exhausted").increment();
+            exhausted.increment();
             return false;
         }
+        return isRetryableException(exception);
+    }
 
-        if (isRetryableException(exception)) {
-            long delay = calculateBackoffDelay(context.getRetryCount());
-            context.incrementRetryCount();
-            context.setNextRetryTime(Instant.now().plusMillis(delay));
-
-            meterRegistry.counter("rabbitmq.retries.scheduled").increment();
-            logger.info("Scheduled retry {} for message {} with delay {}ms",
-                    context.getRetryCount(), messageId, delay);
+    /**
+     * Schedules the message for another processing attempt. Once this returns true the
+     * target is handed the message when the retry comes due.
+     *
+     * @return false if the message is not retried, because it has no metadata, ran out
+     * of attempts, the failure is not retryable or the retry backlog is full
+     */
+    public boolean scheduleRetry(PriceAdjustmentMessage message, Exception exception, RetryTarget target) {
+        MessageMetadata metadata = message.getMetadata();
+        if (metadata == null) {
+            logger.warn("Not retrying message without metadata for SKU {}", message.getSkuId());
+            return false;
+        }
+        String messageId = metadata.getMessageId();
+        if (!shouldRetry(messageId, exception, metadata)) {
+            metadata.setStatus(MessageMetadata.ProcessingStatus.DEAD_LETTERED);
+            return false;
+        }
 
-            return true;
+        long delay = withJitter(calculateBackoffDelay(metadata.getRetryCount()));
+        if (!retryWheel.schedule(new PendingRetry(message, target), delay)) {
+            logger.warn("Retry backlog full, not retrying message: {}", messageId);
+            rejected.increment();
+            metadata.setStatus(MessageMetadata.ProcessingStatus.DEAD_LETTERED);
+            return false;
         }
+        metadata.incrementRetryCount();
+        metadata.setStatus(MessageMetadata.ProcessingStatus.PROCESSING);
+
+        scheduled.increment();
+        logger.info("Scheduled retry {} for message {} with delay {}ms",
+                metadata.getRetryCount(), messageId, delay);
+        return true;
+    }
 
-        return false;
+    /**
+     * Records a retried message that has now been processed.
+     */
+    public void recordSucceeded(PriceAdjustmentMessage message) {
+        message.getMetadata().setStatus(MessageMetadata.ProcessingStatus.COMPLETED);
+        succeeded.increment();
     }
 
     private boolean isRetryableException(Exception exception) {
-        return !(exception instanceof IllegalArgumentException) &&
-                !(exception instanceof IllegalStateException);
+        return !classificationPipeline.classify(exception).permanent();
     }
 
     private long calculateBackoffDelay(int retryCount) {
         return (long) (INITIAL_RETRY_DELAY_MS * Math.pow(BACKOFF_MULTIPLIER, retryCount));
     }
 
-    private void setupMetrics() {
-        meterRegistry.gauge("rabbitmq.retries.pending", retryContexts, ConcurrentHashMap::size);
+    /**
+     * Spreads the delay over its upper half, so messages that failed together do not
+     * all come back in the same tick.
+     */
+    private long withJitter(long delay) {
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
     }
 
-    private void startRetryTracking() {
-        retryExecutor.scheduleAtFixedRate(() -> {
-            Instant now = Instant.now();
-            retryContexts.forEach((messageId, context) -> {
-                if (context.getNextRetryTime() != null &&
-                        context.getNextRetryTime().isBefore(now.plusSeconds(30))) {
-                    logger.debug("Retry pending for message: {} at {}",
-                            messageId, context.getNextRetryTime());
-                }
-            });
-        }, 0, 1, TimeUnit.MINUTES);
-
-        // Cleanup old retry contexts
-        retryExecutor.scheduleAtFixedRate(() -> {
-            Instant threshold = Instant.now().minus(Duration.ofHours(24));
-            retryContexts.entrySet().removeIf(entry ->
-                    entry.getValue().getCreatedAt().isBefore(threshold));
-        }, 1, 1, TimeUnit.HOURS);
-    }
-
-    private static class RetryContext {
-        private final Instant createdAt;
-        private int retryCount;
-        private Instant nextRetryTime;
-
-        public RetryContext(int initialRetryCount) {
-            this.createdAt = Instant.now();
-            this.retryCount = initialRetryCount;
-        }
-
-        public Instant getCreatedAt() {
-            return createdAt;
-        }
-
-        public int getRetryCount() {
-            return retryCount;
-        }
-
-        public void incrementRetryCount() {
-            this.retryCount++;
+    private void dispatch(List<PendingRetry> due) {
+        // Called on the wheel thread, which must not block on a target
+        redelivering.addAndGet(due.size());
+        try {
+            dispatchExecutor.execute(() -> redeliver(due));
+        } catch (RuntimeException e) {
+            redelivering.addAndGet(-due.size());
+            throw e;
         }
+    }
 
-        public Instant getNextRetryTime() {
-            return nextRetryTime;
+    private void redeliver(List<PendingRetry> due) {
+        for (PendingRetry retry : due) {
+            try {
+                retry.target().redeliver(retry.message());
+            } catch (RuntimeException e) {
+                logger.error("Failed to redeliver message {}", retry.message().getMetadata().getMessageId(), e);
+            } finally {
+                redelivering.decrementAndGet();
+            }
         }
+    }
 
-        public void setNextRetryTime(Instant nextRetryTime) {
-            this.nextRetryTime = nextRetryTime;
-        }
+    private record PendingRetry(PriceAdjustmentMessage message, RetryTarget target) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package com.retail.messaging.error;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+
+/**
+ * Takes a message back once its retry comes due. Called on a retry dispatch thread,
+ * which the target may block to apply backpressure.
+ *
+ * @author Angel Zlatenov
+ */
+public interface RetryTarget {
+    void redeliver(PriceAdjustmentMessage message);
+}
@@ -0,0 +1,178 @@
+package com.retail.messaging.flow;
+
+import com.retail.messaging.config.BatchProcessingConfig;
+import com.retail.messaging.consumer.BatchMessageConsumer;
+import com.retail.messaging.monitoring.MetricsCollector;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feedback controller for the batch listener containers. Batch size grows additively
+ * while the queue has a backlog and per-message latency stays under the SLO, and is
+ * halved as soon as latency breaches the SLO or batches start failing.
+ *
+ * <p>The new batch size applies to the next batch a consumer assembles. A consumer keeps
+ * the prefetch it started with, so the batch size never grows beyond it; a larger batch
+ * could not fill and would wait out the partial-batch deadline every time.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class AdaptiveBatchController {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBatchController.class);
+    private static final double SLO_HEADROOM = 0.8;
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final AmqpAdmin amqpAdmin;
+    private final MetricsCollector metricsCollector;
+    private final ScheduledExecutorService controlExecutor;
+    private volatile ScheduledFuture<?> controlTask;
+    private final AtomicInteger batchSize;
+    private final int prefetchCount;
+    private final AtomicLong batchDeadline;
+
+    @Value("${messaging.consumer.batch.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${messaging.consumer.batch.adaptive.min-size:10}")
+    private int minBatchSize;
+
+    @Value("${messaging.consumer.batch.adaptive.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${messaging.consumer.batch.adaptive.step:10}")
+    private int growthStep;
+
+    @Value("${messaging.consumer.batch.adaptive.latency-slo:500}")
+    private double latencySloMillis;
+
+    @Value("${messaging.consumer.batch.adaptive.min-success-rate:0.95}")
+    private double minSuccessRate;
+
+    @Value("${messaging.consumer.batch.adaptive.interval:10000}")
+    private long controlInterval;
+
+    @Value("${rabbitmq.queue.pas}")
+    private String pasQueue;
+
+    @Value("${rabbitmq.queue.pad}")
+    private String padQueue;
+
+    public AdaptiveBatchController(RabbitListenerEndpointRegistry listenerRegistry,
+                                   AmqpAdmin amqpAdmin,
+                                   MetricsCollector metricsCollector,
+                                   MeterRegistry meterRegistry,
+                                   MessagingExecutors executors,
+                                   BatchProcessingConfig batchConfig) {
+        this.listenerRegistry = listenerRegistry;
+        this.amqpAdmin = amqpAdmin;
+        this.metricsCollector = metricsCollector;
+        this.controlExecutor = executors.scheduler();
+        this.batchSize = new AtomicInteger(batchConfig.getBatchSize());
+        this.prefetchCount = batchConfig.getPrefetchCount();
+        this.batchDeadline = new AtomicLong(batchConfig.getBatchMaxLatency());
+
+        meterRegistry.gauge("batch.adaptive.size", batchSize);
+        meterRegistry.gauge("batch.adaptive.prefetch", this, AdaptiveBatchController::getPrefetchCount);
+        meterRegistry.gauge("batch.adaptive.deadline", batchDeadline);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Adaptive batch sizing disabled, using a fixed batch size of {}", batchSize.get());
+            return;
+        }
+        controlTask = controlExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                adjust();
+            } catch (Exception e) {
+                logger.error("Error while adjusting batch size", e);
+            }
+        }, controlInterval, controlInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (controlTask != null) {
+            controlTask.cancel(false);
+        }
+    }
+
+    void adjust() {
+        double latency = metricsCollector.drainAverageLatencyMillis();
+        double successRate = metricsCollector.getLastBatchSuccessRate();
+        long backlog = queueDepth(pasQueue) + queueDepth(padQueue);
+        int current = batchSize.get();
+
+        int next = current;
+        if (latency > latencySloMillis || successRate < minSuccessRate) {
+            next = Math.max(minBatchSize, current / 2);
+        } else if (backlog > current && latency >= 0 && latency < latencySloMillis * SLO_HEADROOM) {
+            next = Math.min(Math.min(maxBatchSize, prefetchCount), current + growthStep);
+        } else if (backlog < current / 2) {
+            next = Math.max(minBatchSize, current - growthStep);
+        }
+
+        if (next != current) {
+            logger.info("Adjusting batch size {} -> {} (latency {}ms, success rate {}, backlog {})",
+                    current, next, String.format("%.1f", latency), successRate, backlog);
+            apply(next);
+        }
+    }
+
+    private void apply(int size) {
+        batchSize.set(size);
+        for (MessageListenerContainer container : batchContainers()) {
+            if (container instanceof SimpleMessageListenerContainer simpleContainer) {
+                simpleContainer.setBatchSize(size);
+            }
+        }
+    }
+
+    private List<MessageListenerContainer> batchContainers() {
+        return List.of(BatchMessageConsumer.SCHEDULE_LISTENER_ID, BatchMessageConsumer.DIRECTIVE_LISTENER_ID)
+                .stream()
+                .map(listenerRegistry::getListenerContainer)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private long queueDepth(String queue) {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            return info != null ? info.getMessageCount() : 0;
+        } catch (Exception e) {
+            logger.debug("Could not read depth of queue {}", queue, e);
+            return 0;
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+}
@@ -0,0 +1,50 @@
+package com.retail.messaging.flow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking token bucket. Tokens refill continuously at the configured rate and at most
+ * one second's worth can accumulate, so bursts stay bounded by the rate.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until {@code permits} tokens are available and takes them. A request larger
+     * than the bucket is served once the bucket is full and leaves it in debt.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            double needed = Math.min(permits, capacity);
+            waitNanos = tokens >= needed ? 0 : (long) ((needed - tokens) / tokensPerNano);
+            tokens -= permits;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
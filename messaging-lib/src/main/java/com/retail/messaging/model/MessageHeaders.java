@@ -1,8 +1,108 @@
 package com.retail.messaging.model;
 
+import java.util.Map;
+
 /**
+ * The routing fields of a {@link PriceAdjustmentMessage}, carried as AMQP headers next
+ * to the body. Consumers deduplicate and partition a delivery from these alone, so the
+ * body of a duplicate is never decoded and the rest are decoded on their processing
+ * lane rather than on the listener thread.
+ *
  * @author Angel Zlatenov
  */
 
-public class MessageHeaders {
+public final class MessageHeaders {
+    public static final String MESSAGE_ID = "x-message-id";
+    public static final String EVENT_ID = "x-event-id";
+    public static final String SKU_ID = "x-sku-id";
+    public static final String NODE_KEY = "x-node-key";
+    public static final String ADJUSTMENT_TYPE = "x-adjustment-type";
+    public static final String SOURCE_REGION = "x-source-region";
+
+    private final String messageId;
+    private final String eventId;
+    private final String skuId;
+    private final String nodeKey;
+    private final PriceAdjustmentMessage.AdjustmentType adjustmentType;
+    private final String sourceRegion;
+
+    private MessageHeaders(String messageId, String eventId, String skuId, String nodeKey,
+                           PriceAdjustmentMessage.AdjustmentType adjustmentType, String sourceRegion) {
+        this.messageId = messageId;
+        this.eventId = eventId;
+        this.skuId = skuId;
+        this.nodeKey = nodeKey;
+        this.adjustmentType = adjustmentType;
+        this.sourceRegion = sourceRegion;
+    }
+
+    /**
+     * Copies the routing fields of the message into the headers, removing any a
+     * previous stamp left that the message no longer has.
+     */
+    public static void stamp(PriceAdjustmentMessage message, Map<String, Object> headers) {
+        MessageMetadata metadata = message.getMetadata();
+        put(headers, MESSAGE_ID, metadata != null ? metadata.getMessageId() : null);
+        put(headers, EVENT_ID, message.getEventId());
+        put(headers, SKU_ID, message.getSkuId());
+        put(headers, NODE_KEY, message.getNodeKey());
+        put(headers, ADJUSTMENT_TYPE, message.getAdjustmentType() != null ? message.getAdjustmentType().name() : null);
+        put(headers, SOURCE_REGION, metadata != null ? metadata.getSourceRegion() : null);
+    }
+
+    /**
+     * @return the routing fields, or null if the message was not stamped, in which case
+     * the body has to be decoded to route it
+     */
+    public static MessageHeaders read(Map<String, Object> headers) {
+        // The adjustment type is mandatory, so it doubles as the marker of a stamped message
+        Object adjustmentType = headers.get(ADJUSTMENT_TYPE);
+        if (adjustmentType == null) {
+            return null;
+        }
+        PriceAdjustmentMessage.AdjustmentType type;
+        try {
+            type = PriceAdjustmentMessage.AdjustmentType.valueOf(adjustmentType.toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new MessageHeaders(text(headers.get(MESSAGE_ID)), text(headers.get(EVENT_ID)),
+                text(headers.get(SKU_ID)), text(headers.get(NODE_KEY)), type, text(headers.get(SOURCE_REGION)));
+    }
+
+    private static void put(Map<String, Object> headers, String name, String value) {
+        if (value == null) {
+            headers.remove(name);
+        } else {
+            headers.put(name, value);
+        }
+    }
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getSkuId() {
+        return skuId;
+    }
+
+    public String getNodeKey() {
+        return nodeKey;
+    }
+
+    public PriceAdjustmentMessage.AdjustmentType getAdjustmentType() {
+        return adjustmentType;
+    }
+
+    public String getSourceRegion() {
+        return sourceRegion;
+    }
 }
@@ -1,10 +1,14 @@
 package com.retail.messaging.model;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * Most messages carry no custom headers, so the header map is only allocated once the
+ * first header is added.
+ *
  * @author Angel Zlatenov
  */
 public class MessageMetadata {
@@ -17,7 +21,6 @@ public class MessageMetadata {
 
     public MessageMetadata() {
         this.timestamp = LocalDateTime.now();
-        this.headers = new HashMap<>();
         this.retryCount = 0;
         this.status = ProcessingStatus.NEW;
     }
@@ -68,11 +71,18 @@ public class MessageMetadata {
     }
 
     public Map<String, String> getHeaders() {
-        return headers;
+        return headers != null ? headers : Collections.emptyMap();
+    }
+
+    public void setHeaders(Map<String, String> headers) {
+        this.headers = headers;
     }
 
     public void addHeader(String key, String value) {
-        this.headers.put(key, value);
+        if (headers == null) {
+            headers = new HashMap<>(4);
+        }
+        headers.put(key, value);
     }
 
     public ProcessingStatus getStatus() {
@@ -0,0 +1,63 @@
+package com.retail.messaging.monitoring;
+
+import com.retail.messaging.consumer.DeadLetterQueueProcessor;
+import com.retail.messaging.dlq.ReplayFilter;
+import com.retail.messaging.dlq.ReplayProgress;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Actuator endpoint for bulk dead letter replay: {@code POST /actuator/dlqreplay} starts a
+ * replay, {@code GET} reports its progress and throughput, {@code DELETE} cancels it.
+ *
+ * <p>{@code source} is {@code store} (default) or {@code archive}; {@code from} and
+ * {@code to} are ISO-8601 instants bounding the time of the last failure.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+@Endpoint(id = "dlqreplay")
+public class DeadLetterReplayEndpoint {
+    private final DeadLetterQueueProcessor deadLetterQueueProcessor;
+
+    public DeadLetterReplayEndpoint(DeadLetterQueueProcessor deadLetterQueueProcessor) {
+        this.deadLetterQueueProcessor = deadLetterQueueProcessor;
+    }
+
+    @ReadOperation
+    public ReplayProgress progress() {
+        return deadLetterQueueProcessor.getReplayProgress().orElse(null);
+    }
+
+    @WriteOperation
+    public ReplayProgress replay(@Nullable String source, @Nullable String type, @Nullable String sourceRegion,
+                                 @Nullable String eventIdFrom, @Nullable String eventIdTo,
+                                 @Nullable String from, @Nullable String to,
+                                 @Nullable Integer rate, @Nullable Integer limit) {
+        boolean fromArchive = "archive".equalsIgnoreCase(source);
+        if (source != null && !fromArchive && !"store".equalsIgnoreCase(source)) {
+            throw new IllegalArgumentException("Unknown replay source: " + source);
+        }
+        ReplayFilter filter = new ReplayFilter(type, sourceRegion, eventIdFrom, eventIdTo,
+                epochMillis(from), epochMillis(to));
+        return deadLetterQueueProcessor.startReplay(fromArchive, filter,
+                rate != null ? rate : 0, limit != null ? limit : 0);
+    }
+
+    @DeleteOperation
+    public Map<String, Boolean> cancel() {
+        return Map.of("cancelled", deadLetterQueueProcessor.cancelReplay());
+    }
+
+    private static Long epochMillis(String instant) {
+        return instant != null ? Instant.parse(instant).toEpochMilli() : null;
+    }
+}
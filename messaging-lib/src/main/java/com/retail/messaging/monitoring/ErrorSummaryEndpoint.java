@@ -0,0 +1,38 @@
+package com.retail.messaging.monitoring;
+
+import com.retail.messaging.error.ErrorAggregator;
+import com.retail.messaging.error.ErrorSummary;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint for the aggregated error summary: {@code GET /actuator/errors} lists
+ * every error fingerprint seen in the window, most frequent first, and
+ * {@code GET /actuator/errors/{fingerprint}} returns a single one.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+@Endpoint(id = "errors")
+public class ErrorSummaryEndpoint {
+    private final ErrorAggregator errorAggregator;
+
+    public ErrorSummaryEndpoint(ErrorAggregator errorAggregator) {
+        this.errorAggregator = errorAggregator;
+    }
+
+    @ReadOperation
+    public List<ErrorSummary> errors() {
+        return errorAggregator.summaries();
+    }
+
+    @ReadOperation
+    public ErrorSummary error(@Selector String fingerprint) {
+        return errorAggregator.summary(fingerprint).orElse(null);
+    }
+}
@@ -1,15 +1,16 @@
 package com.retail.messaging.monitoring;
 
 import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.BoundedExpiringMap;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.util.Arrays;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -20,11 +21,15 @@ import java.util.concurrent.TimeUnit;
 public class MessageTracker {
     private static final Logger logger = LoggerFactory.getLogger(MessageTracker.class);
     private final MeterRegistry meterRegistry;
-    private final ConcurrentHashMap<String, MessageStats> messageStats;
+    private final BoundedExpiringMap<String, MessageStats> messageStats;
 
-    public MessageTracker(MeterRegistry meterRegistry) {
+    public MessageTracker(MeterRegistry meterRegistry,
+                          @Value("${messaging.bookkeeping.message-stats.ttl:600000}") long ttl,
+                          @Value("${messaging.bookkeeping.message-stats.max-size:200000}") int maxSize) {
         this.meterRegistry = meterRegistry;
-        this.messageStats = new ConcurrentHashMap<>();
+        // Messages that never reach COMPLETED would otherwise stay tracked forever
+        this.messageStats = new BoundedExpiringMap<>("message-stats", Duration.ofMillis(ttl),
+                Duration.ofSeconds(1), maxSize, meterRegistry);
         setupMetrics();
     }
 
@@ -84,7 +89,7 @@ public class MessageTracker {
     }
 
     private void setupMetrics() {
-        meterRegistry.gauge("messages.in_progress", messageStats, ConcurrentHashMap::size);
+        meterRegistry.gauge("messages.in_progress", messageStats, BoundedExpiringMap::size);
     }
 
     private static class MessageStats {
@@ -1,18 +1,28 @@
 package com.retail.messaging.monitoring;
 
+import com.retail.messaging.consumer.AdmissionGate;
 import com.retail.messaging.consumer.BatchMessageConsumer;
+import com.retail.messaging.consumer.PartitionedExecutor;
+import com.retail.messaging.consumer.ProcessingCircuitBreaker;
 import com.retail.messaging.model.BatchMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 public class MetricsCollector {
     private final MeterRegistry registry;
     private final Timer processingTimer;
     private final Timer batchProcessingTimer;
+    private final AtomicLong windowLatencyNanos = new AtomicLong();
+    private final AtomicLong windowMessageCount = new AtomicLong();
+    private final AtomicReference<Double> lastBatchSuccessRate = new AtomicReference<>(1.0);
 
     public MetricsCollector(MeterRegistry registry) {
         this.registry = registry;
@@ -26,6 +36,8 @@ public class MetricsCollector {
 
     public void recordMessageProcessing(BatchMessageConsumer.ProcessingType type, long processingTimeNanos) {
         processingTimer.record(processingTimeNanos, TimeUnit.NANOSECONDS);
+        windowLatencyNanos.addAndGet(processingTimeNanos);
+        windowMessageCount.incrementAndGet();
         registry.counter("messages.processed", "type", type.name().toLowerCase()).increment();
     }
 
@@ -33,6 +45,73 @@ public class MetricsCollector {
         batchProcessingTimer.record(metrics.getTotalProcessingTime(), TimeUnit.MILLISECONDS);
         registry.gauge("batch.size", metrics.getBatchSize());
         registry.gauge("batch.success.rate", metrics.getSuccessRate());
+        lastBatchSuccessRate.set(metrics.getSuccessRate());
         registry.counter("batches.processed", "type", type.name().toLowerCase()).increment();
     }
-}
\ No newline at end of file
+
+    public void recordAcknowledgements(BatchMessageConsumer.ProcessingType type, int acknowledged, int rejected) {
+        registry.counter("messages.acknowledged", "type", type.name().toLowerCase()).increment(acknowledged);
+        registry.counter("messages.rejected", "type", type.name().toLowerCase()).increment(rejected);
+    }
+
+    public void recordCompaction(BatchMessageConsumer.ProcessingType type, int folded) {
+        registry.counter("batch.compaction.folded", "type", type.name().toLowerCase()).increment(folded);
+    }
+
+    public void recordCircuitTransition(BatchMessageConsumer.ProcessingType type,
+                                        ProcessingCircuitBreaker.State from,
+                                        ProcessingCircuitBreaker.State to) {
+        registry.counter("processing.circuit.transitions", "type", type.name().toLowerCase(),
+                "from", from.name().toLowerCase(), "to", to.name().toLowerCase()).increment();
+    }
+
+    public void recordShed(BatchMessageConsumer.ProcessingType type, int count) {
+        registry.counter("processing.circuit.shed", "type", type.name().toLowerCase()).increment(count);
+    }
+
+    /**
+     * Returns the mean per-message latency observed since the previous call and starts
+     * a new observation window, or -1 if no message was processed in the window.
+     */
+    public double drainAverageLatencyMillis() {
+        long count = windowMessageCount.getAndSet(0);
+        long totalNanos = windowLatencyNanos.getAndSet(0);
+        if (count == 0) {
+            return -1;
+        }
+        return (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getLastBatchSuccessRate() {
+        return lastBatchSuccessRate.get();
+    }
+
+    public void registerLaneQueueDepths(PartitionedExecutor executor) {
+        for (int lane = 0; lane < executor.getLaneCount(); lane++) {
+            int laneIndex = lane;
+            Gauge.builder("processing.lane.queue.depth", executor, e -> e.getQueueDepth(laneIndex))
+                    .description("Messages waiting in a store group processing lane")
+                    .tag("lane", String.valueOf(lane))
+                    .register(registry);
+        }
+    }
+
+    public void registerBacklog(AdmissionGate gate) {
+        Gauge.builder("processing.backlog", gate, AdmissionGate::getBacklog)
+                .description("Messages admitted for processing but not yet finished")
+                .register(registry);
+        Gauge.builder("processing.backpressure.paused", gate, g -> g.isPaused() ? 1 : 0)
+                .description("Whether intake is paused by the backlog high watermark")
+                .register(registry);
+        FunctionCounter.builder("processing.backpressure.pauses", gate, AdmissionGate::getPauseCount)
+                .description("Times intake was paused by the backlog high watermark")
+                .register(registry);
+    }
+
+    public void registerCircuitBreaker(BatchMessageConsumer.ProcessingType type, ProcessingCircuitBreaker breaker) {
+        Gauge.builder("processing.circuit.state", breaker, b -> b.getState().ordinal())
+                .description("Processor circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .tag("type", type.name().toLowerCase())
+                .register(registry);
+    }
+}
@@ -0,0 +1,80 @@
+package com.retail.messaging.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes a batch of messages and then waits for all of their publisher confirms
+ * together, instead of one round trip per message. Relies on the correlated confirms
+ * enabled on the connection factory.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class ConfirmedBatchSender {
+    private static final Logger logger = LoggerFactory.getLogger(ConfirmedBatchSender.class);
+
+    private final RabbitTemplate rabbitTemplate;
+
+    public ConfirmedBatchSender(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * @return the indexes of the messages the broker confirmed; a message that was nacked,
+     * returned as unroutable or not confirmed within the timeout is left unset
+     */
+    public BitSet send(List<OutboundMessage> messages, long timeoutMillis) {
+        List<CorrelationData> correlations = new ArrayList<>(messages.size());
+        for (OutboundMessage outbound : messages) {
+            CorrelationData correlation = new CorrelationData(UUID.randomUUID().toString());
+            try {
+                rabbitTemplate.send(outbound.exchange(), outbound.routingKey(), outbound.message(), correlation);
+                correlations.add(correlation);
+            } catch (Exception e) {
+                logger.error("Failed to publish message {} to {}",
+                        outbound.message().getMessageProperties().getMessageId(), outbound.exchange(), e);
+                correlations.add(null);
+            }
+        }
+
+        BitSet confirmed = new BitSet(messages.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = 0; i < correlations.size(); i++) {
+            CorrelationData correlation = correlations.get(i);
+            if (correlation != null && awaitConfirm(correlation, deadline)) {
+                confirmed.set(i);
+            }
+        }
+        return confirmed;
+    }
+
+    private boolean awaitConfirm(CorrelationData correlation, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return confirm.isAck() && correlation.getReturned() == null;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public record OutboundMessage(String exchange, String routingKey, Message message) {
+    }
+}
@@ -4,6 +4,8 @@ import com.retail.messaging.model.PriceAdjustmentMessage;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 
+import java.util.List;
+
 /**
  * @author Angel Zlatenov
  */
@@ -27,4 +29,22 @@ public interface MessagePublisher {
     )
     void publish(PriceAdjustmentMessage message, String exchange, String routingKey) throws MessagePublishException;
 
+    /**
+     * Publishes the messages packed into as few envelopes as possible, waiting for every
+     * envelope to be confirmed. A retry republishes all of them; consumers drop the
+     * records they already processed.
+     *
+     * @param messages The price adjustment messages to publish
+     * @param exchange The target exchange
+     * @param routingKey The routing key for message delivery
+     * @throws MessagePublishException if publishing fails after retries
+     */
+    @Retryable(
+            value = {MessagePublishException.class},
+            maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2)
+    )
+    void publishBatch(List<PriceAdjustmentMessage> messages, String exchange, String routingKey)
+            throws MessagePublishException;
+
 }
\ No newline at end of file
@@ -1,17 +1,25 @@
 package com.retail.messaging.producer;
 
+import com.retail.messaging.codec.EnvelopeCodec;
+import com.retail.messaging.model.MessageHeaders;
 import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.BoundedExpiringMap;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 
 @Component
@@ -20,21 +28,37 @@ public class RetryableMessagePublisher implements MessagePublisher {
     private static final int DEFAULT_TIMEOUT_MS = 5000;
 
     private final RabbitTemplate rabbitTemplate;
-    private final ConcurrentHashMap<String, CorrelationMetadata> pendingConfirms;
-    private final Jackson2JsonMessageConverter messageConverter;
+    private final BoundedExpiringMap<String, CorrelationMetadata> pendingConfirms;
+    private final MessageConverter messageConverter;
+    private final String contentType;
+    private final int envelopeMaxRecords;
+    private final int envelopeCompressionThreshold;
 
     @Autowired
-    public RetryableMessagePublisher(RabbitTemplate rabbitTemplate) {
+    public RetryableMessagePublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                                     @Value("${messaging.bookkeeping.pending-confirms.max-size:50000}") int maxPending,
+                                     @Value("${messaging.codec.content-type:application/json}") String contentType,
+                                     @Value("${messaging.producer.envelope.max-records:500}") int envelopeMaxRecords,
+                                     @Value("${messaging.producer.envelope.compression-threshold:16384}")
+                                     int envelopeCompressionThreshold) {
         this.rabbitTemplate = rabbitTemplate;
-        this.pendingConfirms = new ConcurrentHashMap<>();
-        this.messageConverter = new Jackson2JsonMessageConverter();
+        // Publishers stop waiting after DEFAULT_TIMEOUT_MS; anything left past twice that was never confirmed
+        this.pendingConfirms = new BoundedExpiringMap<>("pending-confirms", Duration.ofMillis(DEFAULT_TIMEOUT_MS * 2L),
+                Duration.ofMillis(100), maxPending, meterRegistry,
+                (correlationId, metadata) -> metadata.setFailure(
+                        new MessagePublishException("Message publish confirmation was evicted")));
+        this.messageConverter = rabbitTemplate.getMessageConverter();
+        // Selects the codec; switch to binary only once every consumer understands it
+        this.contentType = contentType;
+        this.envelopeMaxRecords = Math.max(1, envelopeMaxRecords);
+        this.envelopeCompressionThreshold = envelopeCompressionThreshold;
 
         setupCallbacks();
     }
 
     private void setupCallbacks() {
         rabbitTemplate.setConfirmCallback((correlation, ack, reason) -> {
-            CorrelationMetadata metadata = pendingConfirms.remove(correlation);
+            CorrelationMetadata metadata = correlation == null ? null : pendingConfirms.remove(correlation.getId());
             if (metadata != null) {
                 if (!ack) {
                     logger.error("Message {} was not confirmed. Reason: {}", correlation, reason);
@@ -76,11 +100,13 @@ public class RetryableMessagePublisher implements MessagePublisher {
 
         MessageProperties properties = new MessageProperties();
         properties.setCorrelationId(correlationId);
+        properties.setContentType(contentType);
+        MessageHeaders.stamp(message, properties.getHeaders());
 
         Message amqpMessage = messageConverter.toMessage(message, properties);
 
         try {
-            rabbitTemplate.send(exchange, routingKey, amqpMessage);
+            rabbitTemplate.send(exchange, routingKey, amqpMessage, new CorrelationData(correlationId));
             metadata.await(DEFAULT_TIMEOUT_MS);
 
             if (metadata.getException() != null) {
@@ -96,6 +122,48 @@ public class RetryableMessagePublisher implements MessagePublisher {
         }
     }
 
+    @Override
+    public void publishBatch(List<PriceAdjustmentMessage> messages, String exchange, String routingKey)
+            throws MessagePublishException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        // Send every envelope before waiting, so confirms for the whole batch overlap
+        List<String> correlationIds = new ArrayList<>();
+        List<CorrelationMetadata> confirms = new ArrayList<>();
+        try {
+            for (int from = 0; from < messages.size(); from += envelopeMaxRecords) {
+                List<PriceAdjustmentMessage> records =
+                        messages.subList(from, Math.min(from + envelopeMaxRecords, messages.size()));
+                String correlationId = UUID.randomUUID().toString();
+                CorrelationMetadata metadata = new CorrelationMetadata();
+                pendingConfirms.put(correlationId, metadata);
+                correlationIds.add(correlationId);
+                confirms.add(metadata);
+
+                MessageProperties properties = new MessageProperties();
+                properties.setCorrelationId(correlationId);
+                Message envelope = EnvelopeCodec.pack(records, properties, envelopeCompressionThreshold);
+                rabbitTemplate.send(exchange, routingKey, envelope, new CorrelationData(correlationId));
+            }
+
+            long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT_MS;
+            for (CorrelationMetadata metadata : confirms) {
+                metadata.await(Math.max(1, deadline - System.currentTimeMillis()));
+                if (metadata.getException() != null) {
+                    throw metadata.getException();
+                }
+            }
+        } catch (TimeoutException e) {
+            throw new MessagePublishException("Envelope publish confirmation timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagePublishException("Envelope publish interrupted", e);
+        } finally {
+            correlationIds.forEach(pendingConfirms::remove);
+        }
+    }
+
     private static class CorrelationMetadata {
         private boolean completed = false;
         private MessagePublishException exception;
@@ -0,0 +1,241 @@
+package com.retail.messaging.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Concurrent map for short-lived per-message bookkeeping, bounded both in time and in
+ * size. Every entry lives for the same time-to-live after it was last written. Entries
+ * are filed into a ring of timer buckets by the tick in which they expire, so expiry
+ * drains one bucket per elapsed tick instead of scanning the whole map. Once the map
+ * holds {@code maxSize} entries, the entries closest to expiry are evicted first.
+ * <p>
+ * Expiry is driven by the callers, so no thread is needed. An entry that has expired
+ * but was not drained yet is never returned.
+ *
+ * @author Angel Zlatenov
+ */
+
+public class BoundedExpiringMap<K, V> {
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+    private final Set<K>[] buckets;
+    private final long tickMillis;
+    private final long ttlTicks;
+    private final int maxSize;
+    private final BiConsumer<K, V> evictionListener;
+    private final ReentrantLock drainLock;
+    private final Counter expired;
+    private final Counter evicted;
+
+    // Last tick whose bucket has been drained, written under drainLock
+    private volatile long drainedThrough;
+
+    public BoundedExpiringMap(String name, Duration ttl, Duration tick, int maxSize,
+                              MeterRegistry meterRegistry) {
+        this(name, ttl, tick, maxSize, meterRegistry, (key, value) -> {
+        });
+    }
+
+    /**
+     * @param evictionListener called with every entry dropped by expiry or by the size
+     *                         limit, after it has left the map; not called for
+     *                         {@link #remove}
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedExpiringMap(String name, Duration ttl, Duration tick, int maxSize,
+                              MeterRegistry meterRegistry, BiConsumer<K, V> evictionListener) {
+        if (tick.toMillis() <= 0 || ttl.compareTo(tick) < 0) {
+            throw new IllegalArgumentException("ttl must be at least one tick of at least 1ms");
+        }
+        this.tickMillis = tick.toMillis();
+        this.ttlTicks = (ttl.toMillis() + tickMillis - 1) / tickMillis;
+        this.maxSize = maxSize;
+        this.evictionListener = evictionListener;
+        this.entries = new ConcurrentHashMap<>();
+        // Live entries expire between the current tick and ttlTicks + 1 ticks ahead
+        this.buckets = new Set[(int) ttlTicks + 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.drainLock = new ReentrantLock();
+        this.drainedThrough = currentTick();
+
+        Tags tags = Tags.of("map", name);
+        this.expired = meterRegistry.counter("expiring.map.evictions", tags.and("cause", "expired"));
+        this.evicted = meterRegistry.counter("expiring.map.evictions", tags.and("cause", "size"));
+        meterRegistry.gauge("expiring.map.size", tags, entries, Map::size);
+    }
+
+    public V get(K key) {
+        long tick = currentTick();
+        drainExpired(tick);
+        Entry<V> entry = entries.get(key);
+        return entry == null || entry.expiresAt <= tick ? null : entry.value;
+    }
+
+    public void put(K key, V value) {
+        long tick = currentTick();
+        drainExpired(tick);
+        Entry<V> entry = new Entry<>(value, tick + ttlTicks);
+        entries.compute(key, (k, previous) -> file(k, previous, entry));
+        enforceMaxSize();
+    }
+
+    /**
+     * Returns the live value for the key, creating and storing one if there is none.
+     * Returning an existing value does not extend its time-to-live.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        long tick = currentTick();
+        drainExpired(tick);
+        Entry<V> result = entries.compute(key, (k, previous) -> {
+            if (previous != null && previous.expiresAt > tick) {
+                return previous;
+            }
+            return file(k, previous, new Entry<>(mappingFunction.apply(k), tick + ttlTicks));
+        });
+        enforceMaxSize();
+        return result.value;
+    }
+
+    public V remove(K key) {
+        drainExpired(currentTick());
+        Object[] removed = new Object[1];
+        entries.computeIfPresent(key, (k, entry) -> {
+            bucketOf(entry.expiresAt).remove(k);
+            removed[0] = entry.value;
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        V value = (V) removed[0];
+        return value;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Visits every live entry. Weakly consistent, like iteration over a
+     * {@link ConcurrentHashMap}.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long tick = currentTick();
+        drainExpired(tick);
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt > tick) {
+                action.accept(key, entry.value);
+            }
+        });
+    }
+
+    private Entry<V> file(K key, Entry<V> previous, Entry<V> entry) {
+        // Runs inside the key's compute, so bucket membership never races with a drain
+        if (previous != null && bucketOf(previous.expiresAt) != bucketOf(entry.expiresAt)) {
+            bucketOf(previous.expiresAt).remove(key);
+        }
+        bucketOf(entry.expiresAt).add(key);
+        return entry;
+    }
+
+    private void drainExpired(long tick) {
+        if (drainedThrough >= tick - 1 || !drainLock.tryLock()) {
+            return;
+        }
+        List<Evicted<K, V>> drained = new ArrayList<>();
+        try {
+            // After a long idle period every bucket is due at most once
+            long from = Math.max(drainedThrough + 1, tick - buckets.length);
+            for (long due = from; due < tick; due++) {
+                drainBucket(due, due, Integer.MAX_VALUE, drained);
+            }
+            drainedThrough = tick - 1;
+        } finally {
+            drainLock.unlock();
+        }
+        expired.increment(drained.size());
+        notifyEvicted(drained);
+    }
+
+    private void enforceMaxSize() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        List<Evicted<K, V>> drained = new ArrayList<>();
+        drainLock.lock();
+        try {
+            long tick = currentTick();
+            for (long due = drainedThrough + 1; due <= tick + ttlTicks && entries.size() > maxSize; due++) {
+                drainBucket(due, Long.MAX_VALUE, entries.size() - maxSize, drained);
+            }
+        } finally {
+            drainLock.unlock();
+        }
+        evicted.increment(drained.size());
+        notifyEvicted(drained);
+    }
+
+    /**
+     * Removes up to {@code limit} entries of the bucket for {@code bucketTick} that
+     * expire no later than {@code expiringBy}. Keys whose entry has since moved to
+     * another bucket or been removed are dropped from the bucket as well.
+     */
+    private void drainBucket(long bucketTick, long expiringBy, int limit, List<Evicted<K, V>> drained) {
+        Set<K> bucket = bucketOf(bucketTick);
+        int removed = 0;
+        for (K key : bucket) {
+            if (removed >= limit) {
+                return;
+            }
+            int before = drained.size();
+            entries.compute(key, (k, entry) -> {
+                if (entry == null) {
+                    bucket.remove(k);
+                    return null;
+                }
+                if (bucketOf(entry.expiresAt) != bucket) {
+                    bucket.remove(k);
+                    return entry;
+                }
+                if (entry.expiresAt > expiringBy) {
+                    return entry;
+                }
+                bucket.remove(k);
+                drained.add(new Evicted<>(k, entry.value));
+                return null;
+            });
+            removed += drained.size() - before;
+        }
+    }
+
+    private void notifyEvicted(List<Evicted<K, V>> drained) {
+        for (Evicted<K, V> entry : drained) {
+            evictionListener.accept(entry.key(), entry.value());
+        }
+    }
+
+    private Set<K> bucketOf(long tick) {
+        return buckets[(int) Math.floorMod(tick, (long) buckets.length)];
+    }
+
+    private long currentTick() {
+        return System.currentTimeMillis() / tickMillis;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private record Evicted<K, V>(K key, V value) {
+    }
+}
@@ -0,0 +1,128 @@
+package com.retail.messaging.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one place messaging-lib components get their threads from. Periodic and delayed
+ * work shares a single small scheduler, so its tasks must hand anything long-running
+ * off to a worker pool. Components that need dedicated threads get a named worker pool.
+ * <p>
+ * Every executor is named {@code messaging-<name>} and registered with
+ * {@link ExecutorServiceMetrics}, which publishes utilization, queue depth and task
+ * execution and wait times under the {@code executor} meters tagged with that name. On
+ * shutdown the scheduler stops first, so no new work is triggered, then the worker
+ * pools are drained in reverse order of creation within one shared timeout.
+ *
+ * @author Angel Zlatenov
+ */
+
+@Component
+public class MessagingExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(MessagingExecutors.class);
+    private static final String PREFIX = "messaging-";
+
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final List<NamedExecutor> workerPools;
+    private final long shutdownTimeoutMillis;
+
+    public MessagingExecutors(MeterRegistry meterRegistry,
+                              @Value("${messaging.executors.scheduler-threads:2}") int schedulerThreads,
+                              @Value("${messaging.executors.shutdown-timeout:30000}") long shutdownTimeoutMillis) {
+        this.meterRegistry = meterRegistry;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.workerPools = new ArrayList<>();
+        ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(schedulerThreads, threadFactory("scheduler"));
+        // Cancelled periodic tasks would otherwise stay queued until their next run
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = ExecutorServiceMetrics.monitor(meterRegistry, executor, PREFIX + "scheduler");
+    }
+
+    /**
+     * The shared scheduler for periodic and delayed tasks. Tasks run on one of a few
+     * shared threads and must not block for long.
+     */
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Creates a fixed pool of named platform threads, shut down with this component.
+     */
+    public synchronized ExecutorService newWorkerPool(String name, int threads) {
+        return register(name, Executors.newFixedThreadPool(threads, threadFactory(name)));
+    }
+
+    /**
+     * Creates an executor that starts a named virtual thread per task, shut down with
+     * this component.
+     */
+    public synchronized ExecutorService newVirtualThreadExecutor(String name) {
+        ThreadFactory factory = Thread.ofVirtual().name(PREFIX + name + "-", 0).factory();
+        return register(name, Executors.newThreadPerTaskExecutor(factory));
+    }
+
+    /**
+     * Shuts the executor down and waits for its running tasks, for components that must
+     * finish their work before releasing other resources in their own shutdown.
+     *
+     * @return whether the executor terminated in time
+     */
+    public static boolean shutdownAndAwait(ExecutorService executor, long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        scheduler.shutdownNow();
+        workerPools.forEach(pool -> pool.executor().shutdown());
+        for (int i = workerPools.size() - 1; i >= 0; i--) {
+            NamedExecutor pool = workerPools.get(i);
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            if (!shutdownAndAwait(pool.executor(), remaining)) {
+                logger.warn("Executor {} did not terminate within {}ms, interrupted its tasks",
+                        pool.name(), shutdownTimeoutMillis);
+            }
+        }
+        logger.info("Messaging executors shut down");
+    }
+
+    private ExecutorService register(String name, ExecutorService executor) {
+        ExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, PREFIX + name);
+        workerPools.add(new NamedExecutor(name, monitored));
+        return monitored;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        return Thread.ofPlatform().name(PREFIX + name + "-", 0).daemon(true).factory();
+    }
+
+    private record NamedExecutor(String name, ExecutorService executor) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+class BinaryCodecBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 100_000;
+
+    private final Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter();
+    private final BinaryMessageConverter binaryConverter = new BinaryMessageConverter();
+
+    @Test
+    void comparesSizeAndSpeedWithJson() {
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        Message json = jsonConverter.toMessage(message, new MessageProperties());
+        Message binary = binaryConverter.toMessage(message, new MessageProperties());
+
+        double jsonEncode = nanosPerOp(() -> jsonConverter.toMessage(message, new MessageProperties()));
+        double binaryEncode = nanosPerOp(() -> binaryConverter.toMessage(message, new MessageProperties()));
+        double jsonDecode = nanosPerOp(() -> jsonConverter.fromMessage(json));
+        double binaryDecode = nanosPerOp(() -> binaryConverter.fromMessage(binary));
+
+        System.out.printf("payload bytes: json=%d binary=%d (%.0f%%)%n", json.getBody().length,
+                binary.getBody().length, 100.0 * binary.getBody().length / json.getBody().length);
+        System.out.printf("encode ns/op: json=%.0f binary=%.0f%n", jsonEncode, binaryEncode);
+        System.out.printf("decode ns/op: json=%.0f binary=%.0f%n", jsonDecode, binaryDecode);
+    }
+
+    private static double nanosPerOp(Supplier<?> operation) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink = operation.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink = operation.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink != null);
+        return (double) elapsed / MEASURED_ITERATIONS;
+    }
+}
@@ -0,0 +1,111 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import static com.retail.messaging.codec.TestMessages.sampleMessage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryMessageConverterTest {
+    private final Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter();
+    private final BinaryMessageConverter binaryConverter = new BinaryMessageConverter();
+    private final MessageConverter negotiatingConverter = negotiatingConverter();
+
+    @Test
+    void roundTripPreservesEveryField() {
+        PriceAdjustmentMessage original = sampleMessage();
+
+        PriceAdjustmentMessage decoded = (PriceAdjustmentMessage) binaryConverter.fromMessage(
+                binaryConverter.toMessage(original, new MessageProperties()));
+
+        assertEquals(original.getEventId(), decoded.getEventId());
+        assertEquals(original.getSkuId(), decoded.getSkuId());
+        assertEquals(original.getNodeKey(), decoded.getNodeKey());
+        assertEquals(original.getAdjustmentType(), decoded.getAdjustmentType());
+        assertEquals(original.getAdjustmentAmount(), decoded.getAdjustmentAmount());
+        assertNull(decoded.getAdjustmentPercentage());
+        assertEquals(original.getEffectiveDate(), decoded.getEffectiveDate());
+        assertEquals(original.getSourceDate(), decoded.getSourceDate());
+        MessageMetadata metadata = decoded.getMetadata();
+        assertEquals(original.getMetadata().getMessageId(), metadata.getMessageId());
+        assertEquals(original.getMetadata().getRetryCount(), metadata.getRetryCount());
+        assertEquals(original.getMetadata().getTimestamp(), metadata.getTimestamp());
+        assertEquals(original.getMetadata().getSourceRegion(), metadata.getSourceRegion());
+        assertEquals(original.getMetadata().getStatus(), metadata.getStatus());
+        assertEquals(original.getMetadata().getHeaders(), metadata.getHeaders());
+    }
+
+    @Test
+    void negotiatesCodecByContentType() {
+        PriceAdjustmentMessage original = sampleMessage();
+
+        MessageProperties jsonProperties = new MessageProperties();
+        jsonProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message json = negotiatingConverter.toMessage(original, jsonProperties);
+        MessageProperties binaryProperties = new MessageProperties();
+        binaryProperties.setContentType(BinaryMessageConverter.CONTENT_TYPE);
+        Message binary = negotiatingConverter.toMessage(original, binaryProperties);
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, json.getMessageProperties().getContentType());
+        assertEquals(BinaryMessageConverter.CONTENT_TYPE, binary.getMessageProperties().getContentType());
+        assertEquals(original.getEventId(),
+                ((PriceAdjustmentMessage) negotiatingConverter.fromMessage(json)).getEventId());
+        assertEquals(original.getEventId(),
+                ((PriceAdjustmentMessage) negotiatingConverter.fromMessage(binary)).getEventId());
+    }
+
+    @Test
+    void rejectsUnknownVersionAndTruncatedPayloads() {
+        byte[] body = BinaryPriceAdjustmentCodec.encode(sampleMessage());
+
+        byte[] futureVersion = body.clone();
+        futureVersion[0] = BinaryPriceAdjustmentCodec.VERSION + 1;
+        byte[] truncated = new byte[body.length / 2];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+
+        assertThrows(MessageConversionException.class, () -> BinaryPriceAdjustmentCodec.decode(futureVersion));
+        assertThrows(MessageConversionException.class, () -> BinaryPriceAdjustmentCodec.decode(truncated));
+    }
+
+    @Test
+    void rejectsCorruptStringLengths() {
+        // An event id whose length varint decodes to -1, then one that decodes to 2^32
+        byte[] negative = {BinaryPriceAdjustmentCodec.VERSION, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+        byte[] oversized = {BinaryPriceAdjustmentCodec.VERSION, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, 0x10};
+
+        assertThrows(MessageConversionException.class, () -> BinaryPriceAdjustmentCodec.decode(negative));
+        assertThrows(MessageConversionException.class, () -> BinaryPriceAdjustmentCodec.decode(oversized));
+    }
+
+    @Test
+    void binaryPayloadIsLessThanHalfTheJsonSize() {
+        PriceAdjustmentMessage message = sampleMessage();
+        Message json = jsonConverter.toMessage(message, new MessageProperties());
+        Message binary = binaryConverter.toMessage(message, new MessageProperties());
+
+        assertArrayEquals(binary.getBody(),
+                BinaryPriceAdjustmentCodec.encode(BinaryPriceAdjustmentCodec.decode(binary.getBody())));
+        assertTrue(binary.getBody().length * 2 < json.getBody().length,
+                "binary payload should be less than half the size of the JSON payload");
+    }
+
+    private MessageConverter negotiatingConverter() {
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(jsonConverter);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, jsonConverter);
+        converter.addDelegate(BinaryMessageConverter.CONTENT_TYPE, binaryConverter);
+        return converter;
+    }
+}
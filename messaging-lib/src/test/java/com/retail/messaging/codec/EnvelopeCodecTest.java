@@ -0,0 +1,76 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.List;
+
+import static com.retail.messaging.codec.TestMessages.sampleMessages;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvelopeCodecTest {
+
+    @Test
+    void roundTripKeepsRecordOrder() {
+        List<PriceAdjustmentMessage> records = sampleMessages(3);
+
+        Message envelope = EnvelopeCodec.pack(records, new MessageProperties(), 0);
+        List<PriceAdjustmentMessage> unpacked = EnvelopeCodec.unpack(envelope);
+
+        assertTrue(EnvelopeCodec.isEnvelope(envelope));
+        assertNull(envelope.getMessageProperties().getContentEncoding());
+        assertEquals(3, (Integer) envelope.getMessageProperties().getHeader(EnvelopeCodec.RECORD_COUNT_HEADER));
+        assertEquals(3, unpacked.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getEventId(), unpacked.get(i).getEventId());
+            assertEquals(records.get(i).getMetadata().getMessageId(), unpacked.get(i).getMetadata().getMessageId());
+        }
+    }
+
+    @Test
+    void compressesAboveThreshold() {
+        List<PriceAdjustmentMessage> records = sampleMessages(500);
+        int packedSize = EnvelopeCodec.pack(records, new MessageProperties(), 0).getBody().length;
+
+        Message envelope = EnvelopeCodec.pack(records, new MessageProperties(), 1024);
+
+        assertEquals(EnvelopeCodec.DEFLATE_ENCODING, envelope.getMessageProperties().getContentEncoding());
+        assertTrue(envelope.getBody().length < packedSize / 2);
+        assertEquals(500, EnvelopeCodec.unpack(envelope).size());
+    }
+
+    @Test
+    void rejectsTruncatedEnvelopes() {
+        byte[] body = EnvelopeCodec.pack(sampleMessages(2), new MessageProperties(), 0).getBody();
+        byte[] truncated = new byte[body.length - 3];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(EnvelopeCodec.CONTENT_TYPE);
+
+        assertThrows(MessageConversionException.class,
+                () -> EnvelopeCodec.unpack(new Message(truncated, properties)));
+    }
+
+    @Test
+    void recordMessageStandsAlone() {
+        PriceAdjustmentMessage record = sampleMessages(1).get(0);
+        MessageProperties envelopeProperties = new MessageProperties();
+        envelopeProperties.setHeader("source", "rms");
+        Message envelope = EnvelopeCodec.pack(List.of(record), envelopeProperties, 0);
+
+        Message standalone = EnvelopeCodec.toRecordMessage(record, envelope.getMessageProperties());
+
+        MessageProperties properties = standalone.getMessageProperties();
+        assertEquals(BinaryMessageConverter.CONTENT_TYPE, properties.getContentType());
+        assertEquals(record.getMetadata().getMessageId(), properties.getMessageId());
+        assertEquals("rms", properties.getHeader("source"));
+        assertNull(properties.getHeader(EnvelopeCodec.RECORD_COUNT_HEADER));
+        assertEquals(record.getEventId(), BinaryPriceAdjustmentCodec.decode(standalone.getBody()).getEventId());
+    }
+}
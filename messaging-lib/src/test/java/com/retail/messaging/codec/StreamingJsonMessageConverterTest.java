@@ -0,0 +1,88 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingJsonMessageConverterTest {
+    private final Jackson2JsonMessageConverter jacksonConverter = new Jackson2JsonMessageConverter();
+    private final StreamingJsonMessageConverter streamingConverter =
+            new StreamingJsonMessageConverter(jacksonConverter);
+
+    @Test
+    void readsWhatJacksonWrites() {
+        PriceAdjustmentMessage original = sampleMessage();
+
+        Message written = jacksonConverter.toMessage(original, new MessageProperties());
+
+        assertSameMessage(original, (PriceAdjustmentMessage) streamingConverter.fromMessage(written));
+    }
+
+    @Test
+    void writesWhatJacksonReads() {
+        PriceAdjustmentMessage original = sampleMessage();
+
+        Message written = streamingConverter.toMessage(original, new MessageProperties());
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, written.getMessageProperties().getContentType());
+        assertSameMessage(original, (PriceAdjustmentMessage) jacksonConverter.fromMessage(written));
+    }
+
+    @Test
+    void acceptsIsoTimestampsAndIgnoresUnknownFields() {
+        String json = "{\"eventId\":\"EVT-1\",\"adjustmentType\":\"PRICE_RESTORE\",\"effectiveDate\":\"2024-03-20T06:30:00\","
+                + "\"promotion\":{\"id\":7},\"metadata\":{\"messageId\":\"m-1\",\"timestamp\":\"2024-03-18T09:15:30.5\"}}";
+
+        PriceAdjustmentMessage decoded = JsonPriceAdjustmentCodec.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(LocalDateTime.of(2024, 3, 20, 6, 30), decoded.getEffectiveDate());
+        assertEquals(LocalDateTime.of(2024, 3, 18, 9, 15, 30, 500_000_000), decoded.getMetadata().getTimestamp());
+        assertNull(decoded.getSkuId());
+    }
+
+    @Test
+    void rejectsMalformedDates() {
+        byte[] json = "{\"effectiveDate\":\"2024-03-2OT06:30:00\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(MessageConversionException.class, () -> JsonPriceAdjustmentCodec.decode(json));
+    }
+
+    private static void assertSameMessage(PriceAdjustmentMessage expected, PriceAdjustmentMessage actual) {
+        assertEquals(expected.getEventId(), actual.getEventId());
+        assertEquals(expected.getSkuId(), actual.getSkuId());
+        assertEquals(expected.getNodeKey(), actual.getNodeKey());
+        assertEquals(expected.getAdjustmentType(), actual.getAdjustmentType());
+        assertEquals(expected.getAdjustmentAmount(), actual.getAdjustmentAmount());
+        assertEquals(expected.getAdjustmentPercentage(), actual.getAdjustmentPercentage());
+        assertEquals(expected.getEffectiveDate(), actual.getEffectiveDate());
+        assertEquals(expected.getSourceDate(), actual.getSourceDate());
+        assertEquals(expected.getMetadata().getMessageId(), actual.getMetadata().getMessageId());
+        assertEquals(expected.getMetadata().getRetryCount(), actual.getMetadata().getRetryCount());
+        assertEquals(expected.getMetadata().getTimestamp(), actual.getMetadata().getTimestamp());
+        assertEquals(expected.getMetadata().getSourceRegion(), actual.getMetadata().getSourceRegion());
+        assertEquals(expected.getMetadata().getHeaders(), actual.getMetadata().getHeaders());
+        assertEquals(expected.getMetadata().getStatus(), actual.getMetadata().getStatus());
+    }
+
+    private static PriceAdjustmentMessage sampleMessage() {
+        // A cancellation without a node key, so absent fields and percentages are covered too
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        message.getMetadata().setRetryCount(2);
+        message.setNodeKey(null);
+        message.setAdjustmentType(PriceAdjustmentMessage.AdjustmentType.PRICE_ADJ_CANCEL);
+        message.setAdjustmentAmount(null);
+        message.setAdjustmentPercentage(12.5);
+        message.setSourceDate(LocalDateTime.of(2024, 3, 18, 9, 15, 2));
+        return message;
+    }
+}
@@ -0,0 +1,47 @@
+package com.retail.messaging.codec;
+
+import com.retail.messaging.model.MessageMetadata;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class TestMessages {
+
+    private TestMessages() {
+    }
+
+    public static PriceAdjustmentMessage sampleMessage() {
+        MessageMetadata metadata = new MessageMetadata();
+        metadata.setMessageId("5b0f7e9a-3c1d-4f7e-9a51-0c2d8e6f4a13");
+        metadata.setSourceRegion("EU-WEST");
+        metadata.setRetryCount(1);
+        metadata.setStatus(MessageMetadata.ProcessingStatus.PROCESSING);
+        metadata.setTimestamp(LocalDateTime.of(2024, 3, 18, 9, 15, 30, 123_456_789));
+        metadata.addHeader("source", "rms");
+
+        PriceAdjustmentMessage message = new PriceAdjustmentMessage();
+        message.setEventId("EVT-20240318-000042");
+        message.setSkuId("SKU-1004587");
+        message.setNodeKey("STORE-0231");
+        message.setAdjustmentType(PriceAdjustmentMessage.AdjustmentType.PRICE_ADJ);
+        message.setAdjustmentAmount(-2.5);
+        message.setEffectiveDate(LocalDateTime.of(2024, 3, 20, 0, 0));
+        message.setSourceDate(LocalDateTime.of(2024, 3, 18, 9, 15));
+        message.setMetadata(metadata);
+        return message;
+    }
+
+    public static List<PriceAdjustmentMessage> sampleMessages(int count) {
+        List<PriceAdjustmentMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PriceAdjustmentMessage message = sampleMessage();
+            message.getMetadata().setMessageId("msg-" + i);
+            message.setEventId("EVT-20240318-" + i);
+            message.setSkuId("SKU-" + (1_000_000 + i));
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,81 @@
+package com.retail.messaging.consumer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionGateTest {
+
+    @Test
+    void pausesAtHighWatermark() throws InterruptedException {
+        AdmissionGate gate = new AdmissionGate(10, 4);
+
+        gate.admit(9);
+        assertFalse(gate.isPaused());
+
+        gate.admit(1);
+        assertTrue(gate.isPaused());
+        assertEquals(10, gate.getBacklog());
+        assertEquals(1, gate.getPauseCount());
+    }
+
+    @Test
+    void staysPausedUntilLowWatermark() throws InterruptedException {
+        AdmissionGate gate = new AdmissionGate(10, 4);
+        gate.admit(10);
+
+        gate.release(5);
+        assertTrue(gate.isPaused());
+
+        gate.release(1);
+        assertFalse(gate.isPaused());
+        assertEquals(4, gate.getBacklog());
+    }
+
+    @Test
+    void blocksAdmissionWhilePaused() throws InterruptedException {
+        AdmissionGate gate = new AdmissionGate(10, 4);
+        gate.admit(10);
+        CountDownLatch admitted = new CountDownLatch(1);
+
+        Thread listener = new Thread(() -> {
+            try {
+                gate.admit(1);
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        listener.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        gate.release(6);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        assertEquals(5, gate.getBacklog());
+        listener.join();
+    }
+
+    @Test
+    void countsEveryPause() throws InterruptedException {
+        AdmissionGate gate = new AdmissionGate(10, 4);
+
+        gate.admit(12);
+        gate.release(8);
+        gate.admit(6);
+
+        assertTrue(gate.isPaused());
+        assertEquals(2, gate.getPauseCount());
+    }
+
+    @Test
+    void rejectsInvertedWatermarks() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionGate(4, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionGate(10, -1));
+    }
+}
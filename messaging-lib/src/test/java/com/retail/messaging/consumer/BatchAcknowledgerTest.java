@@ -0,0 +1,118 @@
+package com.retail.messaging.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.retail.messaging.monitoring.MetricsCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+
+import static com.retail.messaging.consumer.BatchContextTest.newContext;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class BatchAcknowledgerTest {
+    private static final BatchMessageConsumer.ProcessingType TYPE = BatchMessageConsumer.ProcessingType.SCHEDULE;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BatchAcknowledger acknowledger = new BatchAcknowledger(new MetricsCollector(registry));
+    private final Channel channel = mock(Channel.class);
+
+    @Test
+    void settlesFailuresBeforeOneMultipleAck() throws IOException {
+        BatchContext context = newContext(4, 0, 1, 2, 3);
+        context.recordSuccess(0, 1);
+        context.recordFailure(1);
+        context.recordShed(2);
+        context.recordSuccess(3, 1);
+
+        acknowledger.acknowledge(channel, context, TYPE);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicNack(2, false, false);
+        order.verify(channel).basicNack(3, false, true);
+        order.verify(channel).basicAck(4, true);
+        verifyNoMoreInteractions(channel);
+        assertEquals(2.0, acknowledged());
+        assertEquals(1.0, rejected());
+    }
+
+    @Test
+    void acknowledgesOneByOneWhileADeliveryIsHeld() throws IOException {
+        BatchContext first = newContext(2, 0, 1);
+        HeldDelivery held = first.holdDelivery(0);
+        held.hold();
+        first.recordRetried(0);
+        first.recordSuccess(1, 1);
+        acknowledger.acknowledge(channel, first, TYPE);
+
+        // A later batch on the same channel must not cover the held delivery either
+        acknowledger.acknowledge(channel, succeeded(3), TYPE);
+        held.release(BatchContext.REJECTED);
+        acknowledger.acknowledge(channel, succeeded(4), TYPE);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(2, false);
+        order.verify(channel).basicAck(3, false);
+        order.verify(channel).basicNack(1, false, false);
+        order.verify(channel).basicAck(4, true);
+        verifyNoMoreInteractions(channel);
+        assertEquals(3.0, acknowledged());
+        assertEquals(1.0, rejected());
+    }
+
+    @Test
+    void settlesAHeldDeliveryWithItsMostSevereOutcome() throws IOException {
+        BatchContext context = newContext(1, 0, 0);
+        HeldDelivery held = context.holdDelivery(0);
+        held.hold();
+        context.recordRetried(0);
+        context.recordShed(1);
+        acknowledger.acknowledge(channel, context, TYPE);
+
+        verifyNoMoreInteractions(channel);
+
+        held.release(BatchContext.ACKNOWLEDGED);
+
+        verify(channel).basicNack(1, false, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void resumesMultipleAcksAfterAHeldDeliveryFailedToSettle() throws IOException {
+        doThrow(new IOException("channel closed")).when(channel).basicAck(anyLong(), anyBoolean());
+        BatchContext context = newContext(2, 0, 1);
+        HeldDelivery held = context.holdDelivery(0);
+        held.hold();
+        context.recordRetried(0);
+        context.recordSuccess(1, 1);
+
+        acknowledger.acknowledge(channel, context, TYPE);
+        held.release(BatchContext.ACKNOWLEDGED);
+        acknowledger.acknowledge(channel, succeeded(3), TYPE);
+
+        verify(channel).basicAck(3, true);
+    }
+
+    private static BatchContext succeeded(long deliveryTag) {
+        BatchContext context = new BatchContext(1);
+        context.trackDelivery(0, BatchContextTest.delivery(deliveryTag));
+        context.recordSuccess(0, 1);
+        return context;
+    }
+
+    private double acknowledged() {
+        return registry.counter("messages.acknowledged", "type", "schedule").count();
+    }
+
+    private double rejected() {
+        return registry.counter("messages.rejected", "type", "schedule").count();
+    }
+}
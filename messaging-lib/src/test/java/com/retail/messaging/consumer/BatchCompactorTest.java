@@ -0,0 +1,121 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.model.PriceAdjustmentMessage.AdjustmentType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchCompactorTest {
+    private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 18, 9, 0);
+    private static final LocalDateTime TEN = LocalDateTime.of(2024, 3, 18, 10, 0);
+    private static final LocalDateTime ELEVEN = LocalDateTime.of(2024, 3, 18, 11, 0);
+
+    private final BatchCompactor compactor = new BatchCompactor();
+
+    @Test
+    void cancelsAnAdjustmentWithItsCancel() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", NINE),
+                message(AdjustmentType.PRICE_ADJ, "STORE-2", NINE),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", TEN)));
+
+        assertEquals(positions(0, 2), folded);
+    }
+
+    @Test
+    void cancelsARestoreOnlyWithARestoreCancel() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_RESTORE, "STORE-1", NINE),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_RESTORE_CANCEL, "STORE-1", TEN)));
+
+        assertEquals(positions(0, 2), folded);
+    }
+
+    @Test
+    void cancelsOnlyOnePendingAdjustment() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", NINE),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", ELEVEN)));
+
+        assertEquals(positions(0, 1), folded);
+    }
+
+    @Test
+    void keepsACancelSourcedBeforeThePendingAdjustment() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", NINE)));
+
+        assertTrue(folded.isEmpty());
+    }
+
+    @Test
+    void keepsTheLatestAdjustmentBySourceDate() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", NINE),
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", ELEVEN)));
+
+        assertEquals(positions(0, 1), folded);
+    }
+
+    @Test
+    void keepsTheLaterArrivalOnEqualOrMissingSourceDates() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ, "STORE-2", TEN),
+                message(AdjustmentType.PRICE_ADJ, "STORE-2", null),
+                message(AdjustmentType.PRICE_ADJ, "STORE-3", null),
+                message(AdjustmentType.PRICE_ADJ, "STORE-3", NINE)));
+
+        assertEquals(positions(0, 2, 4), folded);
+    }
+
+    @Test
+    void cancelsWhenEitherSourceDateIsMissing() {
+        BitSet folded = compactor.compact(List.of(
+                message(AdjustmentType.PRICE_ADJ, "STORE-1", null),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", NINE),
+                message(AdjustmentType.PRICE_ADJ, "STORE-2", TEN),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-2", null)));
+
+        assertEquals(positions(0, 1, 2, 3), folded);
+    }
+
+    @Test
+    void leavesMessagesWithoutATypeAlone() {
+        BitSet folded = compactor.compact(List.of(
+                message(null, "STORE-1", NINE),
+                message(null, "STORE-1", TEN),
+                message(AdjustmentType.PRICE_ADJ_CANCEL, "STORE-1", ELEVEN)));
+
+        assertTrue(folded.isEmpty());
+    }
+
+    private static BitSet positions(int... indexes) {
+        BitSet positions = new BitSet();
+        for (int index : indexes) {
+            positions.set(index);
+        }
+        return positions;
+    }
+
+    private static PriceAdjustmentMessage message(AdjustmentType type, String nodeKey, LocalDateTime sourceDate) {
+        PriceAdjustmentMessage message = new PriceAdjustmentMessage();
+        message.setEventId("EVT-20240318-000042");
+        message.setSkuId("SKU-1004587");
+        message.setNodeKey(nodeKey);
+        message.setAdjustmentType(type);
+        message.setSourceDate(sourceDate);
+        return message;
+    }
+}
@@ -0,0 +1,132 @@
+package com.retail.messaging.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchContextTest {
+
+    @Test
+    void settlesEachDeliveryWithItsMostSevereRecord() {
+        // Three envelopes of two records each, tagged 1 to 3
+        BatchContext context = newContext(3, 0, 0, 1, 1, 2, 2);
+        context.recordSuccess(0, 1);
+        context.recordSkipped(1);
+        context.recordParked(2);
+        context.recordShed(3);
+        context.recordShed(4);
+        context.recordFailure(5);
+
+        BatchContext.Settlement settlement = context.settle();
+
+        assertEquals(List.of(1L), settlement.acknowledgedTags());
+        assertEquals(List.of(2L), settlement.requeuedTags());
+        assertEquals(List.of(3L), settlement.rejectedTags());
+        assertTrue(settlement.held().isEmpty());
+    }
+
+    @Test
+    void keepsTheFirstOutcomeOfARecord() {
+        BatchContext context = newContext(2, 0, 1);
+        context.recordFailure(0);
+        context.recordSuccess(0, 1);
+        context.recordShed(1);
+        context.recordSuccess(1, 1);
+
+        BatchContext.Settlement settlement = context.settle();
+
+        assertEquals(List.of(1L), settlement.rejectedTags());
+        assertEquals(List.of(2L), settlement.requeuedTags());
+    }
+
+    @Test
+    void rejectsRecordsThatNeverCompleted() {
+        BatchContext context = newContext(2, 0, 0, 1);
+        context.recordSuccess(0, 1);
+        context.recordSuccess(2, 1);
+
+        BatchContext.Settlement settlement = context.settle();
+        context.recordSuccess(1, 1);
+
+        assertFalse(context.isPending(1));
+        assertEquals(List.of(1L), settlement.rejectedTags());
+        assertEquals(List.of(1L), context.settle().rejectedTags());
+    }
+
+    @Test
+    void acknowledgesDeliveriesWithoutRecords() {
+        BatchContext context = newContext(2, 1);
+        context.recordSuccess(0, 1);
+
+        assertEquals(List.of(1L, 2L), context.settle().acknowledgedTags());
+    }
+
+    @Test
+    void completesOnceEveryRecordIsProcessed() {
+        BatchContext context = newContext(1, 0, 0);
+
+        context.markProcessed();
+        assertFalse(context.completion().isDone());
+
+        context.markProcessed();
+        assertSame(context, context.completion().join());
+        assertTrue(new BatchContext(0).completion().isDone());
+    }
+
+    @Test
+    void holdsBackADeliveryWhileARetryIsPending() {
+        BatchContext context = newContext(2, 0, 0, 1);
+        HeldDelivery held = context.holdDelivery(0);
+        held.hold();
+        context.recordRetried(0);
+        context.recordShed(1);
+        context.recordSuccess(2, 1);
+
+        BatchContext.Settlement settlement = context.settle();
+
+        assertSame(held, context.holdDelivery(1));
+        assertEquals(List.of(held), settlement.held());
+        assertEquals(List.of(2L), settlement.acknowledgedTags());
+        assertTrue(settlement.requeuedTags().isEmpty());
+        // The held delivery carries the outcome of its other record
+        assertEquals(BatchContext.REQUEUED, held.outcome());
+    }
+
+    @Test
+    void settlesARetryThatFinishedBeforeItsBatchWithTheBatch() {
+        BatchContext context = newContext(2, 0, 1);
+        HeldDelivery held = context.holdDelivery(0);
+        held.hold();
+        context.recordRetried(0);
+        context.recordSuccess(1, 1);
+        held.release(BatchContext.REJECTED);
+
+        BatchContext.Settlement settlement = context.settle();
+
+        assertTrue(settlement.held().isEmpty());
+        assertEquals(List.of(1L), settlement.rejectedTags());
+        assertEquals(List.of(2L), settlement.acknowledgedTags());
+    }
+
+    static BatchContext newContext(int deliveryCount, int... recordDeliveries) {
+        // Deliveries are tagged from 1, each record naming the delivery it was unpacked from
+        BatchContext context = new BatchContext(deliveryCount, recordDeliveries);
+        for (int i = 0; i < deliveryCount; i++) {
+            context.trackDelivery(i, delivery(i + 1));
+        }
+        return context;
+    }
+
+    static Message delivery(long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(new byte[0], properties);
+    }
+}
@@ -0,0 +1,254 @@
+package com.retail.messaging.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.retail.messaging.codec.BinaryMessageConverter;
+import com.retail.messaging.codec.TestMessages;
+import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.dedup.MessageDeduplicator;
+import com.retail.messaging.error.ErrorClassification;
+import com.retail.messaging.error.ErrorHandler;
+import com.retail.messaging.error.MessageValidationException;
+import com.retail.messaging.error.ParkingLot;
+import com.retail.messaging.model.MessageHeaders;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.monitoring.MetricsCollector;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class BatchMessageConsumerTest {
+    private static final byte[] UNREADABLE = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BinaryMessageConverter converter = new BinaryMessageConverter();
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final Channel channel = mock(Channel.class);
+    private final ErrorHandler errorHandler = mock(ErrorHandler.class);
+    private final ExecutorService workers = Executors.newFixedThreadPool(2);
+    private final MessageDeduplicator deduplicator = new MessageDeduplicator(registry,
+            mock(MessagingExecutors.class), true, 60_000, 1000, "build/dedup.snapshot", 60_000);
+    private final RecordingProcessor processor = new RecordingProcessor();
+    private final BatchMessageConsumer consumer = newConsumer(processor, false);
+
+    @AfterEach
+    void shutdownExecutors() {
+        processor.release.countDown();
+        workers.shutdownNow();
+    }
+
+    @Test
+    void skipsAStampedDuplicateWithoutDecodingIt() throws IOException {
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        deduplicator.recordProcessed(deduplicator.fingerprint(message));
+
+        consumer.consumePriceAdjustmentScheduleBatch(List.of(stamped(message, UNREADABLE, 1)), channel);
+
+        assertEquals(List.of(), processor.processed);
+        verify(rabbitTemplate, never()).getMessageConverter();
+        verify(channel, timeout(5000)).basicAck(1, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void decodesAStampedDeliveryOnceAdmitted() throws IOException {
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+
+        consumer.consumePriceAdjustmentScheduleBatch(List.of(stamped(message, 1)), channel);
+
+        assertEquals(List.of("EVT-20240318-000042"), processor.processed);
+        verify(channel, timeout(5000)).basicAck(1, true);
+        // Processed, so a redelivery is now a duplicate
+        assertTrue(deduplicator.isDuplicate(deduplicator.fingerprint(message)));
+    }
+
+    @Test
+    void skipsARepeatedMessageIdWithinTheBatch() throws IOException {
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+
+        consumer.consumePriceAdjustmentScheduleBatch(
+                List.of(stamped(message, 1), stamped(message, UNREADABLE, 2)), channel);
+
+        assertEquals(List.of("EVT-20240318-000042"), processor.processed);
+        verify(channel, timeout(5000)).basicAck(2, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void processesEveryRepeatWithoutAMessageId() throws IOException {
+        // Without an id, repeats within a batch are left for compaction to supersede
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        message.setMetadata(null);
+
+        consumer.consumePriceAdjustmentScheduleBatch(List.of(stamped(message, 1), stamped(message, 2)), channel);
+
+        assertEquals(List.of("EVT-20240318-000042", "EVT-20240318-000042"), processor.processed);
+        verify(channel, timeout(5000)).basicAck(2, true);
+    }
+
+    @Test
+    void decodesAnUnstampedDeliveryToDeduplicateIt() throws IOException {
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        deduplicator.recordProcessed(deduplicator.fingerprint(message));
+        Message delivery = converter.toMessage(message, new MessageProperties());
+        delivery.getMessageProperties().setDeliveryTag(1);
+
+        consumer.consumePriceAdjustmentScheduleBatch(List.of(delivery), channel);
+
+        assertEquals(List.of(), processor.processed);
+        verify(rabbitTemplate).getMessageConverter();
+        verify(channel, timeout(5000)).basicAck(1, true);
+    }
+
+    @Test
+    void settlesPipelinedBatchesInDeliveryOrder() throws Exception {
+        // Each store gets its own lane, so the second batch can finish first
+        PartitionedExecutor lanes = new PartitionedExecutor(2, workers);
+        assertNotEquals(lanes.laneFor("STORE-0231"), lanes.laneFor("STORE-0232"));
+        BatchMessageConsumer pipelined = newConsumer(processor, true);
+        PriceAdjustmentMessage first = TestMessages.sampleMessage();
+        PriceAdjustmentMessage second = TestMessages.sampleMessages(1).get(0);
+        second.setNodeKey("STORE-0232");
+        processor.holdUntilReleased(first.getEventId());
+
+        pipelined.consumePriceAdjustmentScheduleBatch(List.of(stamped(first, 1)), channel);
+        pipelined.consumePriceAdjustmentScheduleBatch(List.of(stamped(second, 2)), channel);
+        processor.awaitProcessed(second.getEventId());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        processor.release.countDown();
+
+        verify(channel, timeout(5000)).basicAck(2, true);
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(1, true);
+        order.verify(channel).basicAck(2, true);
+    }
+
+    @Test
+    void handsABatchProcessorEachLaneAsOneChunk() throws IOException {
+        ChunkProcessor chunkProcessor = new ChunkProcessor("EVT-20240318-1");
+        when(errorHandler.classify(any(Exception.class))).thenReturn(ErrorClassification.permanent("validation"));
+        List<PriceAdjustmentMessage> messages = TestMessages.sampleMessages(3);
+
+        newConsumer(chunkProcessor, false).consumePriceAdjustmentScheduleBatch(List.of(
+                stamped(messages.get(0), 1), stamped(messages.get(1), 2), stamped(messages.get(2), 3)), channel);
+
+        // All three share a store, so they arrive together; only the failed one is parked
+        assertEquals(List.of(List.of("EVT-20240318-0", "EVT-20240318-1", "EVT-20240318-2")), chunkProcessor.chunks);
+        verify(rabbitTemplate).send(eq("dlx"), eq("pas.parking"), any(Message.class));
+        verify(channel, timeout(5000)).basicAck(3, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    private BatchMessageConsumer newConsumer(MessageProcessor processor, boolean pipelined) {
+        when(rabbitTemplate.getMessageConverter()).thenReturn(converter);
+        MessagingExecutors executors = mock(MessagingExecutors.class);
+        when(executors.newWorkerPool(anyString(), anyInt())).thenReturn(workers);
+        ConsumerConfig config = new ConsumerConfig(10, 2, 1000, new ConsumerConfig.VirtualThreads(false, 1),
+                new ConsumerConfig.Pipeline(pipelined, 2), new ConsumerConfig.Backpressure(2000, 1000),
+                new ConsumerConfig.CircuitBreaker(false, 100, 20, 50, 80, 5000, 30000, 5));
+
+        return new BatchMessageConsumer(processor, errorHandler, new MetricsCollector(registry),
+                config, rabbitTemplate, deduplicator, new BatchCompactor(),
+                new ParkingLot(rabbitTemplate, registry, "dlx"), executors);
+    }
+
+    private Message stamped(PriceAdjustmentMessage message, long deliveryTag) {
+        return stamped(message, converter.toMessage(message, new MessageProperties()).getBody(), deliveryTag);
+    }
+
+    private static Message stamped(PriceAdjustmentMessage message, byte[] body, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        MessageHeaders.stamp(message, properties.getHeaders());
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(body, properties);
+    }
+
+    // Records the event id of every message it processes; can hold one message until released
+    private static final class RecordingProcessor implements MessageProcessor {
+        private final List<String> processed = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile String heldEventId;
+
+        void holdUntilReleased(String eventId) {
+            heldEventId = eventId;
+        }
+
+        void awaitProcessed(String eventId) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!processed.contains(eventId) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(processed.contains(eventId), eventId + " was not processed");
+        }
+
+        @Override
+        public void processMessage(PriceAdjustmentMessage message) {
+            if (message.getEventId().equals(heldEventId)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            processed.add(message.getEventId());
+        }
+    }
+
+    // Records the event ids of every chunk, failing the one scripted to fail
+    private static final class ChunkProcessor implements MessageProcessor {
+        private final List<List<String>> chunks = new CopyOnWriteArrayList<>();
+        private final String failingEventId;
+
+        ChunkProcessor(String failingEventId) {
+            this.failingEventId = failingEventId;
+        }
+
+        @Override
+        public void processMessage(PriceAdjustmentMessage message) {
+            throw new UnsupportedOperationException("Processes whole chunks only");
+        }
+
+        @Override
+        public List<ProcessingOutcome> processBatch(List<PriceAdjustmentMessage> messages) {
+            chunks.add(messages.stream().map(PriceAdjustmentMessage::getEventId).toList());
+            return messages.stream()
+                    .map(message -> message.getEventId().equals(failingEventId)
+                            ? ProcessingOutcome.failure(new MessageValidationException(List.of("unknown sku")))
+                            : ProcessingOutcome.success())
+                    .toList();
+        }
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+    }
+}
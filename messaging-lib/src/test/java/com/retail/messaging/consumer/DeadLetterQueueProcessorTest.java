@@ -0,0 +1,208 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.codec.BinaryMessageConverter;
+import com.retail.messaging.codec.TestMessages;
+import com.retail.messaging.dlq.FailureArchive;
+import com.retail.messaging.dlq.FailureRecord;
+import com.retail.messaging.dlq.FailureStore;
+import com.retail.messaging.dlq.ReplayFilter;
+import com.retail.messaging.dlq.ReplayProgress;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.producer.ConfirmedBatchSender;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeadLetterQueueProcessorTest {
+    private static final ReplayFilter EVERYTHING = new ReplayFilter(null, null, null, null, null, null);
+    private static final long FAILED_AT = 1_000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BinaryMessageConverter converter = new BinaryMessageConverter();
+    private final FailureStore failureStore = mock(FailureStore.class);
+    private final RecordingSender batchSender = new RecordingSender();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final DeadLetterQueueProcessor processor = newProcessor();
+
+    @AfterEach
+    void shutdownExecutors() {
+        batchSender.release.countDown();
+        workers.shutdownNow();
+    }
+
+    @Test
+    void replaysInBatchesPacedByTheRate() throws Exception {
+        storeRecords("m-0", "m-1", "m-2", "m-3", "m-4", "m-5", "m-6", "m-7", "m-8", "m-9");
+
+        ReplayProgress progress = processor.startReplay(false, EVERYTHING, 5, 0);
+        awaitCompletion(progress);
+
+        assertEquals(List.of(List.of("m-0", "m-1", "m-2", "m-3", "m-4"), List.of("m-5", "m-6", "m-7", "m-8", "m-9")),
+                batchSender.batches);
+        // The first batch spends the one-second burst, the second waits for the refill
+        long gap = batchSender.sentAt.get(1) - batchSender.sentAt.get(0);
+        assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(800), "batches were " + gap + "ns apart");
+        assertEquals(10, progress.getConfirmed());
+    }
+
+    @Test
+    void capsTheRateAndRunsOneReplayAtATime() throws Exception {
+        storeRecords("m-0");
+        batchSender.blockFirstBatch();
+
+        ReplayProgress progress = processor.startReplay(false, EVERYTHING, 10_000, 0);
+        assertTrue(batchSender.entered.await(5, TimeUnit.SECONDS));
+
+        assertEquals(200, progress.getRatePerSecond());
+        assertThrows(IllegalStateException.class, () -> processor.startReplay(false, EVERYTHING, 0, 0));
+
+        batchSender.release.countDown();
+        awaitCompletion(progress);
+        ReplayProgress defaultRate = processor.startReplay(false, EVERYTHING, 0, 0);
+        awaitCompletion(defaultRate);
+        assertEquals(50, defaultRate.getRatePerSecond());
+    }
+
+    @Test
+    void replaySkipsRecordsASweepIsRepublishing() throws Exception {
+        List<FailureRecord> records = storeRecords("m-0", "m-1", "m-2");
+        when(failureStore.due(anyLong(), anyInt())).thenReturn(records.subList(0, 2), List.of());
+        batchSender.blockFirstBatch();
+        workers.execute(processor::sweep);
+        assertTrue(batchSender.entered.await(5, TimeUnit.SECONDS));
+
+        ReplayProgress progress = processor.startReplay(false, EVERYTHING, 200, 0);
+        awaitCompletion(progress);
+        batchSender.release.countDown();
+
+        assertEquals(List.of(List.of("m-0", "m-1"), List.of("m-2")), batchSender.batches);
+        assertEquals(1, progress.getMatched());
+    }
+
+    @Test
+    void sweepSkipsRecordsAReplayIsRepublishing() throws Exception {
+        List<FailureRecord> records = storeRecords("m-0", "m-1", "m-2");
+        when(failureStore.due(anyLong(), anyInt())).thenReturn(records, List.of());
+        batchSender.blockFirstBatch();
+
+        // A rate of two makes the replay publish the first two records as one batch
+        ReplayProgress progress = processor.startReplay(false, EVERYTHING, 2, 2);
+        assertTrue(batchSender.entered.await(5, TimeUnit.SECONDS));
+        processor.sweep();
+        batchSender.release.countDown();
+        awaitCompletion(progress);
+
+        assertEquals(List.of(List.of("m-0", "m-1"), List.of("m-2")), batchSender.batches);
+    }
+
+    private DeadLetterQueueProcessor newProcessor() {
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(converter);
+        MessagingExecutors executors = mock(MessagingExecutors.class);
+        when(executors.newWorkerPool(anyString(), anyInt())).thenReturn(workers);
+
+        DeadLetterQueueProcessor processor = new DeadLetterQueueProcessor(failureStore, mock(FailureArchive.class),
+                batchSender, rabbitTemplate, registry, executors);
+        ReflectionTestUtils.setField(processor, "pasExchange", "pas.exchange");
+        ReflectionTestUtils.setField(processor, "padExchange", "pad.exchange");
+        ReflectionTestUtils.setField(processor, "sweepInterval", 60_000L);
+        ReflectionTestUtils.setField(processor, "sweepBatchSize", 100);
+        ReflectionTestUtils.setField(processor, "confirmTimeout", 1_000L);
+        ReflectionTestUtils.setField(processor, "defaultReplayRate", 50);
+        ReflectionTestUtils.setField(processor, "maxReplayRate", 200);
+        ReflectionTestUtils.setField(processor, "replayBatchSize", 100);
+        return processor;
+    }
+
+    private List<FailureRecord> storeRecords(String... ids) throws IOException {
+        // One due record per id, in eligibility order
+        List<FailureRecord> records = new ArrayList<>();
+        for (String id : ids) {
+            FailureRecord record = FailureRecord.firstFailure(id, "pas", FAILED_AT, FAILED_AT, "boom");
+            records.add(record);
+            when(failureStore.readMessage(record)).thenReturn(message(id));
+        }
+        when(failureStore.page(isNull(), anyInt())).thenReturn(records);
+        when(failureStore.page(any(FailureRecord.class), anyInt())).thenReturn(List.of());
+        return records;
+    }
+
+    private Message message(String id) {
+        PriceAdjustmentMessage adjustment = TestMessages.sampleMessage();
+        adjustment.getMetadata().setMessageId(id);
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(id);
+        return converter.toMessage(adjustment, properties);
+    }
+
+    private static void awaitCompletion(ReplayProgress progress) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (progress.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(ReplayProgress.State.COMPLETED, progress.getState());
+    }
+
+    // Confirms every message, recording the ids of each batch; can hold the first batch
+    private static final class RecordingSender extends ConfirmedBatchSender {
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final List<Long> sentAt = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blockFirstBatch;
+
+        RecordingSender() {
+            super(null);
+        }
+
+        void blockFirstBatch() {
+            blockFirstBatch = true;
+        }
+
+        @Override
+        public BitSet send(List<OutboundMessage> messages, long timeoutMillis) {
+            sentAt.add(System.nanoTime());
+            batches.add(messages.stream()
+                    .map(outbound -> outbound.message().getMessageProperties().getMessageId())
+                    .toList());
+            if (blockFirstBatch) {
+                blockFirstBatch = false;
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            BitSet confirmed = new BitSet(messages.size());
+            confirmed.set(0, messages.size());
+            return confirmed;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.codec.TestMessages;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageProcessorTest {
+
+    @Test
+    void defaultBatchProcessesOneMessageAtATime() {
+        IllegalStateException failure = new IllegalStateException("reference data unavailable");
+        List<String> processed = new ArrayList<>();
+        MessageProcessor processor = message -> {
+            processed.add(message.getEventId());
+            if (message.getEventId().equals("EVT-20240318-1")) {
+                throw failure;
+            }
+        };
+        List<PriceAdjustmentMessage> messages = TestMessages.sampleMessages(3);
+
+        List<ProcessingOutcome> outcomes = processor.processBatch(messages);
+
+        assertEquals(List.of("EVT-20240318-0", "EVT-20240318-1", "EVT-20240318-2"), processed);
+        assertEquals(3, outcomes.size());
+        assertTrue(outcomes.get(0).successful());
+        assertFalse(outcomes.get(1).successful());
+        assertSame(failure, outcomes.get(1).failure());
+        assertTrue(outcomes.get(2).successful());
+    }
+
+    @Test
+    void processesSingleMessagesUnlessItOptsIn() {
+        MessageProcessor processor = message -> { };
+
+        assertFalse(processor.supportsBatch());
+        assertTrue(new DefaultMessageProcessor().supportsBatch());
+    }
+}
@@ -0,0 +1,110 @@
+package com.retail.messaging.consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedExecutorTest {
+    private final ExecutorService backingExecutor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        backingExecutor.shutdownNow();
+    }
+
+    @Test
+    void runsTasksOfOnePartitionInSubmissionOrder() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor(4, backingExecutor);
+        int partitions = 8;
+        int tasksPerPartition = 500;
+        Map<String, List<Integer>> completed = new HashMap<>();
+        for (int p = 0; p < partitions; p++) {
+            completed.put("STORE-" + p, Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(partitions * tasksPerPartition);
+
+        for (int i = 0; i < tasksPerPartition; i++) {
+            for (int p = 0; p < partitions; p++) {
+                String key = "STORE-" + p;
+                int sequence = i;
+                executor.execute(key, () -> {
+                    completed.get(key).add(sequence);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        completed.forEach((key, sequences) -> {
+            assertEquals(tasksPerPartition, sequences.size());
+            for (int i = 0; i < tasksPerPartition; i++) {
+                assertEquals(i, sequences.get(i), "out of order on " + key);
+            }
+        });
+    }
+
+    @Test
+    void neverRunsTwoTasksOfOneLaneAtOnce() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor(2, backingExecutor);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) {
+            executor.executeOnLane(1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void keepsDrainingAfterAFailingTask() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor(1, backingExecutor);
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute("STORE-1", () -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute("STORE-1", done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueDepth(0));
+    }
+
+    @Test
+    void mapsAPartitionToOneLane() {
+        PartitionedExecutor executor = new PartitionedExecutor(16, backingExecutor);
+
+        assertEquals(executor.laneFor("STORE-0231"), executor.laneFor("STORE-0231"));
+        assertEquals(0, executor.laneFor(null));
+        for (int i = 0; i < 1000; i++) {
+            int lane = executor.laneFor("STORE-" + i);
+            assertTrue(lane >= 0 && lane < executor.getLaneCount());
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveLaneCount() {
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedExecutor(0, backingExecutor));
+    }
+}
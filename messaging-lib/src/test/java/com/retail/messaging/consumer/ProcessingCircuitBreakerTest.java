@@ -0,0 +1,164 @@
+package com.retail.messaging.consumer;
+
+import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.monitoring.MetricsCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessingCircuitBreakerTest {
+    private static final long OPEN_DURATION_MS = 50;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        ProcessingCircuitBreaker breaker = breaker(true);
+
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(ProcessingCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void opensAtFailureRateThreshold() {
+        ProcessingCircuitBreaker breaker = breaker(true);
+
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onFailure();
+        assertEquals(ProcessingCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1.0, transitions("closed", "open"));
+    }
+
+    @Test
+    void opensAtSlowCallRateThreshold() {
+        ProcessingCircuitBreaker breaker = breaker(true);
+
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(SLOW);
+        }
+
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldCallsLeaveTheWindow() {
+        ProcessingCircuitBreaker breaker = breaker(true);
+
+        // The first failure is pushed out of the ten-call window, leaving 4 of 10 failed
+        breaker.onFailure();
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess(FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+
+        assertEquals(ProcessingCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void deniesCallsWhileOpenThenAllowsProbes() throws InterruptedException {
+        ProcessingCircuitBreaker breaker = openBreaker();
+
+        assertFalse(breaker.tryAcquirePermission());
+
+        Thread.sleep(OPEN_DURATION_MS + 20);
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(ProcessingCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void closesOnceEveryProbeSucceeds() throws InterruptedException {
+        ProcessingCircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION_MS + 20);
+        breaker.tryAcquirePermission();
+        breaker.tryAcquirePermission();
+
+        breaker.onSuccess(FAST);
+        assertEquals(ProcessingCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(FAST);
+
+        assertEquals(ProcessingCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(1.0, transitions("half_open", "closed"));
+    }
+
+    @Test
+    void reopensOnFailedOrSlowProbe() throws InterruptedException {
+        ProcessingCircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION_MS + 20);
+        breaker.tryAcquirePermission();
+
+        breaker.onFailure();
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_DURATION_MS + 20);
+        breaker.tryAcquirePermission();
+        breaker.onSuccess(SLOW);
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2.0, transitions("half_open", "open"));
+    }
+
+    @Test
+    void awaitPermissionBlocksForTheOpenDuration() throws InterruptedException {
+        ProcessingCircuitBreaker breaker = openBreaker();
+        long start = System.nanoTime();
+
+        breaker.awaitPermission();
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MS - 5));
+        assertEquals(ProcessingCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void disabledBreakerAlwaysPermits() throws InterruptedException {
+        ProcessingCircuitBreaker breaker = breaker(false);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure();
+        }
+        breaker.awaitPermission();
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(ProcessingCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private ProcessingCircuitBreaker openBreaker() {
+        ProcessingCircuitBreaker breaker = breaker(true);
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(ProcessingCircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private ProcessingCircuitBreaker breaker(boolean enabled) {
+        // Window of 10 calls, judged from 4, opening at 50% failures or 80% slow calls
+        ConsumerConfig.CircuitBreaker settings =
+                new ConsumerConfig.CircuitBreaker(enabled, 10, 4, 50, 80, 100, OPEN_DURATION_MS, 2);
+        return new ProcessingCircuitBreaker(BatchMessageConsumer.ProcessingType.SCHEDULE, settings,
+                new MetricsCollector(registry));
+    }
+
+    private double transitions(String from, String to) {
+        return registry.counter("processing.circuit.transitions", "type", "schedule", "from", from, "to", to).count();
+    }
+}
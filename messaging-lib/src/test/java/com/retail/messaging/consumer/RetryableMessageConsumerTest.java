@@ -0,0 +1,173 @@
+package com.retail.messaging.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.retail.messaging.codec.EnvelopeCodec;
+import com.retail.messaging.codec.TestMessages;
+import com.retail.messaging.config.ConsumerConfig;
+import com.retail.messaging.error.DeterministicErrorClassifier;
+import com.retail.messaging.error.ErrorAggregator;
+import com.retail.messaging.error.ErrorClassificationPipeline;
+import com.retail.messaging.error.MessageValidationException;
+import com.retail.messaging.error.ParkingLot;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class RetryableMessageConsumerTest {
+    private static final long DELIVERY_TAG = 7;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final Channel channel = mock(Channel.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService workers = Executors.newFixedThreadPool(2);
+    private final ScriptedProcessor processor = new ScriptedProcessor();
+    private final RetryableMessageConsumer consumer = newConsumer();
+
+    @AfterEach
+    void shutdownExecutors() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Test
+    void acknowledgesAnEnvelopeOnceEveryRecordIsProcessed() throws IOException {
+        consumer.consumePriceAdjustmentSchedule(envelope(3), channel);
+
+        assertEquals(List.of("EVT-20240318-0", "EVT-20240318-1", "EVT-20240318-2"), processor.processed);
+        verify(channel).basicAck(DELIVERY_TAG, false);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void parksAFailedRecordWithoutItsSiblings() throws IOException {
+        processor.failWith("EVT-20240318-1", new MessageValidationException(List.of("unknown sku")));
+
+        consumer.consumePriceAdjustmentSchedule(envelope(3), channel);
+
+        assertEquals(3, processor.processed.size());
+        verify(rabbitTemplate).send(eq("dlx"), eq("pas.parking"), any(Message.class));
+        verify(channel).basicAck(DELIVERY_TAG, false);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void requeuesTheEnvelopeWhenAFailedRecordCannotBeSettled() throws IOException {
+        processor.failWith("EVT-20240318-0", new MessageValidationException(List.of("unknown sku")));
+        doThrow(new AmqpException("broker unavailable"))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+
+        consumer.consumePriceAdjustmentSchedule(envelope(3), channel);
+
+        assertEquals(3, processor.processed.size());
+        verify(channel).basicNack(DELIVERY_TAG, false, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void holdsTheEnvelopeUntilARetriedRecordSucceeds() throws IOException {
+        processor.failWith("EVT-20240318-2", new IllegalStateException("reference data unavailable"));
+
+        consumer.consumePriceAdjustmentSchedule(envelope(3), channel);
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        // The first retry tier backs off for a second
+        verify(channel, timeout(5000)).basicAck(DELIVERY_TAG, false);
+        verifyNoMoreInteractions(channel);
+        assertEquals(4, processor.processed.size());
+        assertEquals("EVT-20240318-2", processor.processed.get(3));
+    }
+
+    @Test
+    void parksAnUndecodableEnvelope() throws IOException {
+        Message envelope = envelope(2);
+        byte[] truncated = new byte[envelope.getBody().length - 3];
+        System.arraycopy(envelope.getBody(), 0, truncated, 0, truncated.length);
+
+        consumer.consumePriceAdjustmentSchedule(new Message(truncated, envelope.getMessageProperties()), channel);
+
+        assertEquals(List.of(), processor.processed);
+        verify(rabbitTemplate).send(eq("dlx"), eq("pas.parking"), any(Message.class));
+        verify(channel).basicAck(DELIVERY_TAG, false);
+    }
+
+    private RetryableMessageConsumer newConsumer() {
+        MessagingExecutors executors = mock(MessagingExecutors.class);
+        when(executors.scheduler()).thenReturn(scheduler);
+        when(executors.newWorkerPool(anyString(), anyInt())).thenReturn(workers);
+        ConsumerConfig config = new ConsumerConfig(10, 1, 1000, new ConsumerConfig.VirtualThreads(false, 1),
+                null, null, null);
+        ErrorClassificationPipeline pipeline =
+                new ErrorClassificationPipeline(List.of(new DeterministicErrorClassifier()));
+
+        RetryableMessageConsumer consumer = new RetryableMessageConsumer(rabbitTemplate, processor, config,
+                registry, pipeline, new ParkingLot(rabbitTemplate, registry, "dlx"),
+                new ErrorAggregator(registry, 60_000, 100, 60_000, 1, 5), executors);
+        ReflectionTestUtils.setField(consumer, "deadLetterExchange", "dlx");
+        return consumer;
+    }
+
+    private static Message envelope(int records) {
+        Message envelope = EnvelopeCodec.pack(TestMessages.sampleMessages(records), new MessageProperties(), 0);
+        envelope.getMessageProperties().setDeliveryTag(DELIVERY_TAG);
+        return envelope;
+    }
+
+    // Records the event id of every message, failing once per failure scripted for it
+    private static final class ScriptedProcessor implements MessageConsumer {
+        private final List<String> processed = new CopyOnWriteArrayList<>();
+        private final Map<String, Deque<RuntimeException>> failures = new ConcurrentHashMap<>();
+
+        void failWith(String eventId, RuntimeException... failures) {
+            this.failures.put(eventId, new ArrayDeque<>(List.of(failures)));
+        }
+
+        @Override
+        public void processMessage(PriceAdjustmentMessage message) {
+            processed.add(message.getEventId());
+            Deque<RuntimeException> pending = failures.get(message.getEventId());
+            RuntimeException failure = pending != null ? pending.poll() : null;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public boolean handleFailure(PriceAdjustmentMessage message, Exception exception, int retryCount) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.retail.messaging.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintWindowTest {
+    private static final long WINDOW = 8_000;
+
+    @Test
+    void longHashSetStoresZeroAndCollidingKeys() {
+        LongHashSet set = new LongHashSet(4);
+
+        assertTrue(set.add(0));
+        assertTrue(set.contains(0));
+        assertFalse(set.add(0));
+        for (long value = 1; value <= 4; value++) {
+            assertTrue(set.add(value << 32));
+        }
+
+        assertEquals(5, set.size());
+        assertTrue(set.contains(4L << 32));
+        assertFalse(set.contains(5L << 32));
+        assertTrue(set.isFull());
+        assertEquals(5, set.toArray().length);
+    }
+
+    @Test
+    void remembersFingerprintsForTheWindow() {
+        FingerprintWindow window = new FingerprintWindow(4, WINDOW, 1000);
+
+        window.add(42, 0);
+        window.add(43, 2_500);
+
+        assertTrue(window.contains(42));
+        window.expire(WINDOW - 1);
+        assertTrue(window.contains(42));
+        window.expire(WINDOW);
+        assertFalse(window.contains(42));
+        assertTrue(window.contains(43));
+    }
+
+    @Test
+    void rotatesAGenerationWhenItFillsUp() {
+        // Four generations of two entries each
+        FingerprintWindow window = new FingerprintWindow(4, WINDOW, 8);
+
+        for (long fingerprint = 1; fingerprint <= 10; fingerprint++) {
+            window.add(fingerprint, 0);
+        }
+
+        // The oldest generation was dropped to stay within the entry budget
+        assertEquals(8, window.size());
+        assertFalse(window.contains(1));
+        assertFalse(window.contains(2));
+        assertTrue(window.contains(3));
+        assertTrue(window.contains(10));
+    }
+
+    @Test
+    void snapshotRestoresUnexpiredGenerations() throws IOException {
+        FingerprintWindow window = new FingerprintWindow(4, WINDOW, 1000);
+        window.add(1, 0);
+        window.add(2, 2_000);
+        window.add(3, 4_000);
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        window.writeTo(new DataOutputStream(snapshot));
+        FingerprintWindow restored = new FingerprintWindow(4, WINDOW, 1000);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(snapshot.toByteArray())), 9_000);
+
+        assertFalse(restored.contains(1));
+        assertTrue(restored.contains(2));
+        assertTrue(restored.contains(3));
+        assertEquals(2, restored.size());
+
+        // Restored generations keep their age and expire on schedule
+        restored.expire(10_000);
+        assertFalse(restored.contains(2));
+        assertTrue(restored.contains(3));
+    }
+
+    @Test
+    void rejectsSnapshotOfAnotherVersion() {
+        byte[] snapshot = {0, 0, 0, 9, 0, 0, 0, 0};
+        FingerprintWindow window = new FingerprintWindow(4, WINDOW, 1000);
+
+        assertThrows(IOException.class,
+                () -> window.readFrom(new DataInputStream(new ByteArrayInputStream(snapshot)), 0));
+    }
+}
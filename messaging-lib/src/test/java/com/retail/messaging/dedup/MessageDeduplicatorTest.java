@@ -0,0 +1,83 @@
+package com.retail.messaging.dedup;
+
+import com.retail.messaging.codec.TestMessages;
+import com.retail.messaging.model.MessageHeaders;
+import com.retail.messaging.model.PriceAdjustmentMessage;
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class MessageDeduplicatorTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void fingerprintsStampedHeadersLikeTheMessage() {
+        MessageDeduplicator deduplicator = newDeduplicator(true);
+        PriceAdjustmentMessage withId = TestMessages.sampleMessage();
+        PriceAdjustmentMessage withoutId = TestMessages.sampleMessage();
+        withoutId.setMetadata(null);
+
+        assertEquals(deduplicator.fingerprint(withId), deduplicator.fingerprint(stamped(withId)));
+        assertEquals(deduplicator.fingerprint(withoutId), deduplicator.fingerprint(stamped(withoutId)));
+    }
+
+    @Test
+    void keysMessagesWithoutAnIdOnEventSkuStoreAndType() {
+        MessageDeduplicator deduplicator = newDeduplicator(true);
+        PriceAdjustmentMessage first = TestMessages.sampleMessage();
+        first.getMetadata().setMessageId(null);
+        PriceAdjustmentMessage sameKey = TestMessages.sampleMessage();
+        sameKey.setMetadata(null);
+        sameKey.setAdjustmentAmount(-3.0);
+        PriceAdjustmentMessage otherStore = TestMessages.sampleMessage();
+        otherStore.setMetadata(null);
+        otherStore.setNodeKey("STORE-0232");
+
+        assertEquals(deduplicator.fingerprint(first), deduplicator.fingerprint(sameKey));
+        assertNotEquals(deduplicator.fingerprint(first), deduplicator.fingerprint(otherStore));
+    }
+
+    @Test
+    void reportsOnlyProcessedFingerprintsAsDuplicates() {
+        MessageDeduplicator deduplicator = newDeduplicator(true);
+        long fingerprint = deduplicator.fingerprint(stamped(TestMessages.sampleMessage()));
+
+        assertFalse(deduplicator.isDuplicate(fingerprint));
+        deduplicator.recordProcessed(fingerprint);
+        assertTrue(deduplicator.isDuplicate(fingerprint));
+
+        assertEquals(1, registry.counter("messages.dedup.hits").count());
+        assertEquals(1, registry.counter("messages.dedup.misses").count());
+    }
+
+    @Test
+    void neverReportsDuplicatesWhenDisabled() {
+        MessageDeduplicator deduplicator = newDeduplicator(false);
+        long fingerprint = deduplicator.fingerprint(TestMessages.sampleMessage());
+
+        deduplicator.recordProcessed(fingerprint);
+
+        assertFalse(deduplicator.isDuplicate(fingerprint));
+    }
+
+    private MessageDeduplicator newDeduplicator(boolean enabled) {
+        // Never started, so no snapshot is read or written
+        return new MessageDeduplicator(registry, mock(MessagingExecutors.class), enabled, 60_000, 1000,
+                "build/dedup.snapshot", 60_000);
+    }
+
+    private static MessageHeaders stamped(PriceAdjustmentMessage message) {
+        Map<String, Object> headers = new HashMap<>();
+        MessageHeaders.stamp(message, headers);
+        return MessageHeaders.read(headers);
+    }
+}
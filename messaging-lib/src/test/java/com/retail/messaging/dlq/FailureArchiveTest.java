@@ -0,0 +1,149 @@
+package com.retail.messaging.dlq;
+
+import com.retail.messaging.support.MessagingExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailureArchiveTest {
+    private static final String TYPE = "price-adjustment";
+    private static final int RETENTION_DAYS = 3;
+    private static final long HOUR = 3_600_000;
+
+    @TempDir
+    Path dir;
+
+    private final List<MessagingExecutors> executors = new ArrayList<>();
+
+    @AfterEach
+    void shutDownExecutors() {
+        executors.forEach(executor -> executor.scheduler().shutdownNow());
+    }
+
+    @Test
+    void rollsFullSegmentsIntoCompressedFiles() throws Exception {
+        // Every write fills a one-byte segment, so each record gets its own
+        FailureArchive archive = start(1);
+        for (String id : List.of("m-1", "m-2", "m-3")) {
+            archive.archive(record(id), message(id));
+            awaitArchived(archive, id);
+        }
+        archive.stop();
+
+        Path today = dir.resolve(LocalDate.now(ZoneOffset.UTC).toString());
+        assertEquals(List.of("0.idx", "0.seg", "1.idx", "1.seg", "2.idx", "2.seg"), fileNames(today));
+
+        FailureArchive reopened = start(1);
+        for (String id : List.of("m-1", "m-2", "m-3")) {
+            FailureArchive.ArchivedFailure failure = reopened.findByMessageId(id).orElseThrow();
+            assertEquals(id, failure.record().id());
+            assertEquals(TYPE, failure.record().type());
+            assertArrayEquals(body(id), failure.message().getBody());
+        }
+        reopened.stop();
+    }
+
+    @Test
+    void closesTheActiveSegmentOnStop() throws Exception {
+        FailureArchive archive = start(64 * 1024 * 1024);
+        archive.archive(record("m-1"), message("m-1"));
+        archive.archive(record("m-2"), message("m-2"));
+        archive.stop();
+
+        Path today = dir.resolve(LocalDate.now(ZoneOffset.UTC).toString());
+        assertEquals(List.of("0.idx", "0.seg"), fileNames(today));
+
+        FailureArchive reopened = start(64 * 1024 * 1024);
+        assertArrayEquals(body("m-2"), reopened.findByMessageId("m-2").orElseThrow().message().getBody());
+        List<String> scanned = new ArrayList<>();
+        reopened.scan(LocalDate.now(ZoneOffset.UTC), LocalDate.now(ZoneOffset.UTC), failure -> {
+            scanned.add(failure.record().id());
+            return true;
+        });
+        assertEquals(List.of("m-1", "m-2"), scanned);
+        reopened.stop();
+    }
+
+    @Test
+    void dropsDaysOlderThanRetention() throws Exception {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Path kept = dir.resolve(today.minusDays(RETENTION_DAYS - 1).toString());
+        Path expired = dir.resolve(today.minusDays(RETENTION_DAYS).toString());
+        archiveAndMove("m-1", kept);
+        archiveAndMove("m-2", expired);
+        Files.createDirectories(dir.resolve("exports"));
+
+        FailureArchive archive = start(64 * 1024 * 1024);
+
+        assertTrue(Files.isDirectory(kept));
+        assertFalse(Files.exists(expired));
+        assertTrue(Files.isDirectory(dir.resolve("exports")));
+        assertTrue(archive.findByMessageId("m-1").isPresent());
+        assertTrue(archive.findByMessageId("m-2").isEmpty());
+        archive.stop();
+    }
+
+    private void archiveAndMove(String id, Path dayDirectory) throws IOException {
+        FailureArchive archive = start(64 * 1024 * 1024);
+        archive.archive(record(id), message(id));
+        archive.stop();
+        Files.move(dir.resolve(LocalDate.now(ZoneOffset.UTC).toString()), dayDirectory);
+    }
+
+    private FailureArchive start(long maxSegmentBytes) throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessagingExecutors executor = new MessagingExecutors(registry, 1, 1000);
+        executors.add(executor);
+        FailureArchive archive = new FailureArchive(new RabbitTemplate(), registry, executor, dir.toString(),
+                maxSegmentBytes, HOUR, RETENTION_DAYS, 100);
+        archive.start();
+        return archive;
+    }
+
+    private static void awaitArchived(FailureArchive archive, String id) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (archive.findByMessageId(id).isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "record " + id + " was not archived");
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static FailureRecord record(String id) {
+        return FailureRecord.firstFailure(id, TYPE, 1_000, 2_000, "boom").failedPermanently(3_000, "gave up");
+    }
+
+    private static Message message(String id) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(id);
+        return new Message(body(id), properties);
+    }
+
+    private static byte[] body(String id) {
+        return ("body of " + id).getBytes(StandardCharsets.UTF_8);
+    }
+}
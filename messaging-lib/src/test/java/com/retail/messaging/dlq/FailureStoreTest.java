@@ -0,0 +1,160 @@
+package com.retail.messaging.dlq;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailureStoreTest {
+    private static final String TYPE = "price-adjustment";
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private FailureStore store;
+
+    @BeforeEach
+    void openStore() throws IOException {
+        file = dir.resolve("failures.log");
+        store = new FailureStore(file.toString());
+        store.open();
+    }
+
+    @AfterEach
+    void closeStore() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void recordsAndMessagesSurviveReopen() throws IOException {
+        FailureRecord first = FailureRecord.firstFailure("m-1", TYPE, 1_000, 5_000, "boom");
+        FailureRecord second = FailureRecord.firstFailure("m-2", TYPE, 2_000, 3_000, "bang");
+        store.put(first, message("m-1", "first body"));
+        store.put(second, message("m-2", "second body"));
+
+        reopen();
+
+        assertEquals(2, store.size());
+        assertEquals(first, store.get("m-1").orElseThrow());
+        assertEquals(List.of(second, first), store.due(10_000, 10));
+        Message restored = store.readMessage(first);
+        assertEquals("m-1", restored.getMessageProperties().getMessageId());
+        assertEquals("rms", restored.getMessageProperties().getHeaders().get("source"));
+        assertArrayEquals(bytes("first body"), restored.getBody());
+    }
+
+    @Test
+    void updatesAndRemovalsReplayOnReopen() throws IOException {
+        FailureRecord first = FailureRecord.firstFailure("m-1", TYPE, 1_000, 5_000, "boom");
+        store.put(first, message("m-1", "first body"));
+        store.put(FailureRecord.firstFailure("m-2", TYPE, 2_000, 3_000, "bang"), message("m-2", "second body"));
+        FailureRecord retried = first.failedAgain(6_000, 9_000, "boom again");
+        store.updateAll(List.of(retried));
+        store.removeAll(List.of("m-2"));
+
+        reopen();
+
+        assertEquals(1, store.size());
+        assertEquals(retried, store.get("m-1").orElseThrow());
+        assertTrue(store.get("m-2").isEmpty());
+        assertArrayEquals(bytes("first body"), store.readMessage(retried).getBody());
+    }
+
+    @Test
+    void truncatesTornTailOnReopen() throws IOException {
+        FailureRecord first = FailureRecord.firstFailure("m-1", TYPE, 1_000, 5_000, "boom");
+        store.put(first, message("m-1", "first body"));
+        long intact = Files.size(file);
+        store.put(FailureRecord.firstFailure("m-2", TYPE, 2_000, 3_000, "bang"), message("m-2", "second body"));
+        store.close();
+        // A torn write leaves a partial frame behind the last complete one
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        store = new FailureStore(file.toString());
+        store.open();
+
+        assertEquals(intact, Files.size(file));
+        assertEquals(1, store.size());
+        assertArrayEquals(bytes("first body"), store.readMessage(first).getBody());
+        FailureRecord third = FailureRecord.firstFailure("m-3", TYPE, 3_000, 4_000, "crash");
+        store.put(third, message("m-3", "third body"));
+        reopen();
+        assertEquals(2, store.size());
+        assertArrayEquals(bytes("third body"), store.readMessage(third).getBody());
+    }
+
+    @Test
+    void truncatesAtFrameWithBadChecksum() throws IOException {
+        FailureRecord first = FailureRecord.firstFailure("m-1", TYPE, 1_000, 5_000, "boom");
+        store.put(first, message("m-1", "first body"));
+        long intact = Files.size(file);
+        store.put(FailureRecord.firstFailure("m-2", TYPE, 2_000, 3_000, "bang"), message("m-2", "second body"));
+        store.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), Files.size(file) - 1);
+        }
+
+        store = new FailureStore(file.toString());
+        store.open();
+
+        assertEquals(intact, Files.size(file));
+        assertEquals(List.of(first), store.due(10_000, 10));
+    }
+
+    @Test
+    void compactsSupersededEntries() throws IOException {
+        FailureRecord record = FailureRecord.firstFailure("m-1", TYPE, 1_000, 2_000, "boom");
+        store.put(FailureRecord.firstFailure("m-2", TYPE, 1_000, 2_000, "bang"), message("m-2", "small body"));
+        byte[] body = new byte[MEGABYTE];
+        for (int i = 0; i < 5; i++) {
+            Arrays.fill(body, (byte) i);
+            record = record.failedAgain(1_000 + i, 2_000 + i, "boom " + i);
+            store.put(record, new Message(body.clone(), new MessageProperties()));
+        }
+
+        // Four superseded megabyte frames reach the compaction threshold
+        assertTrue(Files.size(file) < 2L * MEGABYTE, "file should have been compacted");
+        reopen();
+        assertEquals(2, store.size());
+        assertEquals(record, store.get("m-1").orElseThrow());
+        assertArrayEquals(body, store.readMessage(record).getBody());
+        assertArrayEquals(bytes("small body"), store.readMessage(store.get("m-2").orElseThrow()).getBody());
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = new FailureStore(file.toString());
+        store.open();
+    }
+
+    private static Message message(String messageId, String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(messageId);
+        properties.setHeader("source", "rms");
+        return new Message(bytes(body), properties);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+package com.retail.messaging.error;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ErrorAggregatorTest {
+    private static final long LOG_INTERVAL = 200;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Logger logger = (Logger) LoggerFactory.getLogger(ErrorAggregator.class);
+    private final ListAppender<ILoggingEvent> logged = new ListAppender<>();
+
+    @BeforeEach
+    void captureLogs() {
+        logged.start();
+        logger.addAppender(logged);
+    }
+
+    @AfterEach
+    void releaseLogs() {
+        logger.detachAppender(logged);
+    }
+
+    @Test
+    void logsNewFingerprintOnceWithItsStackTrace() {
+        ErrorAggregator aggregator = newAggregator(5);
+
+        for (int i = 0; i < 10; i++) {
+            aggregator.record(failure("boom"), "m-" + i);
+        }
+
+        assertEquals(1, logged.list.size());
+        ILoggingEvent event = logged.list.get(0);
+        assertTrue(event.getFormattedMessage().startsWith("New error"), event.getFormattedMessage());
+        assertNotNull(event.getThrowableProxy());
+    }
+
+    @Test
+    void summarisesRepeatsOncePerLogInterval() throws InterruptedException {
+        ErrorAggregator aggregator = newAggregator(5);
+        for (int i = 0; i < 10; i++) {
+            aggregator.record(failure("boom"), "m-" + i);
+        }
+
+        Thread.sleep(LOG_INTERVAL + 50);
+        aggregator.record(failure("boom"), "m-10");
+        aggregator.record(failure("boom"), "m-11");
+
+        assertEquals(2, logged.list.size());
+        ILoggingEvent summary = logged.list.get(1);
+        // Nine repeats since the first log plus the one that triggered the summary
+        assertTrue(summary.getFormattedMessage().contains("occurred 10 times"), summary.getFormattedMessage());
+        assertTrue(summary.getFormattedMessage().endsWith("latest for message m-10"), summary.getFormattedMessage());
+        assertNull(summary.getThrowableProxy());
+    }
+
+    @Test
+    void rateLimitsEachFingerprintSeparately() {
+        ErrorAggregator aggregator = newAggregator(5);
+
+        String first = aggregator.record(failure("boom"), "m-1");
+        String second = aggregator.record(new IllegalArgumentException("bad"), "m-2");
+        aggregator.record(failure("boom again"), "m-3");
+
+        assertNotEquals(first, second);
+        assertEquals(2, logged.list.size());
+    }
+
+    @Test
+    void countsEveryMessageOfABatch() {
+        ErrorAggregator aggregator = newAggregator(2);
+
+        String fingerprint = aggregator.record(failure("boom"), List.of("m-1", "m-2", "m-3"));
+        aggregator.record(failure("boom"), "m-4");
+
+        ErrorSummary summary = aggregator.summary(fingerprint).orElseThrow();
+        assertEquals(4, summary.count());
+        assertEquals(2, summary.exemplars().size());
+        assertEquals(IllegalStateException.class.getName(), summary.exceptionClass());
+        assertEquals(4.0, registry.counter("messaging.errors", "exception", "IllegalStateException").count());
+        assertEquals(1, logged.list.size());
+    }
+
+    @Test
+    void listsSummariesMostFrequentFirst() {
+        ErrorAggregator aggregator = newAggregator(5);
+        String rare = aggregator.record(new IllegalArgumentException("bad"), "m-1");
+        String frequent = aggregator.record(failure("boom"), List.of("m-2", "m-3"));
+
+        List<ErrorSummary> summaries = aggregator.summaries();
+
+        assertEquals(List.of(frequent, rare), summaries.stream().map(ErrorSummary::fingerprint).toList());
+    }
+
+    private ErrorAggregator newAggregator(int exemplars) {
+        // One frame, so every failure built by failure() shares a fingerprint
+        return new ErrorAggregator(registry, 60_000, 100, LOG_INTERVAL, 1, exemplars);
+    }
+
+    private static RuntimeException failure(String message) {
+        return new IllegalStateException(message);
+    }
+}
@@ -0,0 +1,101 @@
+package com.retail.messaging.error;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+    private static final long TICK_MILLIS = 10;
+
+    private final BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+    private final Map<String, Long> firedAt = new ConcurrentHashMap<>();
+    private HashedWheelTimer<String> timer;
+
+    @AfterEach
+    void stop() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void firesNoEarlierThanTheDelay() throws InterruptedException {
+        timer = start(8, 100, 100);
+        long scheduledAt = System.nanoTime();
+
+        assertTrue(timer.schedule("retry", 50));
+
+        List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of("retry"), batch);
+        assertTrue(firedAt.get("retry") - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    void waitsExtraRoundsForDelaysBeyondTheWheel() throws InterruptedException {
+        // Eight buckets of 10ms cover 80ms, so a 200ms delay has to go round twice
+        timer = start(8, 100, 100);
+        long scheduledAt = System.nanoTime();
+
+        timer.schedule("late", 200);
+        timer.schedule("early", 20);
+
+        assertEquals(List.of("early"), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of("late"), batches.poll(5, TimeUnit.SECONDS));
+        assertTrue(firedAt.get("late") - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    void splitsDueItemsIntoBatches() throws InterruptedException {
+        timer = start(8, 100, 4);
+
+        for (int i = 0; i < 10; i++) {
+            timer.schedule("item-" + i, 30);
+        }
+
+        List<String> fired = new ArrayList<>();
+        while (fired.size() < 10) {
+            List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertTrue(batch.size() <= 4);
+            fired.addAll(batch);
+        }
+        assertEquals(10, new HashSet<>(fired).size());
+    }
+
+    @Test
+    void refusesItemsBeyondMaxPending() throws InterruptedException {
+        timer = start(8, 2, 100);
+
+        assertTrue(timer.schedule("a", 1000));
+        assertTrue(timer.schedule("b", 1000));
+        assertFalse(timer.schedule("c", 10));
+        assertEquals(2, timer.getPending());
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private HashedWheelTimer<String> start(int wheelSize, int maxPending, int maxBatchSize) {
+        HashedWheelTimer<String> wheel = new HashedWheelTimer<>("test-wheel", TICK_MILLIS, wheelSize, maxPending,
+                maxBatchSize, batch -> {
+                    long now = System.nanoTime();
+                    batch.forEach(item -> firedAt.put(item, now));
+                    batches.add(batch);
+                });
+        wheel.start();
+        return wheel;
+    }
+}
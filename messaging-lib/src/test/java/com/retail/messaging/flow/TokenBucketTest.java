@@ -0,0 +1,54 @@
+package com.retail.messaging.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void servesABurstOfOneSecondsWorthAtOnce() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50);
+
+        long elapsed = millisToAcquire(bucket, 50);
+
+        assertTrue(elapsed < 100, "burst took " + elapsed + "ms");
+    }
+
+    @Test
+    void throttlesToTheRateOnceTheBurstIsSpent() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50);
+        bucket.acquire(50);
+
+        long elapsed = millisToAcquire(bucket, 25);
+
+        assertTrue(elapsed >= 400, "waited only " + elapsed + "ms");
+    }
+
+    @Test
+    void leavesAnOversizedRequestInDebt() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50);
+
+        long oversized = millisToAcquire(bucket, 75);
+        long next = millisToAcquire(bucket, 1);
+
+        assertTrue(oversized < 100, "oversized request took " + oversized + "ms");
+        // The 25 tokens of debt and the requested one take about half a second to refill
+        assertTrue(next >= 400, "waited only " + next + "ms");
+    }
+
+    @Test
+    void rejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1));
+    }
+
+    private static long millisToAcquire(TokenBucket bucket, int permits) throws InterruptedException {
+        long start = System.nanoTime();
+        bucket.acquire(permits);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
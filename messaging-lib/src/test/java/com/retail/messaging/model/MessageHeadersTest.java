@@ -0,0 +1,70 @@
+package com.retail.messaging.model;
+
+import com.retail.messaging.codec.TestMessages;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MessageHeadersTest {
+
+    @Test
+    void readsBackTheRoutingFieldsItStamps() {
+        Map<String, Object> headers = new HashMap<>();
+        MessageHeaders.stamp(TestMessages.sampleMessage(), headers);
+
+        MessageHeaders routing = MessageHeaders.read(headers);
+
+        assertEquals("5b0f7e9a-3c1d-4f7e-9a51-0c2d8e6f4a13", routing.getMessageId());
+        assertEquals("EVT-20240318-000042", routing.getEventId());
+        assertEquals("SKU-1004587", routing.getSkuId());
+        assertEquals("STORE-0231", routing.getNodeKey());
+        assertEquals(PriceAdjustmentMessage.AdjustmentType.PRICE_ADJ, routing.getAdjustmentType());
+        assertEquals("EU-WEST", routing.getSourceRegion());
+    }
+
+    @Test
+    void removesFieldsThatARestampedMessageNoLongerHas() {
+        Map<String, Object> headers = new HashMap<>();
+        PriceAdjustmentMessage message = TestMessages.sampleMessage();
+        MessageHeaders.stamp(message, headers);
+        message.setNodeKey(null);
+        message.setMetadata(null);
+
+        MessageHeaders.stamp(message, headers);
+
+        assertFalse(headers.containsKey(MessageHeaders.NODE_KEY));
+        assertFalse(headers.containsKey(MessageHeaders.MESSAGE_ID));
+        assertFalse(headers.containsKey(MessageHeaders.SOURCE_REGION));
+        MessageHeaders routing = MessageHeaders.read(headers);
+        assertNull(routing.getNodeKey());
+        assertEquals("SKU-1004587", routing.getSkuId());
+    }
+
+    @Test
+    void readsNonStringHeaderValuesAsText() {
+        // The broker client hands string headers back as its own string type
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(MessageHeaders.ADJUSTMENT_TYPE, new StringBuilder("PRICE_RESTORE"));
+        headers.put(MessageHeaders.SKU_ID, new StringBuilder("SKU-1004587"));
+
+        MessageHeaders routing = MessageHeaders.read(headers);
+
+        assertEquals(PriceAdjustmentMessage.AdjustmentType.PRICE_RESTORE, routing.getAdjustmentType());
+        assertEquals("SKU-1004587", routing.getSkuId());
+    }
+
+    @Test
+    void leavesUnstampedOrUnknownTypesToTheBody() {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(MessageHeaders.SKU_ID, "SKU-1004587");
+        assertNull(MessageHeaders.read(headers));
+
+        headers.put(MessageHeaders.ADJUSTMENT_TYPE, "PRICE_MATCH");
+        assertNull(MessageHeaders.read(headers));
+    }
+}
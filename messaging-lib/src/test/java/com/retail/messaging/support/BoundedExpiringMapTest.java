@@ -0,0 +1,133 @@
+package com.retail.messaging.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedExpiringMapTest {
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final Duration TTL = Duration.ofMillis(200);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> evicted = new CopyOnWriteArrayList<>();
+
+    @Test
+    void expiresEntriesAfterTheTtl() throws InterruptedException {
+        BoundedExpiringMap<String, String> map = newMap(TTL, 100);
+        map.put("a", "1");
+        assertEquals("1", map.get("a"));
+
+        Thread.sleep(TTL.toMillis() + 3 * TICK.toMillis());
+
+        assertNull(map.get("a"));
+        assertEquals(0, map.size());
+        assertEquals(List.of("a"), evicted);
+        assertEquals(1.0, evictions("expired"));
+    }
+
+    @Test
+    void putRestartsTheTtl() throws InterruptedException {
+        BoundedExpiringMap<String, String> map = newMap(TTL, 100);
+        map.put("a", "1");
+        Thread.sleep(TTL.toMillis() * 2 / 3);
+        map.put("a", "2");
+        Thread.sleep(TTL.toMillis() * 2 / 3);
+
+        assertEquals("2", map.get("a"));
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    void computeIfAbsentKeepsTheLiveValueAndItsTtl() throws InterruptedException {
+        BoundedExpiringMap<String, String> map = newMap(TTL, 100);
+        assertEquals("1", map.computeIfAbsent("a", key -> "1"));
+        Thread.sleep(TTL.toMillis() * 2 / 3);
+
+        assertEquals("1", map.computeIfAbsent("a", key -> "2"));
+        Thread.sleep(TTL.toMillis() * 2 / 3);
+
+        assertNull(map.get("a"));
+        assertEquals("3", map.computeIfAbsent("a", key -> "3"));
+    }
+
+    @Test
+    void evictsEntriesClosestToExpiryOnceFull() throws InterruptedException {
+        BoundedExpiringMap<String, String> map = newMap(Duration.ofSeconds(60), 3);
+        for (String key : List.of("a", "b", "c", "d", "e")) {
+            map.put(key, key);
+            // Each key lands in a later tick, and so in a later bucket
+            Thread.sleep(2 * TICK.toMillis());
+        }
+
+        assertEquals(3, map.size());
+        assertEquals(List.of("a", "b"), evicted);
+        assertNull(map.get("a"));
+        assertEquals("e", map.get("e"));
+        assertEquals(2.0, evictions("size"));
+        assertEquals(0.0, evictions("expired"));
+    }
+
+    @Test
+    void rewrittenKeysAreEvictedByTheirLatestExpiry() throws InterruptedException {
+        BoundedExpiringMap<String, String> map = newMap(Duration.ofSeconds(60), 2);
+        map.put("a", "1");
+        Thread.sleep(2 * TICK.toMillis());
+        map.put("b", "1");
+        Thread.sleep(2 * TICK.toMillis());
+        map.put("a", "2");
+        Thread.sleep(2 * TICK.toMillis());
+        map.put("c", "1");
+
+        assertEquals(List.of("b"), evicted);
+        assertEquals("2", map.get("a"));
+    }
+
+    @Test
+    void removeDoesNotNotifyTheListener() {
+        BoundedExpiringMap<String, String> map = newMap(TTL, 100);
+        map.put("a", "1");
+
+        assertEquals("1", map.remove("a"));
+        assertNull(map.remove("a"));
+        assertEquals(0, map.size());
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    void forEachVisitsLiveEntries() {
+        BoundedExpiringMap<String, Integer> map = new BoundedExpiringMap<>("test", TTL, TICK, 100, registry);
+        map.put("a", 1);
+        map.put("b", 2);
+
+        Map<String, Integer> visited = new ConcurrentHashMap<>();
+        map.forEach(visited::put);
+
+        assertEquals(Map.of("a", 1, "b", 2), visited);
+    }
+
+    @Test
+    void rejectsTtlShorterThanATick() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BoundedExpiringMap<String, String>("test", Duration.ofMillis(5), TICK, 10, registry));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BoundedExpiringMap<String, String>("test", TTL, Duration.ZERO, 10, registry));
+    }
+
+    private BoundedExpiringMap<String, String> newMap(Duration ttl, int maxSize) {
+        return new BoundedExpiringMap<>("test", ttl, TICK, maxSize, registry, (key, value) -> evicted.add(key));
+    }
+
+    private double evictions(String cause) {
+        return registry.counter("expiring.map.evictions", "map", "test", "cause", cause).count();
+    }
+}